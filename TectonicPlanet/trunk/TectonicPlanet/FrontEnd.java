@@ -29,6 +29,11 @@ public class FrontEnd extends JPanel implements MouseListener, MouseMotionListen
     private boolean running = false, paintGuard = false, painting = false;
     private int steps = 1;
     private PointViewer pointViewer = null;
+    private int[] picked = new int[ 1 ];  // Scratch for picking points with World.nearest()
+    private double[] flowArrows = null;   // Ends of the mantle flow arrows, 6 per arrow
+    private int flowArrowCount = 0;
+    private World flowArrowWorld = null;  // The World and upwellings flowArrows were worked out for
+    private int flowArrowVersion = -1;
     private ColorMap temperatureColorMap;
     // Menu bar
     private JMenuBar menuBar = null;
@@ -330,19 +335,22 @@ public class FrontEnd extends JPanel implements MouseListener, MouseMotionListen
             double x = (mousePress.x - width / 2 + 1) * 2 * zoom / size;
             double y = -(mousePress.y - height / 2 + 1) * 2 * zoom / size;
 
-            TecPoint p = null;
-            double d, bestDist = 100000000.0;
+            // Find where on the (front of the) globe was clicked, turn it back
+            // into world coordinates and pick the nearest point to that
+            double r = world.getPlanetRadius();
+            double flatSq = x * x + y * y;
+            if( flatSq < r * r )
+                pr.set( x, y, Math.sqrt( r * r - flatSq ) );
+            else
+                pr.set( x * r / Math.sqrt( flatSq ), y * r / Math.sqrt( flatSq ), 0 );
+            rTrans2.invert();
+            rTrans2.transform( pr );
+            rTrans1.invert();
+            rTrans1.transform( pr );
+
             TecPoint best = null;
-            for( int i = 0; i < world.getNumPoints(); i++ ){
-                p = world.getPoint( i );
-                if( p.getRotPos().z > 0 ){
-                    d = radiusSq( p.getRotPos().x, p.getRotPos().y, x, y );
-                    if( d < bestDist ){
-                        bestDist = d;
-                        best = p;
-                    }
-                }
-            }
+            if( world.nearest( pr, 1, picked ) == 1 )
+                best = world.getPointStore().getOwner( picked[0] );
             if( best != null ){
                 if( pointViewer == null ){
                     pointViewer = new PointViewer( best );
@@ -467,7 +475,11 @@ public class FrontEnd extends JPanel implements MouseListener, MouseMotionListen
             if( returnVal == JFileChooser.APPROVE_OPTION ){
                 File file = fc.getSelectedFile();
                 try {
-                    if( world == null )
+                    // A mapped world's point file resumes from its last
+                    // checkpoint
+                    if( World.isCheckpoint( file ) )
+                        world = World.resume( file );
+                    else if( world == null )
                         world = new World( file.getCanonicalPath() );
                     else
                         world.load( file.getCanonicalPath() );
@@ -554,34 +566,25 @@ public class FrontEnd extends JPanel implements MouseListener, MouseMotionListen
                 }
 
             // Draw magma flow arrows
-            Point3d arrowPoint1, arrowPoint2;
-            Vector3d vec;
-            int div = 2;
-            if( flowMenuItem.getState() )
-                for( int lat = -90; lat <= 90; lat += 5 / div ){
-                    double circum = 2 * Math.PI * Math.cos( Math.toRadians( lat ) ) * 6000;
-                    int numPoints = (int)(circum / (600 / div));
-                    for( int i = 0; i < numPoints; i++ ){
-                        double lon = (double)i / (double)numPoints * 360;
-                        arrowPoint1 = new Point3d( Math.sin( Math.toRadians( lon ) ) * Math.cos( Math.toRadians( lat ) ) * 6000,
-                                                   Math.sin( Math.toRadians( lat ) ) * 6000,
-                                                   Math.cos( Math.toRadians( lon ) ) * Math.cos( Math.toRadians( lat ) ) * 6000 );
-                        vec = world.getMantleFlow( arrowPoint1 );
-                        arrowPoint2 = new Point3d( vec.x * 150 + Math.sin( Math.toRadians( lon ) ) * Math.cos( Math.toRadians( lat ) ) * 6000,
-                                                   vec.y * 150 + Math.sin( Math.toRadians( lat ) ) * 6000,
-                                                   vec.z * 150 + Math.cos( Math.toRadians( lon ) ) * Math.cos( Math.toRadians( lat ) ) * 6000 );
-                        rTrans1.transform( arrowPoint1 );
-                        rTrans2.transform( arrowPoint1 );
-                        rTrans1.transform( arrowPoint2 );
-                        rTrans2.transform( arrowPoint2 );
-                        if( arrowPoint1.z > 0 && arrowPoint2.z > 0 ){
-                            g.drawLine( halfWidth + (int)(arrowPoint1.x / zoom * size / 2),
-                                        halfHeight - (int)(arrowPoint1.y / zoom * size / 2),
-                                        halfWidth + (int)(arrowPoint2.x / zoom * size / 2),
-                                        halfHeight - (int)(arrowPoint2.y / zoom * size / 2) );
-                        }
+            Point3d arrowPoint1 = new Point3d(), arrowPoint2 = new Point3d();
+            if( flowMenuItem.getState() ){
+                if( flowArrowWorld != world || flowArrowVersion != world.getMantleFlowVersion() )
+                    calcFlowArrows();
+                for( int i = 0; i < flowArrowCount; i++ ){
+                    arrowPoint1.set( flowArrows[6 * i],     flowArrows[6 * i + 1], flowArrows[6 * i + 2] );
+                    arrowPoint2.set( flowArrows[6 * i + 3], flowArrows[6 * i + 4], flowArrows[6 * i + 5] );
+                    rTrans1.transform( arrowPoint1 );
+                    rTrans2.transform( arrowPoint1 );
+                    rTrans1.transform( arrowPoint2 );
+                    rTrans2.transform( arrowPoint2 );
+                    if( arrowPoint1.z > 0 && arrowPoint2.z > 0 ){
+                        g.drawLine( halfWidth + (int)(arrowPoint1.x / zoom * size / 2),
+                                    halfHeight - (int)(arrowPoint1.y / zoom * size / 2),
+                                    halfWidth + (int)(arrowPoint2.x / zoom * size / 2),
+                                    halfHeight - (int)(arrowPoint2.y / zoom * size / 2) );
                     }
                 }
+            }
 
             // Rotate all the points
             for( int i = 0; i < world.getNumPoints(); i++ ){
@@ -620,9 +623,9 @@ public class FrontEnd extends JPanel implements MouseListener, MouseMotionListen
                             if( lp.getA().mean != lp.getB().mean )
                                 g.setColor( Color.red );
                             if( heightColorMenuItem.isSelected() )
-                                g.setColor( lp.col );
+                                g.setColor( lp.getColor() );
                             if( stressColorMenuItem.isSelected() ){
-                                int c = (int)(255 * 2 * Math.atan( lp.pushForce * 2 ) / Math.PI);
+                                int c = (int)(255 * 2 * Math.atan( lp.getPushForce() * 2 ) / Math.PI);
                                 if( c > 255 )
                                     c = 255;
                                 if( c < -255 )
@@ -631,7 +634,7 @@ public class FrontEnd extends JPanel implements MouseListener, MouseMotionListen
                                     g.setColor( new Color( 255, 255 - c, 255 - c ) );
                                 else
                                     g.setColor( new Color( 255 + c, 255 + c, 255 ) );
-                                if( lp.broken )
+                                if( lp.isBroken() )
                                     g.setColor( new Color( 0, 100, 0 ) );
                                 //if (lp.pushForce<-4) g.setColor(Color.green);
                             }
@@ -696,6 +699,44 @@ public class FrontEnd extends JPanel implements MouseListener, MouseMotionListen
             return true;
     }
 
+    /**
+     * Works out the mantle flow arrows on a lat/lon grid. Only needs doing
+     * again when the upwellings move.
+     */
+    private void calcFlowArrows(){
+        Vector3d vec = new Vector3d();
+        int div = 2;
+        flowArrowCount = 0;
+        for( int pass = 0; pass < 2; pass++ ){
+            // The first pass just counts the arrows
+            int n = 0;
+            for( int lat = -90; lat <= 90; lat += 5 / div ){
+                double circum = 2 * Math.PI * Math.cos( Math.toRadians( lat ) ) * 6000;
+                int numPoints = (int)(circum / (600 / div));
+                for( int i = 0; i < numPoints; i++, n++ ){
+                    if( pass == 0 )
+                        continue;
+                    double lon = (double)i / (double)numPoints * 360;
+                    double x = Math.sin( Math.toRadians( lon ) ) * Math.cos( Math.toRadians( lat ) ) * 6000;
+                    double y = Math.sin( Math.toRadians( lat ) ) * 6000;
+                    double z = Math.cos( Math.toRadians( lon ) ) * Math.cos( Math.toRadians( lat ) ) * 6000;
+                    world.getMantleFlow( x, y, z, vec );
+                    flowArrows[6 * n]     = x;
+                    flowArrows[6 * n + 1] = y;
+                    flowArrows[6 * n + 2] = z;
+                    flowArrows[6 * n + 3] = vec.x * 150 + x;
+                    flowArrows[6 * n + 4] = vec.y * 150 + y;
+                    flowArrows[6 * n + 5] = vec.z * 150 + z;
+                }
+            }
+            if( pass == 0 && (flowArrows == null || flowArrows.length < 6 * n) )
+                flowArrows = new double[ 6 * n ];
+            flowArrowCount = n;
+        }
+        flowArrowWorld = world;
+        flowArrowVersion = world.getMantleFlowVersion();
+    }
+
     private void timeStep(){
         world.timeStep();
         //world.oceanTimeStep();
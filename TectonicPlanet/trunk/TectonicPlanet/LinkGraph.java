@@ -0,0 +1,94 @@
+package TectonicPlanet;
+
+import java.util.*;
+
+/**
+ * A frozen, compressed-sparse-row copy of the links in a LinkSystem. The
+ * neighbours of the point with PointStore index i are the point indices held
+ * in getNeighbour( k ) for getStart( i ) <= k < getEnd( i ), in the same order
+ * LinkSystem.getPointLinks() would give them.
+ *
+ * A LinkGraph is never modified; LinkSystem.getGraph() hands out a new one
+ * whenever links have been added or removed since the last was built.
+ */
+public class LinkGraph {
+    private PointStore m_store;
+    private int[] m_offsets;
+    private int[] m_neighbours;
+
+    /**
+     * Builds the graph from a LinkSystem's point->linked points map.
+     *
+     * @param store      The store the linked points belong to.
+     * @param pointLinks Map from TecPoint to an ArrayList of linked TecPoints.
+     */
+    LinkGraph( PointStore store, Map pointLinks ){
+        m_store = store;
+        int numPoints = store.size();
+        m_offsets = new int[ numPoints + 1 ];
+
+        // Count the neighbours of each point...
+        Iterator iter = pointLinks.entrySet().iterator();
+        while( iter.hasNext() ){
+            Map.Entry entry = (Map.Entry)iter.next();
+            TecPoint point = (TecPoint)entry.getKey();
+            if( point.getStore() == store )
+                m_offsets[point.getIndex() + 1] = ((ArrayList)entry.getValue()).size();
+        }
+        for( int i = 0; i < numPoints; i++ )
+            m_offsets[i + 1] += m_offsets[i];
+
+        // ...then fill them in
+        m_neighbours = new int[ m_offsets[numPoints] ];
+        iter = pointLinks.entrySet().iterator();
+        while( iter.hasNext() ){
+            Map.Entry entry = (Map.Entry)iter.next();
+            TecPoint point = (TecPoint)entry.getKey();
+            if( point.getStore() != store )
+                continue;
+            ArrayList linked = (ArrayList)entry.getValue();
+            int k = m_offsets[point.getIndex()];
+            for( int j = 0; j < linked.size(); j++ )
+                m_neighbours[k++] = ((TecPoint)linked.get( j )).getIndex();
+        }
+    }
+
+    public PointStore getStore(){
+        return m_store;
+    }
+
+    /**
+     * @return The number of point indices covered by this graph.
+     */
+    public int size(){
+        return m_offsets.length - 1;
+    }
+
+    public int getStart( int i ){
+        return m_offsets[i];
+    }
+
+    public int getEnd( int i ){
+        return m_offsets[i + 1];
+    }
+
+    public int getDegree( int i ){
+        return m_offsets[i + 1] - m_offsets[i];
+    }
+
+    /**
+     * @param k A position between getStart( i ) and getEnd( i ).
+     * @return The index of the neighbour at that position.
+     */
+    public int getNeighbour( int k ){
+        return m_neighbours[k];
+    }
+
+    /**
+     * @param k A position between getStart( i ) and getEnd( i ).
+     * @return The TecPoint of the neighbour at that position.
+     */
+    public TecPoint getNeighbourPoint( int k ){
+        return m_store.getOwner( m_neighbours[k] );
+    }
+}
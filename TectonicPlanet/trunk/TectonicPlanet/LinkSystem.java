@@ -18,12 +18,29 @@ import java.util.*;
  * @author Tom Groves
  */
 public class LinkSystem {
-  private HashMap tree;
+  // Open-addressing table from link hash to data slot. A key of 0 marks an empty table entry (getHash() never returns 0).
+  // Keys are built from the points' PointStore indices, so they must be rebuilt with reindex() if those are renumbered.
+  private long[] keys;
+  private int[] slotOf;
+  private int keyMask;
+  private int size;
+  // Per-link data, indexed by slot
+  private LinkPair[] views;   // null for free slots
+  private int[] count;
+  private double[] pushForce, linkWidth;
+  private boolean[] broken, plateCrosser;
+  private Color[] col;
+  private int slotTop;        // All slots >= slotTop have never been used
+  private int[] freeSlots;
+  private int freeCount;
 	private HashMap pointLinks;
+  // Frozen CSR copy of pointLinks, rebuilt on demand once links have changed
+  private int modCount=0;
+  private LinkGraph graph=null;
+  private int graphModCount=-1;
 	
   public LinkSystem() {
-    tree=new HashMap();
-    pointLinks=new HashMap();
+    empty();
   }
   public void addLink(TecPoint a, TecPoint b) {
 		if (!hashOK(a,b)) {
@@ -42,84 +59,310 @@ public class LinkSystem {
 			System.out.println("Can't 'addlink' with A and B as the same point!!");
 			System.exit(1);
 		}
-    LinkPair nl=new LinkPair(a,b);
-    if (getLinkPair(new Long(getHash(a,b)))!=null) {
+    modCount++;
+    if ((size+1)*2>keys.length) rehash(keys.length*2);
+    long key=getHash(a,b);
+    int k=findKey(key);
+    if (keys[k]==key) {
       // Increment the count of that link
-      getLinkPair(new Long(getHash(a,b))).increment();
+      increment(slotOf[k]);
     } else {
       // Add new link
-      tree.put(new Long(getHash(a,b)), nl);
+      keys[k]=key;
+      slotOf[k]=newSlot(a,b,key);
+      size++;
+      // New link, so a and b can't be in each other's lists yet
+      linkedList(a).add(b);
+      linkedList(b).add(a);
+    }
+  }
+  private ArrayList linkedList(TecPoint p) {
+    ArrayList v=(ArrayList)pointLinks.get(p);
+    if (v==null) {
+      v=new ArrayList(6);
+      pointLinks.put(p,v);
     }
-		if (!pointLinks.containsKey(a)) pointLinks.put(a,new ArrayList());
-		if (!pointLinks.containsKey(b)) pointLinks.put(b,new ArrayList());
-	  ArrayList v1=getPointLinks(a);
-	  ArrayList v2=getPointLinks(b);
-		if (!v1.contains(b)) v1.add(b);
-		if (!v2.contains(a)) v2.add(a);
+    return v;
   }
   public void removeLink(TecPoint a, TecPoint b) {
-    LinkPair nl=new LinkPair(a,b);
-    if (getLinkPair(new Long(getHash(a,b)))!=null) {
+    modCount++;
+    int k=findKey(getHash(a,b));
+    if (keys[k]!=0) {
       // Decrement the count of that link
-      getLinkPair(new Long(getHash(a,b))).decrement();
-      if (getLinkPair(new Long(getHash(a,b))).getCount()==0)
-        tree.remove(new Long(getHash(a,b)));
+      int slot=slotOf[k];
+      decrement(slot);
+      if (count[slot]==0) {
+        deleteKey(k);
+        freeSlot(slot);
+        size--;
+        // Only unlink the points once the last tet using the link has gone
+        ArrayList v1=getPointLinks(a);
+        if (v1!=null) v1.remove(b);
+        ArrayList v2=getPointLinks(b);
+        if (v2!=null) v2.remove(a);
+      }
     } else {
       // WTF?!
       System.out.println("Can't remove that link - it isn't there!");
     }
-		if (pointLinks.containsKey(a)) {
-  	  ArrayList v1=getPointLinks(a);
-		  if (v1!=null) v1.remove(b);
-		}
-		if (pointLinks.containsKey(b)) {
-			ArrayList v2=getPointLinks(b);
-			if (v2!=null) v2.remove(a);
-		}
   }
   public LinkPair getLinkPair(Long i) {
-    return (LinkPair)tree.get(i);
+    return getLinkPair(i.longValue());
+  }
+  public LinkPair getLinkPair(long key) {
+    int k=findKey(key);
+    return keys[k]==0 ? null : views[slotOf[k]];
   }
   public LinkPair getLinkPair(TecPoint a, TecPoint b) {
-    return (LinkPair)tree.get(getHash(a,b));
+    return getLinkPair(getHash(a,b));
   }
   public int getCount(TecPoint a, TecPoint b) {
-    LinkPair lp=(LinkPair)tree.get(new Long(getHash(a,b)));
-    if (lp==null) return 0;
-    return lp.getCount();
+    int k=findKey(getHash(a,b));
+    return keys[k]==0 ? 0 : count[slotOf[k]];
+  }
+  public int size() {return size;}
+  public Iterator getIterator() {return new SlotIterator();}
+  public Collection getCollection() {
+    return new AbstractCollection() {
+      public Iterator iterator() {return new SlotIterator();}
+      public int size() {return size;}
+    };
   }
-  public int size() {return tree.size();}
-  public Iterator getIterator() {return tree.values().iterator();}
-  public Collection getCollection() {return tree.values();}
   public long getHash(TecPoint a, TecPoint b) {
-    long v1=Math.min(a.hash,b.hash);
-    long v2=Math.max(a.hash,b.hash);
-    return (v1*(v1+2*v2+1) + (v2+1)*(v2+2))/2+1;
+    return key(a,b);
+  }
+  // The two point indices side by side. The larger index of two different points is never 0, so neither is the key.
+  static long key(TecPoint a, TecPoint b) {
+    long v1=Math.min(a.getIndex(),b.getIndex());
+    long v2=Math.max(a.getIndex(),b.getIndex());
+    return (v1<<32)|v2;
+  }
+  /**
+   * Rebuilds the table after the points' indices have been renumbered
+   * (see PointStore.compact()).
+   */
+  public void reindex() {
+    Arrays.fill(keys,0);
+    for (int slot=0; slot<slotTop; slot++) {
+      LinkPair lp=views[slot];
+      if (lp==null) continue;
+      long key=key(lp.getA(),lp.getB());
+      lp.setHash(key);
+      int k=findKey(key);
+      keys[k]=key;
+      slotOf[k]=slot;
+    }
+    modCount++;
+  }
+
+  /**
+   * Renumbers the link slots in order of their keys, which is the order of
+   * their lower point index, so sweeps over the links read the points (and
+   * the links' own data) in order. Call after reindex().
+   */
+  public void sortSlots() {
+    long[] sorted=new long[size];
+    int n=0;
+    for (int slot=0; slot<slotTop; slot++)
+      if (views[slot]!=null) sorted[n++]=views[slot].getHash();
+    Arrays.sort(sorted,0,n);
+    int[] oldSlot=new int[n];
+    for (int i=0; i<n; i++) oldSlot[i]=slotOf[findKey(sorted[i])];
+
+    LinkPair[] v=new LinkPair[views.length];
+    Color[] c=new Color[col.length];
+    int[] cnt=new int[count.length];
+    double[] push=new double[pushForce.length], width=new double[linkWidth.length];
+    boolean[] br=new boolean[broken.length], pc=new boolean[plateCrosser.length];
+    for (int i=0; i<n; i++) {
+      int s=oldSlot[i];
+      v[i]=views[s];
+      v[i].setSlot(i);
+      c[i]=col[s];
+      cnt[i]=count[s];
+      push[i]=pushForce[s];
+      width[i]=linkWidth[s];
+      br[i]=broken[s];
+      pc[i]=plateCrosser[s];
+      slotOf[findKey(sorted[i])]=i;
+    }
+    views=v; col=c; count=cnt; pushForce=push; linkWidth=width; broken=br; plateCrosser=pc;
+    slotTop=n;
+    freeCount=0;
+    modCount++;
+  }
+
+  // The hash table. Linear probing, with backward-shift deletion so no tombstones are needed.
+  private int findKey(long key) {
+    // Returns the table index holding key, or the empty index where it would go
+    int k=mix(key)&keyMask;
+    while (keys[k]!=0 && keys[k]!=key) k=(k+1)&keyMask;
+    return k;
+  }
+  private static int mix(long key) {
+    key*=0x9E3779B97F4A7C15L;
+    return (int)(key^(key>>>32));
+  }
+  private void deleteKey(int k) {
+    int gap=k;
+    int next=(k+1)&keyMask;
+    while (keys[next]!=0) {
+      int home=mix(keys[next])&keyMask;
+      // Move the entry back into the gap unless its home lies cyclically in (gap,next]
+      if (((next-home)&keyMask)>=((next-gap)&keyMask)) {
+        keys[gap]=keys[next];
+        slotOf[gap]=slotOf[next];
+        gap=next;
+      }
+      next=(next+1)&keyMask;
+    }
+    keys[gap]=0;
+  }
+  private void rehash(int capacity) {
+    long[] oldKeys=keys;
+    int[] oldSlots=slotOf;
+    keys=new long[capacity];
+    slotOf=new int[capacity];
+    keyMask=capacity-1;
+    for (int i=0; i<oldKeys.length; i++)
+      if (oldKeys[i]!=0) {
+        int k=findKey(oldKeys[i]);
+        keys[k]=oldKeys[i];
+        slotOf[k]=oldSlots[i];
+      }
+  }
+
+  // The link data slots
+  private int newSlot(TecPoint a, TecPoint b, long key) {
+    int slot;
+    if (freeCount>0) slot=freeSlots[--freeCount];
+    else {
+      if (slotTop==views.length) growSlots(views.length*2);
+      slot=slotTop++;
+    }
+    count[slot]=1;
+    pushForce[slot]=0;
+    linkWidth[slot]=0;
+    broken[slot]=false;
+    plateCrosser[slot]=false;
+    col[slot]=null;
+    views[slot]=new LinkPair(this,slot,a,b,key);
+    return slot;
+  }
+  private void freeSlot(int slot) {
+    // Anyone still holding the LinkPair gets a standalone copy of its data
+    views[slot].detach();
+    views[slot]=null;
+    col[slot]=null;
+    if (freeCount==freeSlots.length) freeSlots=copyOf(freeSlots,freeSlots.length*2);
+    freeSlots[freeCount++]=slot;
+  }
+  private void growSlots(int capacity) {
+    LinkPair[] v=new LinkPair[capacity];
+    System.arraycopy(views,0,v,0,views.length);
+    views=v;
+    Color[] c=new Color[capacity];
+    System.arraycopy(col,0,c,0,col.length);
+    col=c;
+    count=copyOf(count,capacity);
+    pushForce=copyOf(pushForce,capacity);
+    linkWidth=copyOf(linkWidth,capacity);
+    broken=copyOf(broken,capacity);
+    plateCrosser=copyOf(plateCrosser,capacity);
+  }
+  private static int[] copyOf(int[] a, int n) {int[] o=new int[n]; System.arraycopy(a,0,o,0,Math.min(n,a.length)); return o;}
+  private static double[] copyOf(double[] a, int n) {double[] o=new double[n]; System.arraycopy(a,0,o,0,Math.min(n,a.length)); return o;}
+  private static boolean[] copyOf(boolean[] a, int n) {boolean[] o=new boolean[n]; System.arraycopy(a,0,o,0,Math.min(n,a.length)); return o;}
+  private void increment(int slot) {
+    if (++count[slot]>2) {
+      System.out.println("Incremented LinkPair count above 2!");
+      //System.exit(1);
+    }
+  }
+  private void decrement(int slot) {
+    if (--count[slot]<0) {
+      System.out.println("Decremented LinkPair count below 0!");
+      //System.exit(1);
+    }
+  }
+  // Slot accessors for LinkPair
+  int getCount(int slot) {return count[slot];}
+  double getPushForce(int slot) {return pushForce[slot];}
+  void setPushForce(int slot, double f) {pushForce[slot]=f;}
+  double getLinkWidth(int slot) {return linkWidth[slot];}
+  void setLinkWidth(int slot, double w) {linkWidth[slot]=w;}
+  boolean isBroken(int slot) {return broken[slot];}
+  void setBroken(int slot, boolean b) {broken[slot]=b;}
+  boolean isPlateCrosser(int slot) {return plateCrosser[slot];}
+  void setPlateCrosser(int slot, boolean b) {plateCrosser[slot]=b;}
+  Color getColor(int slot) {return col[slot];}
+  void setColor(int slot, Color c) {col[slot]=c;}
+
+  private class SlotIterator implements Iterator {
+    private int next=-1;
+    SlotIterator() {advance();}
+    private void advance() {
+      do next++; while (next<slotTop && views[next]==null);
+    }
+    public boolean hasNext() {return next<slotTop;}
+    public Object next() {
+      if (next>=slotTop) throw new NoSuchElementException();
+      LinkPair lp=views[next];
+      advance();
+      return lp;
+    }
+    public void remove() {throw new UnsupportedOperationException();}
   }
 	public boolean hashOK(TecPoint a, TecPoint b) {
 	  return getHash(a,b)==getHash(b,a);
 	}
-  public void empty() {tree=new HashMap();pointLinks=new HashMap();}
+  public void empty() {
+    keys=new long[1024];
+    slotOf=new int[1024];
+    keyMask=keys.length-1;
+    size=0;
+    views=new LinkPair[512];
+    col=new Color[512];
+    count=new int[512];
+    pushForce=new double[512];
+    linkWidth=new double[512];
+    broken=new boolean[512];
+    plateCrosser=new boolean[512];
+    slotTop=0;
+    freeSlots=new int[64];
+    freeCount=0;
+    pointLinks=new HashMap();
+    modCount++;
+    graph=null;
+  }
 	public int getPointLinksSize(TecPoint p) {
 	  if (!pointLinks.containsKey(p)) return -1;
 		ArrayList v=(ArrayList)pointLinks.get(p);
 		return v.size();
 	}
+  // Read-only phases should walk the links through this rather than getPointLinks()
+  public LinkGraph getGraph(PointStore store) {
+    if (graph==null || graphModCount!=modCount || graph.getStore()!=store || graph.size()!=store.size()) {
+      graph=new LinkGraph(store,pointLinks);
+      graphModCount=modCount;
+    }
+    return graph;
+  }
 	public ArrayList getPointLinks(TecPoint p) {
 	  if (!pointLinks.containsKey(p))
 			return null;
 		return (ArrayList)pointLinks.get(p);
 	}
 	public void removePoint(TecPoint p) {
+    // pointLinks always holds every point p is linked to, so only p's own links need looking at
 		if (pointLinks.containsKey(p)) {
 			ArrayList linkedPoints=new ArrayList(getPointLinks(p));
-			for (int i=0; i<linkedPoints.size(); i++)
-				removeLink(p,(TecPoint)linkedPoints.get(i));
-		}
-    ArrayList linkPairVec=new ArrayList(tree.values());
-		for (int i=0; i<linkPairVec.size(); i++) {
-			LinkPair lp=(LinkPair)linkPairVec.get(i);
-			if (lp.getA()==p || lp.getB()==p) removeLink(lp.getA(),lp.getB());
+			for (int i=0; i<linkedPoints.size(); i++) {
+        TecPoint q=(TecPoint)linkedPoints.get(i);
+        while (getCount(p,q)>0) removeLink(p,q);
+      }
+      pointLinks.remove(p);
+      modCount++;
 		}
 	}
 	public ArrayList getLinkedPoints(TecPoint p, ArrayList points) {
@@ -180,19 +423,39 @@ public class LinkSystem {
 
 class LinkPair implements Comparable {
   private TecPoint a,b;
-  private int count=1;
   private long hash;
-  public double pushForce;  // The outwards force exerted by this link
-  public double linkWidth;  // The width of this link
-  public boolean broken=false;  // Is this link broken, for the purposes of the FEA?
-  public boolean plateCrosser=false;  // Does this link connect two different plates?
-  public Color col;   // Just for speedup
+  // While a link is in a LinkSystem its data lives in the system's arrays, at 'slot'.
+  // A LinkPair made on its own (or whose link has since been removed) keeps its own copy.
+  private LinkSystem system=null;
+  private int slot=-1;
+  private int count=1;
+  private double pushForce;  // The outwards force exerted by this link
+  private double linkWidth;  // The width of this link
+  private boolean broken=false;  // Is this link broken, for the purposes of the FEA?
+  private boolean plateCrosser=false;  // Does this link connect two different plates?
+  private Color col;   // Just for speedup
 
   public LinkPair(TecPoint a, TecPoint b) {
     this.a=a; this.b=b;
-    long v1=Math.min(a.hash,b.hash);
-    long v2=Math.max(a.hash,b.hash);
-    hash= (v1*(v1+2*v2+1) + (v2+1)*(v2+2))/2+1;
+    hash=LinkSystem.key(a,b);
+  }
+  LinkPair(LinkSystem system, int slot, TecPoint a, TecPoint b, long hash) {
+    this.system=system; this.slot=slot;
+    this.a=a; this.b=b;
+    this.hash=hash;
+  }
+  void setHash(long h) {hash=h;}
+  long getHash() {return hash;}
+  void setSlot(int s) {slot=s;}
+  void detach() {
+    count=system.getCount(slot);
+    pushForce=system.getPushForce(slot);
+    linkWidth=system.getLinkWidth(slot);
+    broken=system.isBroken(slot);
+    plateCrosser=system.isPlateCrosser(slot);
+    col=system.getColor(slot);
+    system=null;
+    slot=-1;
   }
 /*  public boolean equals(Object ob) {
     try {
@@ -206,19 +469,17 @@ class LinkPair implements Comparable {
   public int hashCode() {
     return 194357107+hash;
   }*/
-  public int getCount() {return count;}
-  public void increment() {
-    if (++count>2) {
-      System.out.println("Incremented LinkPair count above 2!");
-      //System.exit(1);
-    }
-  }
-  public void decrement() {
-    if (--count<0) {
-      System.out.println("Decremented LinkPair count below 0!");
-      //System.exit(1);
-    }
-  }
+  public int getCount() {return system!=null ? system.getCount(slot) : count;}
+  public double getPushForce() {return system!=null ? system.getPushForce(slot) : pushForce;}
+  public void setPushForce(double f) {if (system!=null) system.setPushForce(slot,f); else pushForce=f;}
+  public double getLinkWidth() {return system!=null ? system.getLinkWidth(slot) : linkWidth;}
+  public void setLinkWidth(double w) {if (system!=null) system.setLinkWidth(slot,w); else linkWidth=w;}
+  public boolean isBroken() {return system!=null ? system.isBroken(slot) : broken;}
+  public void setBroken(boolean br) {if (system!=null) system.setBroken(slot,br); else broken=br;}
+  public boolean isPlateCrosser() {return system!=null ? system.isPlateCrosser(slot) : plateCrosser;}
+  public void setPlateCrosser(boolean pc) {if (system!=null) system.setPlateCrosser(slot,pc); else plateCrosser=pc;}
+  public Color getColor() {return system!=null ? system.getColor(slot) : col;}
+  public void setColor(Color c) {if (system!=null) system.setColor(slot,c); else col=c;}
   public int compareTo(Object ob) {
     // Compares this object with the specified object for order.
     try {
@@ -230,57 +491,45 @@ class LinkPair implements Comparable {
   }
   public TecPoint getA() {return a;}
   public TecPoint getB() {return b;}
-	public double getLength() {return a.getPos().distance(b.getPos());}
-	public double getLengthSq() {return a.getPos().distanceSquared(b.getPos());}
+	public double getLength() {return a.distance(b);}
+	public double getLengthSq() {return a.distanceSquared(b);}
   // The FEA bit
 	public void sortLink() {
-    if (!broken) {
-  	  //double dx=cell2.x-cell1.x;
-  	  //double dy=cell2.y-cell1.y;
-  		double invlen=1.0/a.getPos().distance(b.getPos());
-  		//double nx=dx*invlen;
-  		//double ny=dy*invlen;
-      Vector3d linkVec=new Vector3d(b.getPos());
-      linkVec.sub(a.getPos());
-      linkVec.normalize();  // LinkVec is the normal vector pointing from a to b
+    if (!isBroken()) {
+      double pushForce=getPushForce();
+      double len=a.distance(b);
+      double lx=(b.getX()-a.getX())/len;  // (lx,ly,lz) is the normal vector pointing from a to b
+      double ly=(b.getY()-a.getY())/len;
+      double lz=(b.getZ()-a.getZ())/len;
       
   		// Remove effects of link
-      a.FEAforce.add(new Vector3d(linkVec.x*pushForce,linkVec.y*pushForce,linkVec.z*pushForce));
-      b.FEAforce.sub(new Vector3d(linkVec.x*pushForce,linkVec.y*pushForce,linkVec.z*pushForce));
+      a.addFEAforce(lx*pushForce,ly*pushForce,lz*pushForce);
+      b.addFEAforce(-lx*pushForce,-ly*pushForce,-lz*pushForce);
       
       // Work out what the pushForce _should_ be (to minimise the difference between the two tecPoints)
+      Vector3d linkVec=new Vector3d(lx,ly,lz);
   		double f1=a.getForce().dot(linkVec);  // The force on the tecPoint in the direction of the link
   		double f2=b.getForce().dot(linkVec);  // The force on the tecPoint in the direction of the link
   		double diff=f1-f2;
   		
   		double change=0;
   		pushForce=pushForce*change+ (1-change)*diff/2;
-  		if (broken) pushForce=0;
+  		if (isBroken()) pushForce=0;
+      setPushForce(pushForce);
   		
   		// Put effects back
-      a.FEAforce.sub(new Vector3d(linkVec.x*pushForce,linkVec.y*pushForce,linkVec.z*pushForce));
-      b.FEAforce.add(new Vector3d(linkVec.x*pushForce,linkVec.y*pushForce,linkVec.z*pushForce));
+      a.addFEAforce(-lx*pushForce,-ly*pushForce,-lz*pushForce);
+      b.addFEAforce(lx*pushForce,ly*pushForce,lz*pushForce);
     }
   }
   public void removeFromFEA() {
-    double invlen=1.0/a.getPos().distance(b.getPos());
-    Vector3d linkVec=new Vector3d(b.getPos());
-    linkVec.sub(a.getPos());
-    linkVec.normalize();  // LinkVec is the normal vector pointing from a to b
+    double pushForce=getPushForce();
+    double len=a.distance(b);
+    double lx=(b.getX()-a.getX())/len;  // (lx,ly,lz) is the normal vector pointing from a to b
+    double ly=(b.getY()-a.getY())/len;
+    double lz=(b.getZ()-a.getZ())/len;
     // Remove effects of link
-    a.FEAforce.add(new Vector3d(linkVec.x*pushForce,linkVec.y*pushForce,linkVec.z*pushForce));
-    b.FEAforce.sub(new Vector3d(linkVec.x*pushForce,linkVec.y*pushForce,linkVec.z*pushForce));
+    a.addFEAforce(lx*pushForce,ly*pushForce,lz*pushForce);
+    b.addFEAforce(-lx*pushForce,-ly*pushForce,-lz*pushForce);
   }
 }
-
-
-
-
-
-
-
-
-
-
-
-
@@ -0,0 +1,453 @@
+package TectonicPlanet;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * A PointStore which keeps its rows off the Java heap, in a memory-mapped
+ * file, so very large worlds don't need a very large heap (or suffer its
+ * garbage collection pauses). The owning TecPoints are still ordinary
+ * objects; only their data lives in the file.
+ *
+ * The same file holds the last checkpoint. The file is laid out as:
+ *
+ *   header       (HEADER_BYTES)
+ *   rows         (ROW_BYTES per row, capacity() rows)
+ *   checkpoints  (written by World.checkpoint(), see writeCheckpoint())
+ *
+ * The rows keep changing while the World runs, so a checkpoint carries its
+ * own copy of them; resuming copies that back over the rows in one go before
+ * the World rebuilds its points and tets. The header has two checkpoint
+ * slots, and says which holds the current one. Each new checkpoint is
+ * written clear of the current one, into the other slot, and the header only
+ * switches to it once it has been completely written, so a run which dies
+ * half way through writing one resumes from the one before. Growing the
+ * store overwrites any checkpoint the rows run into; if that was the current
+ * one, hasCheckpoint() returns false until the next one is written.
+ */
+public class MappedPointStore extends PointStore {
+    private static final int MAGIC = 0x57474350;   // "WGCP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4096;
+    private static final int ROW_BYTES = 128;
+
+    // Header fields
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_SLOTS = 16;               // Two of: offset (long, 0 if empty), length (long)
+    private static final int SLOT_BYTES = 16;
+    private static final int H_CURRENT_SLOT = 48;        // int, the slot holding the current checkpoint
+
+    // Row fields
+    private static final int X = 0, Y = 8, Z = 16;
+    private static final int OLD_X = 24, OLD_Y = 32, OLD_Z = 40;
+    private static final int ROCK_THICKNESS = 48, DENSITY = 56, BASE_DEPTH_OFFSET = 64;
+    private static final int AREA = 72, VOL_CAP = 80, VOL_CAP_2 = 88;
+    private static final int FORCE_X = 96, FORCE_Y = 104, FORCE_Z = 112;
+    private static final int PLATE_ID = 120, PLATE_SLOT = 124;
+
+    private File m_file;
+    private RandomAccessFile m_raf;
+    private FileChannel m_channel;
+    private MappedByteBuffer m_header;
+    private MappedByteBuffer m_rows;
+
+    private MappedPointStore( File file, int capacity ) throws IOException {
+        super( capacity, false, false );
+        m_file = file;
+        m_raf = new RandomAccessFile( file, "rw" );
+        m_channel = m_raf.getChannel();
+        m_header = m_channel.map( FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES );
+        m_header.order( ByteOrder.nativeOrder() );
+    }
+
+    /**
+     * Creates a new, empty, store in the given file, replacing anything
+     * already there.
+     *
+     * @param file     The file to keep the rows in.
+     * @param capacity The number of rows to make room for to start with.
+     */
+    public static MappedPointStore create( File file, int capacity ) throws IOException {
+        if( file.exists() )
+            file.delete();
+        MappedPointStore store = new MappedPointStore( file, Math.max( 1, capacity ) );
+        store.m_header.putInt( H_MAGIC, MAGIC );
+        store.m_header.putInt( H_VERSION, VERSION );
+        store._mapRows( store.capacity() );
+        return store;
+    }
+
+    /**
+     * Reopens a store written by an earlier run. The rows are mapped but not
+     * owned by any point; the World's resume code adopts them.
+     *
+     * @param file The file written by an earlier run.
+     */
+    public static MappedPointStore open( File file ) throws IOException {
+        if( !isMappedStore( file ) )
+            throw new IOException( file + " isn't a point store file" );
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        byte[] header = new byte[ H_CAPACITY + 4 ];
+        raf.readFully( header );
+        raf.close();
+        int capacity = ByteBuffer.wrap( header ).order( ByteOrder.nativeOrder() ).getInt( H_CAPACITY );
+        MappedPointStore store = new MappedPointStore( file, capacity );
+        store._mapRows( capacity );
+        return store;
+    }
+
+    /**
+     * @return Whether the file looks like one written by a MappedPointStore.
+     */
+    public static boolean isMappedStore( File file ){
+        if( !file.isFile() || file.length() < HEADER_BYTES )
+            return false;
+        try {
+            FileInputStream in = new FileInputStream( file );
+            byte[] magic = new byte[4];
+            int read = in.read( magic );
+            in.close();
+            ByteBuffer buffer = ByteBuffer.wrap( magic ).order( ByteOrder.nativeOrder() );
+            return read == 4 && buffer.getInt( 0 ) == MAGIC;
+        }
+        catch( IOException e ){
+            return false;
+        }
+    }
+
+    public File getFile(){
+        return m_file;
+    }
+
+    private void _mapRows( int capacity ) throws IOException {
+        long bytes = (long)capacity * ROW_BYTES;
+        if( bytes > Integer.MAX_VALUE )
+            throw new IOException( "Too many points for one mapped store: " + capacity );
+        m_rows = m_channel.map( FileChannel.MapMode.READ_WRITE, HEADER_BYTES, bytes );
+        m_rows.order( ByteOrder.nativeOrder() );
+        m_header.putInt( H_CAPACITY, capacity );
+    }
+
+    protected void grow( int capacity ){
+        if( capacity <= capacity() )
+            return;     // The file never shrinks
+        growOwners( capacity );
+        try {
+            // Forget any checkpoint the rows are about to run over
+            long rowsEnd = HEADER_BYTES + (long)capacity * ROW_BYTES;
+            for( int slot = 0; slot < 2; slot++ )
+                if( _slotOffset( slot ) != 0 && _slotOffset( slot ) < rowsEnd )
+                    m_header.putLong( H_SLOTS + slot * SLOT_BYTES, 0 );
+            m_header.force();
+            _mapRows( capacity );
+        }
+        catch( IOException e ){
+            System.out.println( "Couldn't grow the mapped point store - " + e );
+            e.printStackTrace( System.out );
+            System.exit( 1 );
+        }
+    }
+
+    protected void clearRow( int i ){
+        int r = i * ROW_BYTES;
+        for( int k = 0; k < PLATE_ID; k += 8 )
+            m_rows.putDouble( r + k, 0 );
+        m_rows.putDouble( r + DENSITY, 3 );
+        m_rows.putInt( r + PLATE_ID, -1 );
+        m_rows.putInt( r + PLATE_SLOT, -1 );
+    }
+
+    // Checkpointing
+
+    /**
+     * @return Whether the file holds a complete checkpoint.
+     */
+    public boolean hasCheckpoint(){
+        return _slotOffset( _currentSlot() ) != 0;
+    }
+
+    private int _currentSlot(){
+        return m_header.getInt( H_CURRENT_SLOT ) == 1 ? 1 : 0;
+    }
+
+    private long _slotOffset( int slot ){
+        return m_header.getLong( H_SLOTS + slot * SLOT_BYTES );
+    }
+
+    private long _slotLength( int slot ){
+        return m_header.getLong( H_SLOTS + slot * SLOT_BYTES + 8 );
+    }
+
+    /**
+     * Writes a checkpoint: a copy of the rows in use, followed by whatever
+     * the World writes to the given stream. It goes straight after the rows
+     * if it fits in front of the current checkpoint, or else after the
+     * current one, so the current one stays valid until this one is
+     * complete.
+     *
+     * @param writer Writes the rest of the World's state. Called again if
+     *               the first place tried turns out to be too small.
+     */
+    public void writeCheckpoint( CheckpointWriter writer ) throws IOException {
+        int current = _currentSlot();
+        long rowsEnd = HEADER_BYTES + (long)capacity() * ROW_BYTES;
+        long offset = rowsEnd;
+        long limit = Long.MAX_VALUE;
+        long length = -1;
+        if( hasCheckpoint() ){
+            limit = _slotOffset( current );
+            if( limit > rowsEnd )
+                length = _writeCheckpointAt( rowsEnd, limit, writer );
+            if( length < 0 ){
+                offset = limit + _slotLength( current );
+                limit = Long.MAX_VALUE;
+            }
+        }
+        if( length < 0 )
+            length = _writeCheckpointAt( offset, limit, writer );
+        m_channel.force( false );
+        m_rows.force();
+
+        // Fill in the other slot, and only then switch to it
+        int next = 1 - current;
+        m_header.putLong( H_SLOTS + next * SLOT_BYTES, offset );
+        m_header.putLong( H_SLOTS + next * SLOT_BYTES + 8, length );
+        m_header.force();
+        m_header.putInt( H_CURRENT_SLOT, next );
+        m_header.force();
+    }
+
+    /**
+     * Writes a checkpoint at the given offset, stopping short of limit.
+     *
+     * @return Its length, or -1 if it didn't fit.
+     */
+    private long _writeCheckpointAt( long offset, long limit, CheckpointWriter writer ) throws IOException {
+        // The rows first...
+        int rows = size();
+        if( offset + 4 + (long)rows * ROW_BYTES > limit )
+            return -1;
+        ByteBuffer snapshot = m_rows.duplicate();
+        snapshot.position( 0 ).limit( rows * ROW_BYTES );
+        ByteBuffer count = ByteBuffer.allocate( 4 ).order( ByteOrder.nativeOrder() );
+        count.putInt( 0, rows );
+        long position = offset;
+        while( count.hasRemaining() )
+            position += m_channel.write( count, position );
+        while( snapshot.hasRemaining() )
+            position += m_channel.write( snapshot, position );
+
+        // ...then the World's bit
+        m_channel.position( position );
+        BoundedOutput bounded = new BoundedOutput( Channels.newOutputStream( m_channel ), limit - position );
+        DataOutputStream data = new DataOutputStream( new BufferedOutputStream( bounded, 1 << 16 ) );
+        try {
+            writer.write( data );
+            data.flush();
+        }
+        catch( NoRoom e ){
+            return -1;
+        }
+        return m_channel.position() - offset;
+    }
+
+    // Thrown by BoundedOutput when a checkpoint would run into the one before
+    private static class NoRoom extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Passes on no more than a given number of bytes.
+     */
+    private static class BoundedOutput extends FilterOutputStream {
+        private long m_room;
+
+        BoundedOutput( OutputStream out, long room ){
+            super( out );
+            m_room = room;
+        }
+
+        public void write( int b ) throws IOException {
+            if( m_room < 1 )
+                throw new NoRoom();
+            m_room--;
+            out.write( b );
+        }
+
+        public void write( byte[] b, int off, int len ) throws IOException {
+            if( m_room < len )
+                throw new NoRoom();
+            m_room -= len;
+            out.write( b, off, len );
+        }
+    }
+
+    /**
+     * Copies the checkpoint's rows back over the live ones and returns a
+     * stream over the rest of the checkpoint. None of the rows are owned
+     * until they are adopted.
+     */
+    public DataInputStream readCheckpoint() throws IOException {
+        long offset = _slotOffset( _currentSlot() );
+        if( offset == 0 )
+            throw new IOException( m_file + " doesn't hold a complete checkpoint" );
+        ByteBuffer count = ByteBuffer.allocate( 4 ).order( ByteOrder.nativeOrder() );
+        long position = offset;
+        while( count.hasRemaining() ){
+            int read = m_channel.read( count, position );
+            if( read < 0 )
+                throw new EOFException();
+            position += read;
+        }
+        int rows = count.getInt( 0 );
+        resetRows( rows );
+        ByteBuffer target = m_rows.duplicate();
+        target.position( 0 ).limit( rows * ROW_BYTES );
+        while( target.hasRemaining() ){
+            int read = m_channel.read( target, position );
+            if( read < 0 )
+                throw new EOFException();
+            position += read;
+        }
+        m_channel.position( position );
+        return new DataInputStream( new BufferedInputStream( Channels.newInputStream( m_channel ), 1 << 16 ) );
+    }
+
+    /**
+     * Writes the World's part of a checkpoint.
+     */
+    public interface CheckpointWriter {
+        public void write( DataOutputStream data ) throws IOException;
+    }
+
+    /**
+     * Flushes the rows to disc and closes the file.
+     */
+    public void close() throws IOException {
+        m_rows.force();
+        m_header.force();
+        m_channel.close();
+        m_raf.close();
+    }
+
+    // Positions
+
+    public double getX( int i ){ return m_rows.getDouble( i * ROW_BYTES + X ); }
+    public double getY( int i ){ return m_rows.getDouble( i * ROW_BYTES + Y ); }
+    public double getZ( int i ){ return m_rows.getDouble( i * ROW_BYTES + Z ); }
+
+    public void setPos( int i, double x, double y, double z ){
+        int r = i * ROW_BYTES;
+        m_rows.putDouble( r + X, x );
+        m_rows.putDouble( r + Y, y );
+        m_rows.putDouble( r + Z, z );
+    }
+
+    public double getOldX( int i ){ return m_rows.getDouble( i * ROW_BYTES + OLD_X ); }
+    public double getOldY( int i ){ return m_rows.getDouble( i * ROW_BYTES + OLD_Y ); }
+    public double getOldZ( int i ){ return m_rows.getDouble( i * ROW_BYTES + OLD_Z ); }
+
+    public void setOldPos( int i, double x, double y, double z ){
+        int r = i * ROW_BYTES;
+        m_rows.putDouble( r + OLD_X, x );
+        m_rows.putDouble( r + OLD_Y, y );
+        m_rows.putDouble( r + OLD_Z, z );
+    }
+
+    public void copyOldPos( int i ){
+        setOldPos( i, getX( i ), getY( i ), getZ( i ) );
+    }
+
+    public double distanceSquared( int i, int j ){
+        double dx = getX( i ) - getX( j );
+        double dy = getY( i ) - getY( j );
+        double dz = getZ( i ) - getZ( j );
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    public double distanceSquared( int i, double x, double y, double z ){
+        double dx = getX( i ) - x;
+        double dy = getY( i ) - y;
+        double dz = getZ( i ) - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    // Rock column
+
+    public double getRockThickness( int i ){ return m_rows.getDouble( i * ROW_BYTES + ROCK_THICKNESS ); }
+    public void setRockThickness( int i, double t ){ m_rows.putDouble( i * ROW_BYTES + ROCK_THICKNESS, t ); }
+    public double getDensity( int i ){ return m_rows.getDouble( i * ROW_BYTES + DENSITY ); }
+    public void setDensity( int i, double d ){ m_rows.putDouble( i * ROW_BYTES + DENSITY, d ); }
+    public double getBaseDepthOffset( int i ){ return m_rows.getDouble( i * ROW_BYTES + BASE_DEPTH_OFFSET ); }
+    public void setBaseDepthOffset( int i, double d ){ m_rows.putDouble( i * ROW_BYTES + BASE_DEPTH_OFFSET, d ); }
+
+    // Erosion bookkeeping
+
+    public double getArea( int i ){ return m_rows.getDouble( i * ROW_BYTES + AREA ); }
+    public void setArea( int i, double a ){ m_rows.putDouble( i * ROW_BYTES + AREA, a ); }
+    public double getVolCap( int i ){ return m_rows.getDouble( i * ROW_BYTES + VOL_CAP ); }
+    public void setVolCap( int i, double v ){ m_rows.putDouble( i * ROW_BYTES + VOL_CAP, v ); }
+    public double getVolCap2( int i ){ return m_rows.getDouble( i * ROW_BYTES + VOL_CAP_2 ); }
+    public void setVolCap2( int i, double v ){ m_rows.putDouble( i * ROW_BYTES + VOL_CAP_2, v ); }
+
+    // FEA force
+
+    public double getForceX( int i ){ return m_rows.getDouble( i * ROW_BYTES + FORCE_X ); }
+    public double getForceY( int i ){ return m_rows.getDouble( i * ROW_BYTES + FORCE_Y ); }
+    public double getForceZ( int i ){ return m_rows.getDouble( i * ROW_BYTES + FORCE_Z ); }
+
+    public void addForce( int i, double x, double y, double z ){
+        int r = i * ROW_BYTES;
+        m_rows.putDouble( r + FORCE_X, m_rows.getDouble( r + FORCE_X ) + x );
+        m_rows.putDouble( r + FORCE_Y, m_rows.getDouble( r + FORCE_Y ) + y );
+        m_rows.putDouble( r + FORCE_Z, m_rows.getDouble( r + FORCE_Z ) + z );
+    }
+
+    public void clearForce( int i ){
+        int r = i * ROW_BYTES;
+        m_rows.putDouble( r + FORCE_X, 0 );
+        m_rows.putDouble( r + FORCE_Y, 0 );
+        m_rows.putDouble( r + FORCE_Z, 0 );
+    }
+
+    // Plate membership
+
+    public int getPlateId( int i ){ return m_rows.getInt( i * ROW_BYTES + PLATE_ID ); }
+    public int getPlateSlot( int i ){ return m_rows.getInt( i * ROW_BYTES + PLATE_SLOT ); }
+
+    public void setPlate( int i, int plateId, int plateSlot ){
+        m_rows.putInt( i * ROW_BYTES + PLATE_ID, plateId );
+        m_rows.putInt( i * ROW_BYTES + PLATE_SLOT, plateSlot );
+    }
+
+    public void setPlateSlot( int i, int plateSlot ){
+        m_rows.putInt( i * ROW_BYTES + PLATE_SLOT, plateSlot );
+    }
+
+    // Whole-store sweeps
+
+    public void clearForces(){
+        for( int i = 0; i < size(); i++ )
+            clearForce( i );
+    }
+
+    public void clearAreas(){
+        for( int i = 0; i < size(); i++ )
+            setArea( i, 0 );
+    }
+
+    public void resetVolCaps( double v ){
+        for( int i = 0; i < size(); i++ ){
+            setVolCap( i, v );
+            setVolCap2( i, v );
+        }
+    }
+
+    public void scaleBaseDepthOffsets( double s ){
+        for( int i = 0; i < size(); i++ )
+            setBaseDepthOffset( i, getBaseDepthOffset( i ) * s );
+    }
+}
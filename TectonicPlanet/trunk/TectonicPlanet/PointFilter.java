@@ -0,0 +1,9 @@
+package TectonicPlanet;
+
+/**
+ * Picks out TecPoints, for example the points of a plate which should be
+ * split off onto a new one.
+ */
+public interface PointFilter {
+    public boolean accept( TecPoint point );
+}
@@ -0,0 +1,473 @@
+package TectonicPlanet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * PointGrid buckets the points of a World into the cells of a SphereGrid, so
+ * the points near a position can be found without looking at every point.
+ * Since the points all lie on the surface, only the surface is divided up,
+ * and the number of cells grows with the number of points rather than
+ * faster.
+ *
+ * The grid is a cell list: the PointStore indices of the points, sorted by
+ * cell, and the position in that list at which each cell starts. It is
+ * rebuilt from scratch with a counting sort, which is linear in the number of
+ * points and allocates nothing once the arrays are big enough. Queries hand
+ * each point found to a PointVisitor rather than building a collection.
+ *
+ * Between rebuilds, update() moves just the points which have changed cell
+ * (and adds new ones): each is blanked out of the sorted list and put on a
+ * short overflow list for its new cell. Once too many points have moved that
+ * way the grid is sorted again. Rows which have been freed are skipped.
+ */
+public class PointGrid {
+    private PointStore m_points;
+    private SphereGrid m_cells;
+    private double m_reach;     // How far visitNear() looks
+    private int[] m_cellStart;  // Where each cell starts in m_sorted; one extra entry marks the end
+    private int[] m_sorted;     // Point indices, by cell; -1 where a point has moved out
+    private int m_count;
+    private int[] m_cellOf;     // The cell each row is filed under, -1 if none
+    private int[] m_slotOf;     // Where each row is in m_sorted, -1 if on an overflow list
+    private int[] m_extraHead;  // The first row of each cell's overflow list, -1 if empty
+    private int[] m_extraNext;  // The next row on the same overflow list, -1 at the end
+    private int m_extraCount;   // Rows on overflow lists
+    private int[] m_scratch;
+
+    /**
+     * @param points   The store holding the points' positions.
+     * @param radius   The planet radius.
+     * @param cellSize Roughly how wide each cell should be. visitNear() finds
+     *                 everything within two cell widths.
+     */
+    public PointGrid( PointStore points, double radius, double cellSize ){
+        m_points = points;
+        m_cells = new SphereGrid( radius, cellSize );
+        m_reach = 2 * cellSize;
+        m_cellStart = new int[ m_cells.getNumCells() + 1 ];
+        m_sorted = new int[ 1024 ];
+        m_count = 0;
+        m_cellOf = new int[ 0 ];
+        m_slotOf = new int[ 0 ];
+        m_extraNext = new int[ 0 ];
+        m_extraHead = new int[ m_cells.getNumCells() ];
+        Arrays.fill( m_extraHead, -1 );
+        m_extraCount = 0;
+    }
+
+    /**
+     * @return The cells the points are bucketed into.
+     */
+    public SphereGrid getCells(){
+        return m_cells;
+    }
+
+    private int _cellIndex( int i ){
+        return m_cells.cell( m_points.getX( i ), m_points.getY( i ), m_points.getZ( i ) );
+    }
+
+    /**
+     * Empties the grid and puts the given points into it.
+     *
+     * @param points The TecPoints to put in the grid, all of them rows of this
+     *               grid's store.
+     */
+    public void rebuild( ArrayList points ){
+        int n = points.size();
+        if( m_sorted.length < n )
+            m_sorted = new int[ n + n / 4 ];
+        _ensureRows( m_points.capacity() );
+        Arrays.fill( m_cellOf, -1 );
+        for( int k = 0; k < n; k++ ){
+            int i = ((TecPoint)points.get( k )).getIndex();
+            m_sorted[k] = i;
+            m_cellOf[i] = _cellIndex( i );
+        }
+        m_count = n;
+        _sort();
+    }
+
+    /**
+     * Brings the grid up to date after points have moved or been added,
+     * moving only the points whose cell has changed.
+     *
+     * @param points All the TecPoints which should be in the grid.
+     * @return The number of points which had to be moved.
+     */
+    public int update( ArrayList points ){
+        _ensureRows( m_points.capacity() );
+        int moved = 0;
+        for( int k = 0; k < points.size(); k++ ){
+            if( _refile( ((TecPoint)points.get( k )).getIndex() ) )
+                moved++;
+        }
+
+        // Once the overflow lists get long, sorting them back in is cheaper
+        // than going through them on every query
+        if( m_extraCount > 64 + m_count / 8 )
+            _fold();
+        return moved;
+    }
+
+    /**
+     * Brings one point up to date after it has moved, for when only a few
+     * points have moved and going through them all with update() would cost
+     * too much.
+     *
+     * @param i The PointStore index of the point.
+     * @return True if the point had to change cell.
+     */
+    public boolean refile( int i ){
+        _ensureRows( m_points.capacity() );
+        boolean moved = _refile( i );
+        if( m_extraCount > 64 + m_count / 8 )
+            _fold();
+        return moved;
+    }
+
+    // Puts a row on the overflow list of its new cell, if it has changed cell
+    private boolean _refile( int i ){
+        int cell = _cellIndex( i );
+        if( cell == m_cellOf[i] )
+            return false;
+        _unfile( i );
+        m_cellOf[i] = cell;
+        m_slotOf[i] = -1;
+        m_extraNext[i] = m_extraHead[cell];
+        m_extraHead[cell] = i;
+        m_extraCount++;
+        return true;
+    }
+
+    // Takes a row out of wherever it is filed
+    private void _unfile( int i ){
+        int cell = m_cellOf[i];
+        if( cell < 0 )
+            return;
+        if( m_slotOf[i] >= 0 ){
+            m_sorted[ m_slotOf[i] ] = -1;
+            return;
+        }
+        if( m_extraHead[cell] == i )
+            m_extraHead[cell] = m_extraNext[i];
+        else {
+            int j = m_extraHead[cell];
+            while( m_extraNext[j] != i )
+                j = m_extraNext[j];
+            m_extraNext[j] = m_extraNext[i];
+        }
+        m_extraCount--;
+    }
+
+    // Sorts everything in the grid, overflow lists and all, back into one list
+    private void _fold(){
+        int n = 0;
+        for( int k = 0; k < m_count; k++ )
+            if( m_sorted[k] >= 0 )
+                m_sorted[n++] = m_sorted[k];
+        if( m_sorted.length < n + m_extraCount ){
+            int[] grown = new int[ n + m_extraCount + (n + m_extraCount) / 4 ];
+            System.arraycopy( m_sorted, 0, grown, 0, n );
+            m_sorted = grown;
+        }
+        for( int cell = 0; cell < m_extraHead.length; cell++ ){
+            for( int i = m_extraHead[cell]; i >= 0; i = m_extraNext[i] )
+                m_sorted[n++] = i;
+        }
+        m_count = n;
+        _sort();
+    }
+
+    // Counting sorts the first m_count entries of m_sorted by m_cellOf, and
+    // empties the overflow lists
+    private void _sort(){
+        int n = m_count;
+        int cells = m_cellStart.length - 1;
+        if( m_scratch == null || m_scratch.length < n )
+            m_scratch = new int[ m_sorted.length ];
+        System.arraycopy( m_sorted, 0, m_scratch, 0, n );
+
+        // Count the points in each cell, then turn the counts into the end of
+        // each cell...
+        Arrays.fill( m_cellStart, 0 );
+        for( int k = 0; k < n; k++ )
+            m_cellStart[ m_cellOf[ m_scratch[k] ] ]++;
+        for( int c = 1; c < cells; c++ )
+            m_cellStart[c] += m_cellStart[c - 1];
+        m_cellStart[cells] = n;
+
+        // ...and fill each cell from the end, leaving its entry at its start
+        for( int k = n - 1; k >= 0; k-- ){
+            int i = m_scratch[k];
+            int slot = --m_cellStart[ m_cellOf[i] ];
+            m_sorted[slot] = i;
+            m_slotOf[i] = slot;
+        }
+        Arrays.fill( m_extraHead, -1 );
+        m_extraCount = 0;
+    }
+
+    private void _ensureRows( int rows ){
+        if( m_cellOf.length >= rows )
+            return;
+        int old = m_cellOf.length;
+        int[] cellOf = new int[ rows ];
+        System.arraycopy( m_cellOf, 0, cellOf, 0, old );
+        Arrays.fill( cellOf, old, rows, -1 );
+        m_cellOf = cellOf;
+        int[] slotOf = new int[ rows ];
+        System.arraycopy( m_slotOf, 0, slotOf, 0, old );
+        m_slotOf = slotOf;
+        int[] next = new int[ rows ];
+        System.arraycopy( m_extraNext, 0, next, 0, old );
+        m_extraNext = next;
+    }
+
+    /**
+     * Renumbers the points in the grid after their store has been compacted.
+     *
+     * @param remap The new index of each old row, or -1 if it was free, as
+     *              returned by PointStore.compact().
+     */
+    public void remap( int[] remap ){
+        if( m_extraCount > 0 )
+            _fold();
+        int[] cellOf = new int[ m_cellOf.length ];
+        Arrays.fill( cellOf, -1 );
+        int n = 0;
+        for( int k = 0; k < m_count; k++ ){
+            int i = m_sorted[k];
+            int j = i >= 0 && i < remap.length ? remap[i] : -1;
+            if( j >= 0 ){
+                m_sorted[n++] = j;
+                cellOf[j] = m_cellOf[i];
+            }
+        }
+        m_cellOf = cellOf;
+        m_count = n;
+        _sort();
+    }
+
+    /**
+     * Visits the points in every cell which might hold a point within the
+     * given distance of a position. Some of the points visited may be further
+     * away than that.
+     *
+     * @return False if the visitor stopped the query.
+     */
+    public boolean visitBall( double x, double y, double z, double radius, PointVisitor visitor ){
+        double angle = SphereGrid.capAngle( x, y, z, radius );
+        for( int face = 0; face < 6; face++ ){
+            long range = m_cells.faceRange( face, x, y, z, angle );
+            if( range < 0 )
+                continue;
+            int firstColumn = SphereGrid.firstColumn( range ), lastColumn = SphereGrid.lastColumn( range );
+            for( int i = SphereGrid.firstRow( range ); i <= SphereGrid.lastRow( range ); i++ ){
+                // The cells of a row are next to each other in m_sorted
+                int row = m_cells.cellIndex( face, i, 0 );
+                int end = m_cellStart[ row + lastColumn + 1 ];
+                for( int k = m_cellStart[ row + firstColumn ]; k < end; k++ ){
+                    int p = m_sorted[k];
+                    if( p >= 0 && m_points.getOwner( p ) != null && !visitor.visit( p ) )
+                        return false;
+                }
+                if( m_extraCount > 0 ){
+                    for( int cell = row + firstColumn; cell <= row + lastColumn; cell++ )
+                        for( int p = m_extraHead[cell]; p >= 0; p = m_extraNext[p] )
+                            if( m_points.getOwner( p ) != null && !visitor.visit( p ) )
+                                return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visits the points filed under one cell of getCells().
+     *
+     * @return False if the visitor stopped the query.
+     */
+    public boolean visitCell( int cell, PointVisitor visitor ){
+        for( int k = m_cellStart[cell]; k < m_cellStart[cell + 1]; k++ ){
+            int p = m_sorted[k];
+            if( p >= 0 && m_points.getOwner( p ) != null && !visitor.visit( p ) )
+                return false;
+        }
+        for( int p = m_extraHead[cell]; p >= 0; p = m_extraNext[p] )
+            if( m_points.getOwner( p ) != null && !visitor.visit( p ) )
+                return false;
+        return true;
+    }
+
+    /**
+     * Visits the points around a position: everything within two cell
+     * widths, and perhaps a few more.
+     *
+     * @return False if the visitor stopped the query.
+     */
+    public boolean visitNear( double x, double y, double z, PointVisitor visitor ){
+        return visitBall( x, y, z, m_reach, visitor );
+    }
+
+    /**
+     * Visits the points around two positions: everything within two cell
+     * widths of the line between them, and perhaps a few more.
+     *
+     * @return False if the visitor stopped the query.
+     */
+    public boolean visitNear( double x1, double y1, double z1, double x2, double y2, double z2, PointVisitor visitor ){
+        double dx = x2 - x1, dy = y2 - y1, dz = z2 - z1;
+        double halfLength = Math.sqrt( dx * dx + dy * dy + dz * dz ) / 2;
+        return visitBall( (x1 + x2) / 2, (y1 + y2) / 2, (z1 + z2) / 2, halfLength + m_reach, visitor );
+    }
+
+    /**
+     * Finds the k points nearest a position. Searches the cells around the
+     * position, keeping the best k found so far in a max-heap, and searches
+     * twice as far each time until the worst of them is within the distance
+     * searched. Allocates nothing, and only reads the grid, so it can be used
+     * from several threads with their own arrays.
+     *
+     * @param k      The number of points wanted.
+     * @param out    Filled with the PointStore indices of the points found,
+     *               nearest first. Must have room for k.
+     * @param distSq Filled with the squared distance to each point found.
+     *               Must have room for k.
+     * @return The number of points found: k, unless there are fewer than k
+     *         points in the grid.
+     */
+    public int nearest( double x, double y, double z, int k, int[] out, double[] distSq ){
+        if( k <= 0 )
+            return 0;
+        int found = 0;
+        for( double reach = m_reach / 2; ; reach *= 2 ){
+            double angle = SphereGrid.capAngle( x, y, z, reach );
+            found = 0;
+            for( int face = 0; face < 6; face++ ){
+                long range = m_cells.faceRange( face, x, y, z, angle );
+                if( range < 0 )
+                    continue;
+                int firstColumn = SphereGrid.firstColumn( range ), lastColumn = SphereGrid.lastColumn( range );
+                for( int i = SphereGrid.firstRow( range ); i <= SphereGrid.lastRow( range ); i++ ){
+                    int row = m_cells.cellIndex( face, i, 0 );
+                    found = _nearestIn( row + firstColumn, row + lastColumn, x, y, z, k, out, distSq, found );
+                }
+            }
+
+            // Anything not searched is further away than reach
+            if( (found == k && distSq[0] <= reach * reach) || angle >= Math.PI )
+                break;
+        }
+
+        // Turn the heap into a sorted list, nearest first
+        for( int n = found - 1; n > 0; n-- ){
+            _swap( out, distSq, 0, n );
+            _siftDown( out, distSq, 0, n );
+        }
+        return found;
+    }
+
+    private int _nearestIn( int firstCell, int lastCell, double x, double y, double z, int k, int[] out, double[] distSq, int found ){
+        int end = m_cellStart[lastCell + 1];
+        for( int n = m_cellStart[firstCell]; n < end; n++ ){
+            int i = m_sorted[n];
+            if( i >= 0 )
+                found = _offer( i, x, y, z, k, out, distSq, found );
+        }
+        if( m_extraCount > 0 ){
+            for( int cell = firstCell; cell <= lastCell; cell++ )
+                for( int i = m_extraHead[cell]; i >= 0; i = m_extraNext[i] )
+                    found = _offer( i, x, y, z, k, out, distSq, found );
+        }
+        return found;
+    }
+
+    // Puts a point in the heap if it is one of the k nearest so far
+    private int _offer( int i, double x, double y, double z, int k, int[] out, double[] distSq, int found ){
+        if( m_points.getOwner( i ) == null )
+            return found;
+        double d = m_points.distanceSquared( i, x, y, z );
+        if( found < k ){
+            // Still filling the heap: add at the bottom and sift up
+            int c = found++;
+            out[c] = i;
+            distSq[c] = d;
+            while( c > 0 && distSq[(c - 1) / 2] < distSq[c] ){
+                _swap( out, distSq, c, (c - 1) / 2 );
+                c = (c - 1) / 2;
+            }
+        }
+        else if( d < distSq[0] ){
+            // Nearer than the worst so far: replace it
+            out[0] = i;
+            distSq[0] = d;
+            _siftDown( out, distSq, 0, found );
+        }
+        return found;
+    }
+
+    private static void _siftDown( int[] out, double[] distSq, int c, int size ){
+        while( true ){
+            int l = 2 * c + 1, r = l + 1, largest = c;
+            if( l < size && distSq[l] > distSq[largest] )
+                largest = l;
+            if( r < size && distSq[r] > distSq[largest] )
+                largest = r;
+            if( largest == c )
+                return;
+            _swap( out, distSq, c, largest );
+            c = largest;
+        }
+    }
+
+    private static void _swap( int[] out, double[] distSq, int a, int b ){
+        int i = out[a];
+        out[a] = out[b];
+        out[b] = i;
+        double d = distSq[a];
+        distSq[a] = distSq[b];
+        distSq[b] = d;
+    }
+
+    /**
+     * A PointVisitor which just remembers the points it is given, for callers
+     * which need to go over the results of a query more than once. Clear it
+     * and reuse it rather than making a new one for each query.
+     */
+    public static class Collector implements PointVisitor {
+        private PointStore m_points;
+        private int[] m_found = new int[ 64 ];
+        private int m_count = 0;
+
+        public Collector( PointStore points ){
+            m_points = points;
+        }
+
+        public void clear(){
+            m_count = 0;
+        }
+
+        public boolean visit( int point ){
+            if( m_count == m_found.length ){
+                int[] grown = new int[ m_found.length * 2 ];
+                System.arraycopy( m_found, 0, grown, 0, m_count );
+                m_found = grown;
+            }
+            m_found[m_count++] = point;
+            return true;
+        }
+
+        public int size(){
+            return m_count;
+        }
+
+        public int get( int i ){
+            return m_found[i];
+        }
+
+        public TecPoint getPoint( int i ){
+            return m_points.getOwner( m_found[i] );
+        }
+    }
+}
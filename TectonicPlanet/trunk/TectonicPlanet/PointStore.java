@@ -0,0 +1,536 @@
+package TectonicPlanet;
+
+import java.util.Arrays;
+
+/**
+ * PointStore holds the per-point simulation state of a World in flat
+ * primitive columns, indexed by a dense point index. A TecPoint is a thin view
+ * onto one row of a store, so LinkSystem, Tet and TecPlate keep working with
+ * TecPoint objects while the per-point sweeps in World run over the columns
+ * directly.
+ *
+ * Rows of dead points are handed back with free() and reused by later
+ * allocations, so indices stay dense; compact() closes up any remaining holes
+ * by renumbering the live points.
+ *
+ * A store can be made single precision, in which case the previous positions,
+ * the rock column and forces are kept as floats, halving their memory. They
+ * are still read and written as doubles, so all the arithmetic is done in
+ * double precision. Current positions are always kept as doubles: the
+ * triangulation relies on points lying on the sphere to well within a float's
+ * rounding error.
+ *
+ * Subclasses can keep the rows somewhere other than the Java heap (see
+ * MappedPointStore) by overriding the accessors, clearRow() and grow().
+ */
+public class PointStore {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // The columns which can be kept in single precision
+    private static final int OLD_X = 0, OLD_Y = 1, OLD_Z = 2;
+    private static final int ROCK_THICKNESS = 3, DENSITY = 4, BASE_DEPTH_OFFSET = 5;
+    private static final int FORCE_X = 6, FORCE_Y = 7, FORCE_Z = 8;
+    private static final int NUM_COLUMNS = 9;
+
+    private int m_size;         // Rows below this have been handed out at some point
+    private TecPoint[] m_owner; // null for free rows
+    private int[] m_freeRows;
+    private int m_freeCount;
+
+    // Current positions
+    private double[] m_x, m_y, m_z;
+
+    // Previous positions, rock column and FEA force. Exactly one of these is
+    // non-null.
+    private double[][] m_wide;
+    private float[][] m_narrow;
+
+    // Erosion bookkeeping
+    private double[] m_area, m_volCap, m_volCap2;
+
+    // Plate membership: the id of the point's plate, and its position in
+    // that plate's list of points (-1 if it isn't on one)
+    private int[] m_plateId, m_plateSlot;
+
+    public PointStore(){
+        this( DEFAULT_CAPACITY );
+    }
+
+    public PointStore( int capacity ){
+        this( capacity, false );
+    }
+
+    /**
+     * @param capacity        The number of rows to start with.
+     * @param singlePrecision Whether to keep previous positions, rock
+     *                        columns and forces as floats.
+     */
+    public PointStore( int capacity, boolean singlePrecision ){
+        this( capacity, singlePrecision, true );
+    }
+
+    /**
+     * @param allocateColumns False for subclasses which keep the columns
+     *                        themselves; only the row bookkeeping is set up.
+     */
+    protected PointStore( int capacity, boolean singlePrecision, boolean allocateColumns ){
+        capacity = Math.max( 1, capacity );
+        m_size = 0;
+        m_owner = new TecPoint[capacity];
+        m_freeRows = new int[16];
+        m_freeCount = 0;
+        if( !allocateColumns )
+            return;
+        m_x = new double[capacity];
+        m_y = new double[capacity];
+        m_z = new double[capacity];
+        if( singlePrecision )
+            m_narrow = new float[NUM_COLUMNS][capacity];
+        else
+            m_wide = new double[NUM_COLUMNS][capacity];
+        m_area = new double[capacity];
+        m_volCap = new double[capacity];
+        m_volCap2 = new double[capacity];
+        m_plateId = new int[capacity];
+        m_plateSlot = new int[capacity];
+    }
+
+    /**
+     * @return Whether previous positions, rock columns and forces are kept as
+     *         floats.
+     */
+    public boolean isSinglePrecision(){
+        return m_narrow != null;
+    }
+
+    private double _get( int column, int i ){
+        return m_narrow != null ? m_narrow[column][i] : m_wide[column][i];
+    }
+
+    private void _set( int column, int i, double v ){
+        if( m_narrow != null )
+            m_narrow[column][i] = (float)v;
+        else
+            m_wide[column][i] = v;
+    }
+
+    private void _add( int column, int i, double v ){
+        if( m_narrow != null )
+            m_narrow[column][i] += v;
+        else
+            m_wide[column][i] += v;
+    }
+
+    private void _fill( int column, double v ){
+        if( m_narrow != null )
+            Arrays.fill( m_narrow[column], 0, m_size, (float)v );
+        else
+            Arrays.fill( m_wide[column], 0, m_size, v );
+    }
+
+    /**
+     * Reserves a new row for the given point and fills it with the default
+     * rock column.
+     *
+     * @param owner The TecPoint which will view the new row.
+     * @return The index of the new row.
+     */
+    public int allocate( TecPoint owner ){
+        int i;
+        if( m_freeCount > 0 )
+            i = m_freeRows[--m_freeCount];
+        else {
+            if( m_size == m_owner.length )
+                grow( m_owner.length * 2 );
+            i = m_size++;
+        }
+        m_owner[i] = owner;
+        clearRow( i );
+        return i;
+    }
+
+    /**
+     * Fills a newly allocated row with the default rock column.
+     */
+    protected void clearRow( int i ){
+        m_x[i] = m_y[i] = m_z[i] = 0;
+        for( int c = 0; c < NUM_COLUMNS; c++ )
+            _set( c, i, 0 );
+        _set( DENSITY, i, 3 );
+        m_area[i] = 0;
+        m_volCap[i] = m_volCap2[i] = 0;
+        m_plateId[i] = m_plateSlot[i] = -1;
+    }
+
+    /**
+     * Hands a row back to the store, to be reused by a later allocate().
+     *
+     * @param i The row of a point which has been removed from the World.
+     */
+    public void free( int i ){
+        if( m_owner[i] == null )
+            return;
+        m_owner[i] = null;
+        if( m_freeCount == m_freeRows.length ){
+            int[] grown = new int[ m_freeRows.length * 2 ];
+            System.arraycopy( m_freeRows, 0, grown, 0, m_freeCount );
+            m_freeRows = grown;
+        }
+        m_freeRows[m_freeCount++] = i;
+    }
+
+    /**
+     * Moves the live rows down to close up the holes left by free(), telling
+     * each point its new index, and shrinks the columns if they have become
+     * much bigger than needed.
+     *
+     * @return For each old row index, the new index of its point, or -1 if
+     *         the row was free.
+     */
+    public int[] compact(){
+        int[] remap = new int[ m_size ];
+        int n = 0;
+        for( int i = 0; i < m_size; i++ ){
+            if( m_owner[i] == null ){
+                remap[i] = -1;
+                continue;
+            }
+            if( i != n ){
+                copyRow( i, this, n );
+                m_owner[n] = m_owner[i];
+                m_owner[i] = null;
+                m_owner[n].setIndex( n );
+            }
+            remap[i] = n++;
+        }
+        m_size = n;
+        m_freeCount = 0;
+        if( m_owner.length > DEFAULT_CAPACITY && m_owner.length > 2 * n )
+            grow( Math.max( DEFAULT_CAPACITY, n + n / 2 ) );
+        return remap;
+    }
+
+    /**
+     * Moves the live rows into the given order, telling each point its new
+     * index. Like compact(), this closes up the free rows. The rows are moved
+     * round in place, a cycle at a time through one spare row, so this
+     * needs no second copy of the store.
+     *
+     * @param rows Every live row, in the order wanted: rows[k] becomes row k.
+     * @return For each old row index, the new index of its point, or -1 if
+     *         the row was free.
+     */
+    public int[] reorder( int[] rows ){
+        int n = rows.length;
+        int[] remap = new int[ m_size ];
+        Arrays.fill( remap, -1 );
+        for( int k = 0; k < n; k++ )
+            remap[ rows[k] ] = k;
+
+        // Where each row's data comes from: rows, then the free rows, so
+        // every row is moved somewhere
+        int[] from = new int[ m_size ];
+        System.arraycopy( rows, 0, from, 0, n );
+        int tail = n;
+        for( int i = 0; i < m_size; i++ )
+            if( remap[i] < 0 )
+                from[tail++] = i;
+
+        PointStore spare = new PointStore( 1, isSinglePrecision() );
+        boolean[] moved = new boolean[ m_size ];
+        for( int start = 0; start < m_size; start++ ){
+            if( moved[start] || from[start] == start )
+                continue;
+            copyRow( start, spare, 0 );
+            TecPoint owner = m_owner[start];
+            int j = start;
+            while( from[j] != start ){
+                copyRow( from[j], this, j );
+                m_owner[j] = m_owner[ from[j] ];
+                moved[j] = true;
+                j = from[j];
+            }
+            spare.copyRow( 0, this, j );
+            m_owner[j] = owner;
+            moved[j] = true;
+        }
+        for( int k = 0; k < n; k++ )
+            m_owner[k].setIndex( k );
+        for( int k = n; k < m_size; k++ )
+            m_owner[k] = null;
+        m_size = n;
+        m_freeCount = 0;
+        return remap;
+    }
+
+    /**
+     * Takes ownership of rows which already hold data, as when a store is
+     * reopened: sets the number of rows handed out and forgets all owners.
+     * Rows are then claimed with adopt(), and finishAdopting() frees the rest.
+     */
+    protected void resetRows( int size ){
+        if( size > m_owner.length )
+            grow( size );
+        Arrays.fill( m_owner, null );
+        m_size = size;
+        m_freeCount = 0;
+    }
+
+    /**
+     * Makes the given point the owner of a row which already holds its data.
+     */
+    public void adopt( int i, TecPoint owner ){
+        m_owner[i] = owner;
+    }
+
+    /**
+     * Hands back every row below size() which wasn't adopted.
+     */
+    public void finishAdopting(){
+        m_freeCount = 0;
+        for( int i = m_size - 1; i >= 0; i-- ){
+            if( m_owner[i] == null ){
+                if( m_freeCount == m_freeRows.length ){
+                    int[] grown = new int[ m_freeRows.length * 2 ];
+                    System.arraycopy( m_freeRows, 0, grown, 0, m_freeCount );
+                    m_freeRows = grown;
+                }
+                m_freeRows[m_freeCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * Copies everything but the owner of row i into row j of another (or the
+     * same) store. The two stores needn't have the same precision.
+     */
+    public void copyRow( int i, PointStore dst, int j ){
+        dst.setPos( j, getX( i ), getY( i ), getZ( i ) );
+        dst.setOldPos( j, getOldX( i ), getOldY( i ), getOldZ( i ) );
+        dst.setRockThickness( j, getRockThickness( i ) );
+        dst.setDensity( j, getDensity( i ) );
+        dst.setBaseDepthOffset( j, getBaseDepthOffset( i ) );
+        dst.setArea( j, getArea( i ) );
+        dst.setVolCap( j, getVolCap( i ) );
+        dst.setVolCap2( j, getVolCap2( i ) );
+        dst.clearForce( j );
+        dst.addForce( j, getForceX( i ), getForceY( i ), getForceZ( i ) );
+        dst.setPlate( j, getPlateId( i ), getPlateSlot( i ) );
+    }
+
+    /**
+     * @return The number of rows there is room for without growing.
+     */
+    public int capacity(){
+        return m_owner.length;
+    }
+
+    /**
+     * Resizes the owner list to the given capacity.
+     */
+    protected final void growOwners( int capacity ){
+        m_owner = (TecPoint[])_copy( m_owner, new TecPoint[capacity] );
+    }
+
+    /**
+     * Resizes every column to the given capacity (which may be smaller, but
+     * never below size()).
+     */
+    protected void grow( int capacity ){
+        growOwners( capacity );
+        m_x = _copy( m_x, capacity );
+        m_y = _copy( m_y, capacity );
+        m_z = _copy( m_z, capacity );
+        for( int c = 0; c < NUM_COLUMNS; c++ ){
+            if( m_narrow != null )
+                m_narrow[c] = _copy( m_narrow[c], capacity );
+            else
+                m_wide[c] = _copy( m_wide[c], capacity );
+        }
+        m_area = _copy( m_area, capacity );
+        m_volCap = _copy( m_volCap, capacity );
+        m_volCap2 = _copy( m_volCap2, capacity );
+        m_plateId = _copy( m_plateId, capacity );
+        m_plateSlot = _copy( m_plateSlot, capacity );
+    }
+
+    private static double[] _copy( double[] src, int capacity ){
+        double[] dst = new double[capacity];
+        System.arraycopy( src, 0, dst, 0, Math.min( src.length, capacity ) );
+        return dst;
+    }
+
+    private static float[] _copy( float[] src, int capacity ){
+        float[] dst = new float[capacity];
+        System.arraycopy( src, 0, dst, 0, Math.min( src.length, capacity ) );
+        return dst;
+    }
+
+    private static int[] _copy( int[] src, int capacity ){
+        int[] dst = new int[capacity];
+        System.arraycopy( src, 0, dst, 0, Math.min( src.length, capacity ) );
+        return dst;
+    }
+
+    private static Object[] _copy( Object[] src, Object[] dst ){
+        System.arraycopy( src, 0, dst, 0, Math.min( src.length, dst.length ) );
+        return dst;
+    }
+
+    /**
+     * @return One more than the highest row index in use; every index of a
+     *         live point is below this.
+     */
+    public int size(){
+        return m_size;
+    }
+
+    /**
+     * @return The number of rows currently owned by a point.
+     */
+    public int liveCount(){
+        return m_size - m_freeCount;
+    }
+
+    public TecPoint getOwner( int i ){
+        return m_owner[i];
+    }
+
+    // Positions
+
+    public double getX( int i ){ return m_x[i]; }
+    public double getY( int i ){ return m_y[i]; }
+    public double getZ( int i ){ return m_z[i]; }
+
+    public void setPos( int i, double x, double y, double z ){
+        m_x[i] = x;
+        m_y[i] = y;
+        m_z[i] = z;
+    }
+
+    public double getOldX( int i ){ return _get( OLD_X, i ); }
+    public double getOldY( int i ){ return _get( OLD_Y, i ); }
+    public double getOldZ( int i ){ return _get( OLD_Z, i ); }
+
+    public void setOldPos( int i, double x, double y, double z ){
+        _set( OLD_X, i, x );
+        _set( OLD_Y, i, y );
+        _set( OLD_Z, i, z );
+    }
+
+    public void copyOldPos( int i ){
+        _set( OLD_X, i, m_x[i] );
+        _set( OLD_Y, i, m_y[i] );
+        _set( OLD_Z, i, m_z[i] );
+    }
+
+    public double distanceSquared( int i, int j ){
+        double dx = m_x[i] - m_x[j];
+        double dy = m_y[i] - m_y[j];
+        double dz = m_z[i] - m_z[j];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    public double distanceSquared( int i, double x, double y, double z ){
+        double dx = m_x[i] - x;
+        double dy = m_y[i] - y;
+        double dz = m_z[i] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    // Rock column
+
+    public double getRockThickness( int i ){ return _get( ROCK_THICKNESS, i ); }
+    public void setRockThickness( int i, double t ){ _set( ROCK_THICKNESS, i, t ); }
+    public double getDensity( int i ){ return _get( DENSITY, i ); }
+    public void setDensity( int i, double d ){ _set( DENSITY, i, d ); }
+    public double getBaseDepthOffset( int i ){ return _get( BASE_DEPTH_OFFSET, i ); }
+    public void setBaseDepthOffset( int i, double d ){ _set( BASE_DEPTH_OFFSET, i, d ); }
+
+    // Erosion bookkeeping
+
+    public double getArea( int i ){ return m_area[i]; }
+    public void setArea( int i, double a ){ m_area[i] = a; }
+    public double getVolCap( int i ){ return m_volCap[i]; }
+    public void setVolCap( int i, double v ){ m_volCap[i] = v; }
+    public double getVolCap2( int i ){ return m_volCap2[i]; }
+    public void setVolCap2( int i, double v ){ m_volCap2[i] = v; }
+
+    // FEA force
+
+    public double getForceX( int i ){ return _get( FORCE_X, i ); }
+    public double getForceY( int i ){ return _get( FORCE_Y, i ); }
+    public double getForceZ( int i ){ return _get( FORCE_Z, i ); }
+
+    public void addForce( int i, double x, double y, double z ){
+        _add( FORCE_X, i, x );
+        _add( FORCE_Y, i, y );
+        _add( FORCE_Z, i, z );
+    }
+
+    public void clearForce( int i ){
+        _set( FORCE_X, i, 0 );
+        _set( FORCE_Y, i, 0 );
+        _set( FORCE_Z, i, 0 );
+    }
+
+    // Plate membership
+
+    public int getPlateId( int i ){ return m_plateId[i]; }
+    public int getPlateSlot( int i ){ return m_plateSlot[i]; }
+
+    public void setPlate( int i, int plateId, int plateSlot ){
+        m_plateId[i] = plateId;
+        m_plateSlot[i] = plateSlot;
+    }
+
+    public void setPlateSlot( int i, int plateSlot ){
+        m_plateSlot[i] = plateSlot;
+    }
+
+    // Whole-store sweeps used by World.timeStep()
+
+    /**
+     * Zeroes the FEA force of every point.
+     */
+    public void clearForces(){
+        _fill( FORCE_X, 0 );
+        _fill( FORCE_Y, 0 );
+        _fill( FORCE_Z, 0 );
+    }
+
+    /**
+     * Zeroes the area of every point, ready for Tet areas to be added back in.
+     */
+    public void clearAreas(){
+        Arrays.fill( m_area, 0, m_size, 0 );
+    }
+
+    /**
+     * Sets both volume caps of every point to the given value.
+     *
+     * @param v The value to reset the caps to.
+     */
+    public void resetVolCaps( double v ){
+        Arrays.fill( m_volCap, 0, m_size, v );
+        Arrays.fill( m_volCap2, 0, m_size, v );
+    }
+
+    /**
+     * Multiplies the base depth offset of every point by s.
+     *
+     * @param s The scale factor.
+     */
+    public void scaleBaseDepthOffsets( double s ){
+        if( m_narrow != null ){
+            float[] offsets = m_narrow[BASE_DEPTH_OFFSET];
+            for( int i = 0; i < m_size; i++ )
+                offsets[i] *= s;
+        }
+        else {
+            double[] offsets = m_wide[BASE_DEPTH_OFFSET];
+            for( int i = 0; i < m_size; i++ )
+                offsets[i] *= s;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package TectonicPlanet;
+
+/**
+ * Called back by PointGrid for each point a query finds.
+ */
+public interface PointVisitor {
+    /**
+     * @param point The PointStore index of the point found.
+     * @return False to stop the query.
+     */
+    public boolean visit( int point );
+}
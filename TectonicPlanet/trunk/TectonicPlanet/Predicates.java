@@ -0,0 +1,160 @@
+package TectonicPlanet;
+
+import java.math.BigDecimal;
+
+/**
+ * Exact geometric tests for triangles on the surface, which always share the
+ * planet centre as a fourth corner.
+ *
+ * Each test is first worked out in doubles, along with a bound on how far
+ * rounding could have moved the answer (after Shewchuk's adaptive
+ * predicates). Only when the answer is nearer zero than that is it worked out
+ * again exactly, with BigDecimals, which hold sums and products of doubles
+ * without rounding. So near-degenerate cases cost more, but are decided the
+ * same way every time, whichever order the points come in.
+ *
+ * Exact ties in inCircle() (four points on one circle) are broken by
+ * pretending each point is raised very slightly off the sphere, the later in
+ * lexicographic order the higher, so the answer is never "on the circle" and
+ * the four triangles the points could make always agree on which two of
+ * them are Delaunay.
+ */
+public class Predicates {
+    private static final double EPSILON = Math.ulp( 1.0 ) / 2;
+    // Bounds on the relative error of triple(), and of a sum of four of them
+    private static final double TRIPLE_BOUND = (6 + 64 * EPSILON) * EPSILON;
+    private static final double CIRCLE_BOUND = (10 + 128 * EPSILON) * EPSILON;
+
+    private Predicates(){
+    }
+
+    /**
+     * @return The sign of the triple product a.(b x c): 1 if a, b and c run
+     *         anticlockwise seen from outside the planet, -1 if clockwise, 0
+     *         if they lie on one great circle.
+     */
+    public static int orient( double ax, double ay, double az,
+                              double bx, double by, double bz,
+                              double cx, double cy, double cz ){
+        double t1 = ax * (by * cz - bz * cy);
+        double t2 = ay * (bz * cx - bx * cz);
+        double t3 = az * (bx * cy - by * cx);
+        double det = t1 + t2 + t3;
+        double permanent = Math.abs( ax ) * (Math.abs( by * cz ) + Math.abs( bz * cy ))
+                         + Math.abs( ay ) * (Math.abs( bz * cx ) + Math.abs( bx * cz ))
+                         + Math.abs( az ) * (Math.abs( bx * cy ) + Math.abs( by * cx ));
+        if( det > TRIPLE_BOUND * permanent )
+            return 1;
+        if( -det > TRIPLE_BOUND * permanent )
+            return -1;
+        return _triple( ax, ay, az, bx, by, bz, cx, cy, cz ).signum();
+    }
+
+    public static int orient( TecPoint a, TecPoint b, TecPoint c ){
+        return orient( a.getX(), a.getY(), a.getZ(), b.getX(), b.getY(), b.getZ(), c.getX(), c.getY(), c.getZ() );
+    }
+
+    /**
+     * Checks whether a point lies inside the circumcircle of a surface
+     * triangle: whether it is beyond the plane through the triangle's
+     * corners, on the far side from the planet centre.
+     *
+     * @return True if p is inside the circumcircle of b, c and d. Never true
+     *         for a triangle lying on a great circle.
+     */
+    public static boolean inCircle( double bx, double by, double bz,
+                                    double cx, double cy, double cz,
+                                    double dx, double dy, double dz,
+                                    double px, double py, double pz ){
+        int bcd = orient( bx, by, bz, cx, cy, cz, dx, dy, dz );
+        if( bcd == 0 )
+            return false;
+
+        // Which side of the plane through b, c and d p is on, measured so
+        // that the planet centre comes out as -bcd:
+        // [c,d,p] - [b,d,p] + [b,c,p] - [b,c,d], where [x,y,z] = x.(y x z)
+        double cdp = _tripleApprox( cx, cy, cz, dx, dy, dz, px, py, pz );
+        double bdp = _tripleApprox( bx, by, bz, dx, dy, dz, px, py, pz );
+        double bcp = _tripleApprox( bx, by, bz, cx, cy, cz, px, py, pz );
+        double bcdt = _tripleApprox( bx, by, bz, cx, cy, cz, dx, dy, dz );
+        double det = cdp - bdp + bcp - bcdt;
+        double permanent = _triplePermanent( cx, cy, cz, dx, dy, dz, px, py, pz )
+                         + _triplePermanent( bx, by, bz, dx, dy, dz, px, py, pz )
+                         + _triplePermanent( bx, by, bz, cx, cy, cz, px, py, pz )
+                         + _triplePermanent( bx, by, bz, cx, cy, cz, dx, dy, dz );
+        int side;
+        if( det > CIRCLE_BOUND * permanent )
+            side = 1;
+        else if( -det > CIRCLE_BOUND * permanent )
+            side = -1;
+        else {
+            side = _triple( cx, cy, cz, dx, dy, dz, px, py, pz )
+                    .subtract( _triple( bx, by, bz, dx, dy, dz, px, py, pz ) )
+                    .add( _triple( bx, by, bz, cx, cy, cz, px, py, pz ) )
+                    .subtract( _triple( bx, by, bz, cx, cy, cz, dx, dy, dz ) ).signum();
+        }
+        if( side != 0 )
+            return side == bcd;
+
+        // On the circle: raise the points in turn, highest first, until one
+        // of them tips the balance. Raising p by e adds e*[b,c,d], raising b
+        // adds -e*[c,d,p], c adds e*[b,d,p] and d adds -e*[b,c,p].
+        double[][] points = { { px, py, pz }, { bx, by, bz }, { cx, cy, cz }, { dx, dy, dz } };
+        boolean[] done = new boolean[ 4 ];
+        for( int round = 0; round < 4; round++ ){
+            int top = -1;
+            for( int k = 0; k < 4; k++ )
+                if( !done[k] && (top < 0 || _later( points[k], points[top] )) )
+                    top = k;
+            done[top] = true;
+            int tip;
+            switch( top ){
+                case 0:  tip = bcd; break;
+                case 1:  tip = -orient( cx, cy, cz, dx, dy, dz, px, py, pz ); break;
+                case 2:  tip = orient( bx, by, bz, dx, dy, dz, px, py, pz ); break;
+                default: tip = -orient( bx, by, bz, cx, cy, cz, px, py, pz ); break;
+            }
+            if( tip != 0 )
+                return tip == bcd;
+        }
+        return false;
+    }
+
+    public static boolean inCircle( TecPoint b, TecPoint c, TecPoint d, double px, double py, double pz ){
+        return inCircle( b.getX(), b.getY(), b.getZ(), c.getX(), c.getY(), c.getZ(), d.getX(), d.getY(), d.getZ(), px, py, pz );
+    }
+
+    // Lexicographic order on positions
+    private static boolean _later( double[] p, double[] q ){
+        if( p[0] != q[0] )
+            return p[0] > q[0];
+        if( p[1] != q[1] )
+            return p[1] > q[1];
+        return p[2] > q[2];
+    }
+
+    private static double _tripleApprox( double ax, double ay, double az,
+                                         double bx, double by, double bz,
+                                         double cx, double cy, double cz ){
+        return ax * (by * cz - bz * cy) + ay * (bz * cx - bx * cz) + az * (bx * cy - by * cx);
+    }
+
+    private static double _triplePermanent( double ax, double ay, double az,
+                                            double bx, double by, double bz,
+                                            double cx, double cy, double cz ){
+        return Math.abs( ax ) * (Math.abs( by * cz ) + Math.abs( bz * cy ))
+             + Math.abs( ay ) * (Math.abs( bz * cx ) + Math.abs( bx * cz ))
+             + Math.abs( az ) * (Math.abs( bx * cy ) + Math.abs( by * cx ));
+    }
+
+    // a.(b x c), exactly
+    private static BigDecimal _triple( double ax, double ay, double az,
+                                       double bx, double by, double bz,
+                                       double cx, double cy, double cz ){
+        BigDecimal bX = new BigDecimal( bx ), bY = new BigDecimal( by ), bZ = new BigDecimal( bz );
+        BigDecimal cX = new BigDecimal( cx ), cY = new BigDecimal( cy ), cZ = new BigDecimal( cz );
+        return new BigDecimal( ax ).multiply( bY.multiply( cZ ).subtract( bZ.multiply( cY ) ) )
+                .add( new BigDecimal( ay ).multiply( bZ.multiply( cX ).subtract( bX.multiply( cZ ) ) ) )
+                .add( new BigDecimal( az ).multiply( bX.multiply( cY ).subtract( bY.multiply( cX ) ) ) );
+    }
+}
@@ -0,0 +1,14 @@
+package TectonicPlanet;
+
+/**
+ * Called back by World.withinRadius() for each point found near one of the
+ * positions asked about.
+ */
+public interface RadiusVisitor {
+    /**
+     * @param point    The point found.
+     * @param centre   Which of the positions it is near, counting from 0.
+     * @param distance How far it is from that position.
+     */
+    public void visit( TecPoint point, int centre, double distance );
+}
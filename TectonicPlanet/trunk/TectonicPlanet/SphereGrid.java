@@ -0,0 +1,213 @@
+package TectonicPlanet;
+
+/**
+ * SphereGrid divides the surface of a sphere into cells, by projecting it
+ * onto the six faces of a cube and cutting each face into size x size cells.
+ * Only the surface is divided, so the number of cells grows with the surface
+ * area rather than the volume. The faces are cut at equal angles rather than
+ * equal distances, so the cells are all roughly the same size.
+ *
+ * Cells are numbered face by face, then by row, so the cells of one row of a
+ * face are numbered consecutively.
+ *
+ * Face f looks along axis f / 2 (x, y or z), positive for even f and negative
+ * for odd. Its rows and columns follow the next two axes round.
+ */
+public class SphereGrid {
+    private static final double QUARTER_PI = Math.PI / 4;
+    private static final double FACE_CORNER = Math.acos( 1 / Math.sqrt( 3 ) ); // Angle from a face's centre to its corners
+
+    private int m_size;         // Cells along each edge of a face
+    private double m_cellAngle; // Angle across a cell
+
+    /**
+     * @param radius   The radius of the sphere.
+     * @param cellSize Roughly how wide each cell should be, at that radius.
+     */
+    public SphereGrid( double radius, double cellSize ){
+        m_size = Math.max( 1, (int)Math.ceil( Math.PI / 2 * radius / cellSize ) );
+        m_cellAngle = Math.PI / 2 / m_size;
+    }
+
+    /**
+     * @return The number of cells along each edge of a face.
+     */
+    public int getSize(){
+        return m_size;
+    }
+
+    /**
+     * @return The total number of cells.
+     */
+    public int getNumCells(){
+        return 6 * m_size * m_size;
+    }
+
+    /**
+     * @return The angle, in radians, across one cell.
+     */
+    public double getCellAngle(){
+        return m_cellAngle;
+    }
+
+    /**
+     * @return The number of the cell at row i, column j of the given face.
+     */
+    public int cellIndex( int face, int i, int j ){
+        return (face * m_size + i) * m_size + j;
+    }
+
+    /**
+     * @return The cell the given direction from the centre passes through.
+     */
+    public int cell( double x, double y, double z ){
+        double ax = Math.abs( x ), ay = Math.abs( y ), az = Math.abs( z );
+        int face;
+        double n, u, v;
+        if( ax >= ay && ax >= az ){
+            face = x >= 0 ? 0 : 1;
+            n = ax; u = y; v = z;
+        }
+        else if( ay >= az ){
+            face = y >= 0 ? 2 : 3;
+            n = ay; u = z; v = x;
+        }
+        else {
+            face = z >= 0 ? 4 : 5;
+            n = az; u = x; v = y;
+        }
+        if( n == 0 )
+            return cellIndex( 0, m_size / 2, m_size / 2 );
+        return cellIndex( face, _step( Math.atan( u / n ) ), _step( Math.atan( v / n ) ) );
+    }
+
+    /**
+     * Sets out to the unit direction from the centre through the middle of a
+     * cell: the opposite of cell().
+     */
+    public void direction( int cell, double[] out ){
+        int face = cell / (m_size * m_size);
+        double u = Math.tan( (cell / m_size % m_size + 0.5) * m_cellAngle - QUARTER_PI );
+        double v = Math.tan( (cell % m_size + 0.5) * m_cellAngle - QUARTER_PI );
+        double n = face % 2 == 0 ? 1 : -1;
+        switch( face / 2 ){
+            case 0:  out[0] = n; out[1] = u; out[2] = v; break;
+            case 1:  out[0] = v; out[1] = n; out[2] = u; break;
+            default: out[0] = u; out[1] = v; out[2] = n; break;
+        }
+        double length = Math.sqrt( out[0] * out[0] + out[1] * out[1] + out[2] * out[2] );
+        out[0] /= length;
+        out[1] /= length;
+        out[2] /= length;
+    }
+
+    /**
+     * Groups the cells into blocks: each face split into split by split
+     * squares of cells, so there are 6 * split * split blocks in all.
+     *
+     * @param split How many blocks along each edge of a face. No more than
+     *              getSize().
+     * @return The block the given direction from the centre passes through.
+     */
+    public int block( double x, double y, double z, int split ){
+        int cell = cell( x, y, z );
+        int face = cell / (m_size * m_size);
+        int i = cell / m_size % m_size;
+        int j = cell % m_size;
+        return (face * split + i * split / m_size) * split + j * split / m_size;
+    }
+
+    private int _step( double angle ){
+        int i = (int)Math.floor( (angle + QUARTER_PI) / m_cellAngle );
+        return i < 0 ? 0 : (i >= m_size ? m_size - 1 : i);
+    }
+
+    /**
+     * @return The angle, in radians, of a cap (centred on the direction of c)
+     *         which holds every point within the given distance of c.
+     */
+    public static double capAngle( double cx, double cy, double cz, double distance ){
+        double length = Math.sqrt( cx * cx + cy * cy + cz * cz );
+        return distance >= length ? Math.PI : Math.asin( distance / length );
+    }
+
+    /**
+     * Works out which cells of a face might overlap a cap: a block of rows
+     * and columns, which may include a few cells outside the cap.
+     *
+     * @param face  The face to look at.
+     * @param angle The angle of the cap, in radians.
+     * @return The rows and columns packed into a long (see firstRow() and so
+     *         on), or -1 if the cap misses the face altogether.
+     */
+    public long faceRange( int face, double cx, double cy, double cz, double angle ){
+        double length = Math.sqrt( cx * cx + cy * cy + cz * cz );
+        if( length == 0 || angle >= 1.0 )
+            return _pack( 0, m_size - 1, 0, m_size - 1 );
+        double n, u, v;
+        switch( face / 2 ){
+            case 0:  n = cx; u = cy; v = cz; break;
+            case 1:  n = cy; u = cz; v = cx; break;
+            default: n = cz; u = cx; v = cy; break;
+        }
+        if( (face & 1) == 1 )
+            n = -n;
+        n /= length;
+        u /= length;
+        v /= length;
+
+        // No part of the face is further than FACE_CORNER from its centre
+        if( FACE_CORNER + angle < Math.PI && n < Math.cos( FACE_CORNER + angle ) )
+            return -1;
+
+        // The rows go round the face's v axis, so a step of angle across the
+        // surface moves at most angle / cos(elevation from the n-u plane)
+        // round it; likewise for the columns and the u axis
+        int firstRow, lastRow, firstColumn, lastColumn;
+        double reach = _reach( Math.asin( Math.min( 1, Math.abs( v ) ) ), angle );
+        if( reach < 0 ){
+            firstRow = 0;
+            lastRow = m_size - 1;
+        }
+        else {
+            double centre = Math.atan2( u, n );
+            if( centre + reach < -QUARTER_PI || centre - reach > QUARTER_PI )
+                return -1;
+            firstRow = _step( centre - reach );
+            lastRow = _step( centre + reach );
+        }
+        reach = _reach( Math.asin( Math.min( 1, Math.abs( u ) ) ), angle );
+        if( reach < 0 ){
+            firstColumn = 0;
+            lastColumn = m_size - 1;
+        }
+        else {
+            double centre = Math.atan2( v, n );
+            if( centre + reach < -QUARTER_PI || centre - reach > QUARTER_PI )
+                return -1;
+            firstColumn = _step( centre - reach );
+            lastColumn = _step( centre + reach );
+        }
+        return _pack( firstRow, lastRow, firstColumn, lastColumn );
+    }
+
+    // How far round an axis a cap of the given angle can reach, from a centre
+    // at the given elevation from the axis' equator; -1 if it could reach all
+    // the way round
+    private static double _reach( double elevation, double angle ){
+        double furthest = elevation + angle;
+        if( furthest >= 1.4 )
+            return -1;
+        double reach = angle / Math.cos( furthest );
+        return reach >= Math.PI / 2 ? -1 : reach;
+    }
+
+    private static long _pack( int firstRow, int lastRow, int firstColumn, int lastColumn ){
+        return ((long)firstRow << 48) | ((long)lastRow << 32) | ((long)firstColumn << 16) | lastColumn;
+    }
+
+    public static int firstRow( long range ){ return (int)(range >>> 48) & 0xffff; }
+    public static int lastRow( long range ){ return (int)(range >>> 32) & 0xffff; }
+    public static int firstColumn( long range ){ return (int)(range >>> 16) & 0xffff; }
+    public static int lastColumn( long range ){ return (int)range & 0xffff; }
+}
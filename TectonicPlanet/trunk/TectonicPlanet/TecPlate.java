@@ -20,6 +20,8 @@ public class TecPlate {
   public Point3d meanPos1=null,meanPos2=null;
   public Vector3d meanVec1=null,meanVec2=null;
 	public boolean linkRemoved=false;
+  private static int nextId=0;
+  private int id=nextId++;  // The plate id the PointStore records against each of our points
 
   public TecPlate(double x, double y, double z) {
     init();
@@ -36,11 +38,85 @@ public class TecPlate {
     edgeLinkPairs=new ArrayList();
 		resetForces();
   }
+  public int getId() {return id;}
   public void addPoint(TecPoint p) {
+    p.assignPlate(this,points.size());
     points.add(p);
   }
   public void removePoint(TecPoint p) {
-      points.remove( p );
+    // Swap the last point into the hole, so this doesn't depend on the plate's size
+    int slot=p.getPlateSlot();
+    if (slot<0 || slot>=points.size() || points.get(slot)!=p) return;  // Not one of ours
+    TecPoint last=(TecPoint)points.remove(points.size()-1);
+    if (last!=p) {
+      points.set(slot,last);
+      last.setPlateSlot(slot);
+    }
+    p.setPlateSlot(-1);
+  }
+  /**
+   * Puts the points in order of their PointStore index, so sweeps over the
+   * plate read the store in order. Used after the store has been reordered.
+   */
+  public void sortPoints() {
+    Collections.sort(points,new Comparator() {
+      public int compare(Object o1, Object o2) {
+        return ((TecPoint)o1).getIndex()-((TecPoint)o2).getIndex();
+      }
+    });
+    for (int i=0; i<points.size(); i++) ((TecPoint)points.get(i)).setPlateSlot(i);
+  }
+  /**
+   * Removes all the given points from this plate in one pass.
+   */
+  public void removePoints(Collection dead) {
+    int n=0;
+    for (int i=0; i<points.size(); i++) {
+      TecPoint p=(TecPoint)points.get(i);
+      if (dead.contains(p)) {
+        p.setPlateSlot(-1);
+      } else {
+        points.set(n,p);
+        p.setPlateSlot(n++);
+      }
+    }
+    points.subList(n,points.size()).clear();
+  }
+  /**
+   * Moves every point of another plate onto this one, leaving the other plate
+   * empty.
+   */
+  public void absorb(TecPlate other) {
+    if (other==this) return;
+    points.ensureCapacity(points.size()+other.points.size());
+    for (int i=0; i<other.points.size(); i++) {
+      TecPoint p=(TecPoint)other.points.get(i);
+      p.assignPlate(this,points.size());
+      points.add(p);
+    }
+    other.points.clear();
+  }
+  /**
+   * Moves the points accepted by the filter onto another plate, in one pass.
+   *
+   * @return The number of points moved.
+   */
+  public int movePoints(PointFilter filter, TecPlate dst) {
+    if (dst==this) return 0;
+    int n=0, moved=0;
+    for (int i=0; i<points.size(); i++) {
+      TecPoint p=(TecPoint)points.get(i);
+      if (filter.accept(p)) {
+        p.assignPlate(dst,dst.points.size());
+        dst.points.add(p);
+        moved++;
+      } else {
+        points.set(n,p);
+        p.setPlateSlot(n++);
+      }
+    }
+    points.subList(n,points.size()).clear();
+    return moved;
   }
   public TecPoint getPoint(int i) {
     return (TecPoint)points.get(i);
@@ -186,8 +262,8 @@ public class TecPlate {
 	      tp=(TecPoint)points.get(i);
 	      height=tp.getHeight();
 	      tp.copyOldpos();
-	      m1.transform(tp.getPos());
-	      m2.transform(tp.getPos());
+	      tp.transform(m1);
+	      tp.transform(m2);
         m1.transform(tp.originalNorth); // Remember to rotate the "originalNorth" vector
         m2.transform(tp.originalNorth); // so as to keep track of distortions
 	      tp.setHeight(height);
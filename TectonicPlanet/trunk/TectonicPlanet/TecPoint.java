@@ -18,13 +18,13 @@ import java.util.*;
 
 public class TecPoint implements Comparable {
   private World world=null;
-  private Point3d pos, oldpos, rotPos;
+  private PointStore store;   // The columns holding this point's position, rock column and forces
+  private int index;          // This point's row in store
+  private int listIndex=-1;   // This point's position in its World's list of points, or -1 if it isn't in one
+  private Point3d rotPos;
   private TecPlate plate=null;
   public int count=0;
-  public long hash;
   public boolean edge=false;
-  private double rockThickness=0, density=3, baseDepthOffset=0; // New, simplified "rockColumn" system
-  private static long hashCount=0;
   private double size;
   private boolean valid=true;
   public Vector3d mantleFlow=null, mantleForce=null, originalNorth=null;
@@ -32,133 +32,146 @@ public class TecPoint implements Comparable {
   public int lms=-1;
   private Color color;
 	private int creationDate;
-	private double area;
 	public static double seaLevel, magmaDensity=3.3;  // I've heard rumours that it's actually 3.3
-  public double volCap;   // The volume of rock which can be added to this point without upsetting the gradients or getting higher than surrounding points
-  public double volCap2;   // The volume of rock which can be added to this point without upsetting the gradients
   // FEA bits
-  public Vector3d FEAforce, collisionForce;
+  public Vector3d collisionForce;
   public boolean broken;  // = attached to at least one link which is "broken" for the purposes of FEA
 
   public TecPoint(double x, double y, double z, int d) {
 	  creationDate=d;
-    init();
-    pos.x=oldpos.x=x;
-    pos.y=oldpos.y=y;
-    pos.z=oldpos.z=z;
+    init(null);
+    setStartPos(x,y,z);
     setOriginalNorth();
   }
   public TecPoint(double x, double y, double z, TecPlate p, int d) {
 	  creationDate=d;
-    init();
-    pos.x=oldpos.x=x;
-    pos.y=oldpos.y=y;
-    pos.z=oldpos.z=z;
+    init(null);
+    setStartPos(x,y,z);
     setPlate(p);
     setOriginalNorth();
   }
   public TecPoint(double lat, double lon, double height, boolean radians, int d) {
 	  creationDate=d;
-    init();
-    if (radians) {
-      pos.x=oldpos.x=Math.sin(lon)*Math.cos(lat)*height;
-      pos.y=oldpos.y=Math.sin(lat)*height;
-      pos.z=oldpos.z=Math.cos(lon)*Math.cos(lat)*height;
-    } else {
-      pos.x=oldpos.x=Math.sin(Math.toRadians(lon))*Math.cos(Math.toRadians(lat))*height;
-      pos.y=oldpos.y=Math.sin(Math.toRadians(lat))*height;
-      pos.z=oldpos.z=Math.cos(Math.toRadians(lon))*Math.cos(Math.toRadians(lat))*height;
-    }
+    init(null);
+    setStartLatLon(lat,lon,height,radians);
     setOriginalNorth();
   }
   public TecPoint(World w, double x, double y, double z, int d) {
 	  world=w;
 	  creationDate=d;
-    init();
-    pos.x=oldpos.x=x;
-    pos.y=oldpos.y=y;
-    pos.z=oldpos.z=z;
+    init(w);
+    setStartPos(x,y,z);
     setOriginalNorth();
   }
   public TecPoint(World w, double x, double y, double z, TecPlate p, int d) {
 	  world=w;
 	  creationDate=d;
-    init();
-    pos.x=oldpos.x=x;
-    pos.y=oldpos.y=y;
-    pos.z=oldpos.z=z;
+    init(w);
+    setStartPos(x,y,z);
     setPlate(p);
     setOriginalNorth();
   }
   public TecPoint(World w, double lat, double lon, double height, boolean radians, int d) {
 	  world=w;
 	  creationDate=d;
-    init();
-    if (radians) {
-      pos.x=oldpos.x=Math.sin(lon)*Math.cos(lat)*height;
-      pos.y=oldpos.y=Math.sin(lat)*height;
-      pos.z=oldpos.z=Math.cos(lon)*Math.cos(lat)*height;
-    } else {
-      pos.x=oldpos.x=Math.sin(Math.toRadians(lon))*Math.cos(Math.toRadians(lat))*height;
-      pos.y=oldpos.y=Math.sin(Math.toRadians(lat))*height;
-      pos.z=oldpos.z=Math.cos(Math.toRadians(lon))*Math.cos(Math.toRadians(lat))*height;
-    }
+    init(w);
+    setStartLatLon(lat,lon,height,radians);
     setOriginalNorth();
   }
-  private void init() {
-    pos=new Point3d();
-    oldpos=new Point3d();
-    hash=hashCount++;
+  // Takes over a row of w's store which already holds this point's data, as when resuming from a checkpoint
+  TecPoint(World w, int row, int d) {
+	  world=w;
+	  creationDate=d;
+    store=w.getPointStore();
+    index=row;
+    store.adopt(row,this);
+    collisionForce=new Vector3d();
+  }
+  private void init(World w) {
+    // Points belonging to a World live in its PointStore, anything else gets a store of its own
+    if (w!=null && w.getPointStore()!=null) store=w.getPointStore();
+    else store=new PointStore(1);
+    index=store.allocate(this);
 		
-    FEAforce=new Vector3d();
     collisionForce=new Vector3d();
   }
+  private void setStartPos(double x, double y, double z) {
+    store.setPos(index,x,y,z);
+    store.setOldPos(index,x,y,z);
+  }
+  private void setStartLatLon(double lat, double lon, double height, boolean radians) {
+    if (!radians) {
+      lat=Math.toRadians(lat);
+      lon=Math.toRadians(lon);
+    }
+    setStartPos(Math.sin(lon)*Math.cos(lat)*height, Math.sin(lat)*height, Math.cos(lon)*Math.cos(lat)*height);
+  }
+  public PointStore getStore() {return store;}
+  public int getIndex() {return index;}
+  void setIndex(int i) {index=i;}
+  // Moves this point's data into a store of its own and hands its old row back,
+  // so a point removed from its World can still be read without holding on to the row
+  void detach() {
+    PointStore own=new PointStore(1);
+    int i=own.allocate(this);
+    store.copyRow(index,own,i);
+    store.free(index);
+    store=own;
+    index=i;
+  }
+  public int getListIndex() {return listIndex;}
+  void setListIndex(int i) {listIndex=i;}
   public void makeNewOceanFloor() {
-    rockThickness=7;
-    density=3+plate.densityTweak;// 7km thick basalt, ~3tonnes/cubic meter
+    store.setRockThickness(index,7);
+    store.setDensity(index,3+plate.densityTweak);// 7km thick basalt, ~3tonnes/cubic meter
   }
   public void setPlate(TecPlate p) {
     if (plate!=null) plate.removePoint(this);
     plate=p;
     plate.addPoint(this);
   }
+  // Used by TecPlate, which keeps the store's plate columns up to date itself
+  void assignPlate(TecPlate p, int slot) {
+    plate=p;
+    store.setPlate(index,p.getId(),slot);
+  }
+  int getPlateSlot() {return store.getPlateSlot(index);}
+  void setPlateSlot(int slot) {store.setPlateSlot(index,slot);}
+  public int getPlateId() {return store.getPlateId(index);}
   public void setOriginalNorth() {
     // Make a vector which points north (along the surface).
     // This will get turned as the point moves.
-    originalNorth=getNorth(pos);
+    originalNorth=getNorth(getPos());
   }
   //public RockColumn getRocks() {return rocks;}
   public TecPlate getPlate() {return plate;}
   public Point3d getPos() {
-    /*try {
-      if (Double.isNaN(pos.x) || Double.isInfinite(pos.x)) throw(new Exception("pos.x is bad"));
-      if (Double.isNaN(pos.y) || Double.isInfinite(pos.y)) throw(new Exception("pos.y is bad"));
-      if (Double.isNaN(pos.z) || Double.isInfinite(pos.z)) throw(new Exception("pos.z is bad"));
-    } catch (Exception e) {
-      System.out.println(e);
-      e.printStackTrace();
-      System.exit(1);
-    }*/
-    return pos;
+    // Returns a copy - use setPos() to move the point
+    return new Point3d(store.getX(index),store.getY(index),store.getZ(index));
   }
+  public void setPos(double x, double y, double z) {store.setPos(index,x,y,z);}
+  public void setPos(Tuple3d p) {store.setPos(index,p.x,p.y,p.z);}
   public Point3d getRotPos() {return rotPos;}
-  public Point3d getOldpos() {return oldpos;}
-  public void copyOldpos() {
-    oldpos.x=pos.x;
-    oldpos.y=pos.y;
-    oldpos.z=pos.z;
+  public Point3d getOldpos() {return new Point3d(store.getOldX(index),store.getOldY(index),store.getOldZ(index));}
+  public void copyOldpos() {store.copyOldPos(index);}
+  public double distanceSquared(TecPoint p) {
+    if (p.store==store) return store.distanceSquared(index,p.index);
+    return store.distanceSquared(index,p.getX(),p.getY(),p.getZ());
   }
+  public double distanceSquared(Tuple3d p) {return store.distanceSquared(index,p.x,p.y,p.z);}
+  public double distance(TecPoint p) {return Math.sqrt(distanceSquared(p));}
+  public double distance(Tuple3d p) {return Math.sqrt(distanceSquared(p));}
   public double getSize() {return size;}
   public void setSize(double s) {size=s;}
   public boolean isValid() {return valid;}
   public void setValid(boolean v) {valid=v;}
-  public double getX() {return pos.x;}
-  public double getY() {return pos.y;}
-  public double getZ() {return pos.z;}
-  public double getLat() {return Math.asin(pos.y/getHeight());}
+  public double getX() {return store.getX(index);}
+  public double getY() {return store.getY(index);}
+  public double getZ() {return store.getZ(index);}
+  public double getLat() {return Math.asin(getY()/getHeight());}
   public double getLon() {
-    double x=pos.x;
-    double z=pos.z;
+    double x=getX();
+    double z=getZ();
     double len=Math.sqrt(x*x+z*z);
     if (len==0) return 0;
     x=x/len;
@@ -205,26 +218,33 @@ public class TecPoint implements Comparable {
 		east.normalize();
 		return east;
 	}
-  public double getHeight() {return pos.distance(new Point3d(0,0,0));}
+  public double getHeight() {
+    double x=getX(), y=getY(), z=getZ();
+    return Math.sqrt(x*x+y*y+z*z);
+  }
   public void setHeight(double h) {
-    Vector3d vec=new Vector3d(pos);
-    vec.normalize();
-    vec.scale(h);
-    pos.x=vec.x;
-    pos.y=vec.y;
-    pos.z=vec.z;
+    double s=h/getHeight();
+    store.setPos(index,getX()*s,getY()*s,getZ()*s);
+  }
+  public void transform(Matrix4d m) {
+    // Same as m.transform(Point3d), but straight into the store
+    double x=getX(), y=getY(), z=getZ();
+    store.setPos(index,
+      m.m00*x+m.m01*y+m.m02*z+m.m03,
+      m.m10*x+m.m11*y+m.m12*z+m.m13,
+      m.m20*x+m.m21*y+m.m22*z+m.m23);
   }
   public double getSurfaceHeight() {
-    return baseDepthOffset+rockThickness*(1-density/magmaDensity);
+    return store.getBaseDepthOffset(index)+store.getRockThickness(index)*(1-store.getDensity(index)/magmaDensity);
   }
   public double getBaseDepth() {
-    return baseDepthOffset-rockThickness*density/magmaDensity;
+    return store.getBaseDepthOffset(index)-store.getRockThickness(index)*store.getDensity(index)/magmaDensity;
   }
   public void scale(double s) {
-	  rockThickness*=s;
+	  store.setRockThickness(index,store.getRockThickness(index)*s);
   }
   public double getDepth() {
-	  return rockThickness;
+	  return store.getRockThickness(index);
 	}
   public void add(double thick, double dens) {
     try {
@@ -234,13 +254,14 @@ public class TecPoint implements Comparable {
       e.printStackTrace();
       System.exit(1);
     }
-	  density=(rockThickness*density+thick*dens)/(rockThickness+thick);
-    rockThickness+=thick;
+    double rockThickness=store.getRockThickness(index);
+	  store.setDensity(index,(rockThickness*store.getDensity(index)+thick*dens)/(rockThickness+thick));
+    store.setRockThickness(index,rockThickness+thick);
   }
   public void addLayer(double thick, double dens) {add(thick, dens);}
   public void remove(double thick) {
     try {
-      if (thick>rockThickness) throw(new Exception("Trying to remove too much rock"));
+      if (thick>store.getRockThickness(index)) throw(new Exception("Trying to remove too much rock"));
     } catch (Exception e) {
       System.out.println("Trying to remove more rock than there is");
       e.printStackTrace();
@@ -253,39 +274,43 @@ public class TecPoint implements Comparable {
       e.printStackTrace();
       System.exit(1);
     }
-	  rockThickness-=thick;
+	  store.setRockThickness(index,store.getRockThickness(index)-thick);
   }
   public void setMagmaDensity(double d) {magmaDensity=d;}
   public double getMagmaDensity() {return magmaDensity;}
-  public void setDensity(double d) {density=d;}
-  public double getDensity() {return density;}
-  public void setRockThickness(double t) {rockThickness=t;}
-  public double getRockThickness() {return rockThickness;}
+  public void setDensity(double d) {store.setDensity(index,d);}
+  public double getDensity() {return store.getDensity(index);}
+  public void setRockThickness(double t) {store.setRockThickness(index,t);}
+  public double getRockThickness() {return store.getRockThickness(index);}
   public void retreat(double r) {
     // if r==1, it moves back to oldpos. If r==0, it stays where it is.
-    pos.interpolate(oldpos,r);
+    double x=getX(), y=getY(), z=getZ();
+    store.setPos(index,
+      x+r*(store.getOldX(index)-x),
+      y+r*(store.getOldY(index)-y),
+      z+r*(store.getOldZ(index)-z));
   }
   public void move(Tuple3d m) {
-    pos.add(m);
+    store.setPos(index,getX()+m.x,getY()+m.y,getZ()+m.z);
   }
   public void rotate(Transform3D rTrans1, Transform3D rTrans2) {
-    rotPos=new Point3d(pos);
+    rotPos=getPos();
     rTrans1.transform(rotPos);
     rTrans2.transform(rotPos);
   }
   public Point3d rotPos() {return rotPos;}
-  public boolean isContinental() {return rockThickness>18;}
+  public boolean isContinental() {return store.getRockThickness(index)>18;}
   public boolean isOcean() {return !isContinental();}
   public void setColor(Color c) {
     color=c;
   }
   public Color getColor() {return color;}
 	public int getCreationDate() {return creationDate;}
-  public double getBaseDepthOffset() {return baseDepthOffset;}
-  public void setBaseDepthOffset(double d) {baseDepthOffset=d;}
-	public void addBaseDepthOffset(double d) {baseDepthOffset+=d;}
-	public void subBaseDepthOffset(double d) {baseDepthOffset-=d;}
-	public void scaleBaseDepthOffset(double d) {baseDepthOffset*=d;}
+  public double getBaseDepthOffset() {return store.getBaseDepthOffset(index);}
+  public void setBaseDepthOffset(double d) {store.setBaseDepthOffset(index,d);}
+	public void addBaseDepthOffset(double d) {store.setBaseDepthOffset(index,store.getBaseDepthOffset(index)+d);}
+	public void subBaseDepthOffset(double d) {store.setBaseDepthOffset(index,store.getBaseDepthOffset(index)-d);}
+	public void scaleBaseDepthOffset(double d) {store.setBaseDepthOffset(index,store.getBaseDepthOffset(index)*d);}
 	
 	public double heightAboveSeaLevel() {
 	  return getSurfaceHeight()-seaLevel;
@@ -296,12 +321,21 @@ public class TecPoint implements Comparable {
 		return this.hashCode()-o.hashCode();
 	}
 	
-	public void setArea(double d) {area=d;}
-	public void addArea(double d) {area+=d;}
-	public double getArea() {return area;}
+	public void setArea(double d) {store.setArea(index,d);}
+	public void addArea(double d) {store.setArea(index,store.getArea(index)+d);}
+	public double getArea() {return store.getArea(index);}
+  // The volume of rock which can be added to this point without upsetting the gradients or getting higher than surrounding points
+  public double getVolCap() {return store.getVolCap(index);}
+  public void setVolCap(double v) {store.setVolCap(index,v);}
+  // The volume of rock which can be added to this point without upsetting the gradients
+  public double getVolCap2() {return store.getVolCap2(index);}
+  public void setVolCap2(double v) {store.setVolCap2(index,v);}
   // FEA methods
+  public Vector3d getFEAforce() {return new Vector3d(store.getForceX(index),store.getForceY(index),store.getForceZ(index));}
+  public void addFEAforce(double x, double y, double z) {store.addForce(index,x,y,z);}
+  public void clearFEAforce() {store.clearForce(index);}
   public Vector3d getForce() {
-    Vector3d out=new Vector3d(FEAforce);
+    Vector3d out=getFEAforce();
     out.scaleAdd(0.004,mantleForce,out);  // Add the force due to mantle flow
     //out.scale(0.5);   // Scale down the mantle-plame forces, since we have slab-pull forces now.
     // Add on the force due to the mantle flow
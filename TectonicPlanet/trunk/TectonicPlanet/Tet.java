@@ -24,12 +24,13 @@ import java.util.*;
  */
 public class Tet {
   public TecPoint a,b,c,d;
-  public Point3d center=null;
-  public double radiussq, da, innersq, outersq,v1,v2,v3,area,oldArea;
+  public double oldArea;
   public static double biggestError=0;
   public static double planetRadius;
 	public static boolean goneBad=false;
-	public Vector3d n1,n2,n3;
+  public int index=-1;  // Position in the World's list of tets, or -1 if it isn't in it
+  private TetStore store=null;  // Where this tet's geometry lives; a one-slot store of its own until it's added to a World
+  private int slot=-1;
 
   public Tet() {}
   public Tet(TecPoint ta, TecPoint tb, TecPoint tc, TecPoint td) {
@@ -62,69 +63,79 @@ public class Tet {
                         c.getPos().x*c.getPos().x+c.getPos().y*c.getPos().y+c.getPos().z*c.getPos().z, c.getPos().x,c.getPos().y,1,
                         d.getPos().x*d.getPos().x+d.getPos().y*d.getPos().y+d.getPos().z*d.getPos().z, d.getPos().x,d.getPos().y,1).determinant();
   }
+  /**
+   * Moves this tet's geometry into a slot of the given store. Used when the
+   * tet is added to a World.
+   */
+  public void attach(TetStore s) {
+    if (store==s) return;
+    int newSlot=s.allocate(this);
+    if (store!=null) {
+      store.copyGeometry(slot,s,newSlot);
+      store.free(slot);
+    }
+    store=s;
+    slot=newSlot;
+  }
+  /**
+   * Gives this tet back a store of its own, keeping its geometry. Used when
+   * the tet is taken out of a World.
+   */
+  public void detach() {
+    if (store==null) return;
+    TetStore own=new TetStore(null,1);
+    int newSlot=own.allocate(this);
+    store.copyGeometry(slot,own,newSlot);
+    store.free(slot);
+    store=own;
+    slot=newSlot;
+  }
+  private void ensureStore() {
+    if (store==null) {
+      store=new TetStore(null,1);
+      slot=store.allocate(this);
+    }
+  }
+  public TetStore getStore() {return store;}
+  public int getSlot() {return slot;}
   public Tet calc() {
-    n1=new Vector3d();	// a,b,c
-    n1.cross(new Vector3d(a.getPos().x-b.getPos().x,a.getPos().y-b.getPos().y,a.getPos().z-b.getPos().z),
-             new Vector3d(a.getPos().x-c.getPos().x,a.getPos().y-c.getPos().y,a.getPos().z-c.getPos().z));
-    n2=new Vector3d();	// a,c,d
-    n2.cross(new Vector3d(a.getPos().x-c.getPos().x,a.getPos().y-c.getPos().y,a.getPos().z-c.getPos().z),
-             new Vector3d(a.getPos().x-d.getPos().x,a.getPos().y-d.getPos().y,a.getPos().z-d.getPos().z));
-    n3=new Vector3d();	// a,d,b
-    n3.cross(new Vector3d(a.getPos().x-d.getPos().x,a.getPos().y-d.getPos().y,a.getPos().z-d.getPos().z),
-             new Vector3d(a.getPos().x-b.getPos().x,a.getPos().y-b.getPos().y,a.getPos().z-b.getPos().z));
-    /*da=getDelaunayA();
-    center=new Point3d(getDelaunayBx()/(2*da),
-                       getDelaunayBy()/(2*da),
-                       getDelaunayBz()/(2*da));
-    radiussq=center.distanceSquared(a.getPos());
-    innersq=Math.min(radiussq,Math.min(center.distanceSquared(b.getPos()),Math.min(center.distanceSquared(c.getPos()),center.distanceSquared(d.getPos()))));
-    outersq=Math.max(radiussq,Math.max(center.distanceSquared(b.getPos()),Math.max(center.distanceSquared(c.getPos()),center.distanceSquared(d.getPos()))));*/
-    Vector3d normal=new Vector3d();
-    normal.cross(new Vector3d(b.getPos().x-c.getPos().x,b.getPos().y-c.getPos().y,b.getPos().z-c.getPos().z),
-                 new Vector3d(b.getPos().x-d.getPos().x,b.getPos().y-d.getPos().y,b.getPos().z-d.getPos().z));
-    normal.scale(normal.dot(new Vector3d(b.getPos())));
-    normal.normalize();
-    center=new Point3d(normal);
-    center.scale(planetRadius);
-    radiussq=center.distanceSquared(b.getPos());
-    innersq=Math.min(center.distanceSquared(b.getPos()),Math.min(center.distanceSquared(c.getPos()),center.distanceSquared(d.getPos())));
-    outersq=Math.max(center.distanceSquared(b.getPos()),Math.max(center.distanceSquared(c.getPos()),center.distanceSquared(d.getPos())));
-/*double er=Math.sqrt(outersq)-Math.sqrt(innersq);
-if (er>biggestError) {
-  System.out.println("Center error="+er);
-  biggestError=er;
-}*/
-		// Recalc the area of this tet
-		calcArea();
-    // Find the highest x pos of the points making up this tet (not the centre one, though!)
+    ensureStore();
+    store.setCorners(slot,this);
+    store.calc(slot, a.getX(),a.getY(),a.getZ(),
+                     b.getX(),b.getY(),b.getZ(),
+                     c.getX(),c.getY(),c.getZ(),
+                     d.getX(),d.getY(),d.getZ());
     return this;
   }
-  public boolean contains(Point3d p) {
-    double dist=p.distanceSquared(center);
-    if (dist>outersq) return false;
-    if (dist<innersq) return true;
-    //if (!goneBad) System.out.print("x");
-		//goneBad=true;
-    if (p.x!=Math.max(b.getPos().x,Math.max(c.getPos().x, d.getPos().x)))
-      return p.x>Math.max(b.getPos().x,Math.max(c.getPos().x, d.getPos().x));
-    if (p.y!=Math.max(b.getPos().y,Math.max(c.getPos().y, d.getPos().y)))
-      return p.y>Math.max(b.getPos().y,Math.max(c.getPos().y, d.getPos().y));
-    if (p.z!=Math.max(b.getPos().z,Math.max(c.getPos().z, d.getPos().z)))
-      return p.z>Math.max(b.getPos().z,Math.max(c.getPos().z, d.getPos().z));
-
-	return true;
-	
-/*System.out.println("Points are the same!!!");
-
-double er=Math.sqrt(outersq)-Math.sqrt(innersq);
-System.out.println("Center error="+er);
-biggestError=er;
-System.out.println("radiussq="+radiussq+", distsq(p)="+dist);
-System.exit(1);
-    return dist<=outersq;*/
+  public double getCenterX() {return store.getCenterX(slot);}
+  public double getCenterY() {return store.getCenterY(slot);}
+  public double getCenterZ() {return store.getCenterZ(slot);}
+  public Point3d getCenter() {return new Point3d(getCenterX(),getCenterY(),getCenterZ());}
+  public double getRadiusSq() {return store.getRadiusSq(slot);}
+  public double getInnerSq() {return store.getInnerSq(slot);}
+  public double getOuterSq() {return store.getOuterSq(slot);}
+  public double getArea() {return store==null ? 0 : store.getArea(slot);}
+  public void setCellCap(double x, double y, double z, double angle) {
+    ensureStore();
+    store.setCellCap(slot,x,y,z,angle);
+  }
+  public double getCellCapX() {return store.getCellCapX(slot);}
+  public double getCellCapY() {return store.getCellCapY(slot);}
+  public double getCellCapZ() {return store.getCellCapZ(slot);}
+  public double getCellCapAngle() {return store==null ? -1 : store.getCellCapAngle(slot);}
+  public double centerDistance(TecPoint p) {
+    return Math.sqrt(store.centerDistanceSquared(slot,p.getX(),p.getY(),p.getZ()));
+  }
+  public boolean contains(Point3d p) {return contains(p.x,p.y,p.z);}
+  public boolean contains(TecPoint p) {return contains(p.getX(),p.getY(),p.getZ());}
+  public boolean contains(double px, double py, double pz) {
+    int side=store.circumsphereSide(slot,px,py,pz);
+    if (side!=0) return side>0;
+    // Too close to call from the cached circumsphere
+    return Predicates.inCircle(b,c,d,px,py,pz);
   }
   public boolean uses(TecPoint p) {
-	  return  p.hash==b.hash || p.hash==c.hash || p.hash==d.hash || p.hash==a.hash;
+	  return  p==b || p==c || p==d || p==a;
     //return pointEquals(a.getPos(),p.getPos()) || pointEquals(b.getPos(),p.getPos()) || pointEquals(c.getPos(),p.getPos()) || pointEquals(d.getPos(),p.getPos());
   }
 
@@ -144,36 +155,17 @@ System.exit(1);
       return new Triangle(a,b,c);
     return null;
   }
-  /*public boolean strictlyContains(Point3d p) {
-	  if (!contains(p)) return false;
-	  v1=n1.x*p.x+n1.y*p.y+n1.z*p.z;
-	  v2=n2.x*p.x+n2.y*p.y+n2.z*p.z;
-		if (v1<0 && v2>0) return false;
-		if (v1>0 && v2<0) return false;
-	  v3=n3.x*p.x+n3.y*p.y+n3.z*p.z;
-		if ((v1<=0 && v2<=0 && v3<=0) || (v1>=0 && v2>=0 && v3>=0)) return true;
-		return false;
-	}*/
   public boolean strictlyContains(Point3d p) {
-	  //if (!contains(p)) return false;
-	  v1=n1.x*p.x+n1.y*p.y+n1.z*p.z;
-	  v2=n2.x*p.x+n2.y*p.y+n2.z*p.z;
-		if (v1<0 && v2>0) return false;
-		if (v1>0 && v2<0) return false;
-	  v3=n3.x*p.x+n3.y*p.y+n3.z*p.z;
-		if ((v1<=0 && v2<=0 && v3<=0) || (v1>=0 && v2>=0 && v3>=0)) return true;
-		return false;
-	}
+    return store.strictlyContains(slot,p.x,p.y,p.z);
+  }
 	public boolean allOcean() {
 	  return b.isOcean() && c.isOcean() && d.isOcean();
 	}
 	public void calcArea() {
-	  // Heron's formula
-		double l1=b.getPos().distance(c.getPos());
-		double l2=c.getPos().distance(d.getPos());
-		double l3=d.getPos().distance(b.getPos());
-		double s=(l1+l2+l3)*0.5;
-	  area=Math.sqrt(s*(s-l1)*(s-l2)*(s-l3));
+	  ensureStore();
+	  store.calcArea(slot, b.getX(),b.getY(),b.getZ(),
+	                       c.getX(),c.getY(),c.getZ(),
+	                       d.getX(),d.getY(),d.getZ());
 	}
   public void scaleHeights(double s) {
     // Change the rock thickness of all the points used by this tet, according to ratio 'd'
@@ -0,0 +1,423 @@
+package TectonicPlanet;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * TetStore holds the cached geometry of a set of Tets in flat primitive
+ * arrays: the PointStore indices of each tet's three surface corners, the
+ * normals of the three planes through the planet centre, the circumcentre and
+ * the inner/outer squared circumradii, and the surface area. A Tet is a view
+ * onto one slot of a store.
+ *
+ * The geometry of a slot is kept together (STRIDE doubles per slot) rather
+ * than in one column per value, so a Tet which has not been added to a World
+ * can keep its geometry in a one-slot store of its own, and so contains()
+ * reads the centre and radii from one place.
+ *
+ * The first corner of every tet is taken to be the planet centre, at the
+ * origin.
+ */
+public class TetStore {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // Offsets into a slot's geometry
+    private static final int N1 = 0;
+    private static final int N2 = 3;
+    private static final int N3 = 6;
+    private static final int CENTER = 9;
+    private static final int RADIUS_SQ = 12;
+    private static final int INNER_SQ = 13;
+    private static final int OUTER_SQ = 14;
+    private static final int AREA = 15;
+    private static final int CELL_CAP = 16;       // Centre of the cap the World bucketed the tet with
+    private static final int CELL_ANGLE = 19;     // Its angle, or -1 if the tet isn't bucketed
+    private static final int STRIDE = 20;
+
+    // Below this many slots calcAll() doesn't bother splitting the work
+    private static final int CALC_CHUNK = 2048;
+
+    // How far, relative to the squared circumradius, a position must be from
+    // the cached circumsphere before circumsphereSide() will vouch for it.
+    // Comfortably more than the rounding in the cached centre, and in points
+    // that have drifted a little off the sphere.
+    private static final double SIDE_MARGIN = 1e-6;
+
+    private PointStore m_points;
+    private int m_top;          // Slots below this have been handed out at some point
+    private int m_size;         // Slots currently in use
+    private Tet[] m_owner;
+    private int[] m_corners;    // b, c and d point indices, 3 per slot
+    private double[] m_geom;    // STRIDE doubles per slot
+    private int[] m_freeSlots;
+    private int m_freeCount;
+
+    /**
+     * @param points   The store holding the tets' corner points, or null for
+     *                 a store whose tets are only ever recalculated one at a
+     *                 time.
+     * @param capacity The number of slots to start with.
+     */
+    public TetStore( PointStore points, int capacity ){
+        capacity = Math.max( 1, capacity );
+        m_points = points;
+        m_top = 0;
+        m_size = 0;
+        m_owner = new Tet[capacity];
+        m_corners = new int[capacity * 3];
+        m_geom = new double[capacity * STRIDE];
+        m_freeSlots = new int[16];
+        m_freeCount = 0;
+    }
+
+    public TetStore( PointStore points ){
+        this( points, DEFAULT_CAPACITY );
+    }
+
+    /**
+     * Reserves a slot for the given tet, recording its corners.
+     *
+     * @param owner The Tet which will view the new slot.
+     * @return The new slot.
+     */
+    public int allocate( Tet owner ){
+        int slot;
+        if( m_freeCount > 0 )
+            slot = m_freeSlots[--m_freeCount];
+        else {
+            if( m_top == m_owner.length )
+                _grow( m_owner.length * 2 );
+            slot = m_top++;
+        }
+        m_size++;
+        m_owner[slot] = owner;
+        setCorners( slot, owner );
+        m_geom[slot * STRIDE + CELL_ANGLE] = -1;
+        return slot;
+    }
+
+    /**
+     * Hands a slot back to the store. The slot's owner is no longer
+     * calculated by calcAll().
+     *
+     * @param slot The slot to free.
+     */
+    public void free( int slot ){
+        if( m_owner[slot] == null )
+            return;
+        m_owner[slot] = null;
+        m_size--;
+        if( m_freeCount == m_freeSlots.length ){
+            int[] grown = new int[ m_freeSlots.length * 2 ];
+            System.arraycopy( m_freeSlots, 0, grown, 0, m_freeCount );
+            m_freeSlots = grown;
+        }
+        m_freeSlots[m_freeCount++] = slot;
+    }
+
+    private void _grow( int capacity ){
+        Tet[] owner = new Tet[capacity];
+        System.arraycopy( m_owner, 0, owner, 0, m_top );
+        m_owner = owner;
+        int[] corners = new int[capacity * 3];
+        System.arraycopy( m_corners, 0, corners, 0, m_top * 3 );
+        m_corners = corners;
+        double[] geom = new double[capacity * STRIDE];
+        System.arraycopy( m_geom, 0, geom, 0, m_top * STRIDE );
+        m_geom = geom;
+    }
+
+    /**
+     * Copies the geometry of one slot into a slot of another store.
+     */
+    public void copyGeometry( int slot, TetStore dst, int dstSlot ){
+        System.arraycopy( m_geom, slot * STRIDE, dst.m_geom, dstSlot * STRIDE, STRIDE );
+    }
+
+    /**
+     * @return The number of slots in use.
+     */
+    public int size(){
+        return m_size;
+    }
+
+    public PointStore getPointStore(){
+        return m_points;
+    }
+
+    public Tet getOwner( int slot ){
+        return m_owner[slot];
+    }
+
+    /**
+     * Records the PointStore indices of the tet's surface corners.
+     */
+    public void setCorners( int slot, Tet tet ){
+        int k = slot * 3;
+        m_corners[k]     = tet.b.getIndex();
+        m_corners[k + 1] = tet.c.getIndex();
+        m_corners[k + 2] = tet.d.getIndex();
+    }
+
+    /**
+     * Re-reads the corners of every slot in use from its Tet, after the
+     * points have been renumbered.
+     */
+    public void refreshCorners(){
+        for( int slot = 0; slot < m_top; slot++ )
+            if( m_owner[slot] != null )
+                setCorners( slot, m_owner[slot] );
+    }
+
+    public int getCornerB( int slot ){ return m_corners[slot * 3]; }
+    public int getCornerC( int slot ){ return m_corners[slot * 3 + 1]; }
+    public int getCornerD( int slot ){ return m_corners[slot * 3 + 2]; }
+
+    // Geometry
+
+    public double getCenterX( int slot ){ return m_geom[slot * STRIDE + CENTER]; }
+    public double getCenterY( int slot ){ return m_geom[slot * STRIDE + CENTER + 1]; }
+    public double getCenterZ( int slot ){ return m_geom[slot * STRIDE + CENTER + 2]; }
+    public double getRadiusSq( int slot ){ return m_geom[slot * STRIDE + RADIUS_SQ]; }
+    public double getInnerSq( int slot ){ return m_geom[slot * STRIDE + INNER_SQ]; }
+    public double getOuterSq( int slot ){ return m_geom[slot * STRIDE + OUTER_SQ]; }
+    public double getArea( int slot ){ return m_geom[slot * STRIDE + AREA]; }
+
+    /**
+     * Records the cap the slot's tet was bucketed with, so it can be taken out
+     * of exactly the same cells however its corners have moved since.
+     *
+     * @param angle The cap's angle, or -1 once the tet is no longer bucketed.
+     */
+    public void setCellCap( int slot, double x, double y, double z, double angle ){
+        int g = slot * STRIDE + CELL_CAP;
+        m_geom[g]     = x;
+        m_geom[g + 1] = y;
+        m_geom[g + 2] = z;
+        m_geom[slot * STRIDE + CELL_ANGLE] = angle;
+    }
+
+    public double getCellCapX( int slot ){ return m_geom[slot * STRIDE + CELL_CAP]; }
+    public double getCellCapY( int slot ){ return m_geom[slot * STRIDE + CELL_CAP + 1]; }
+    public double getCellCapZ( int slot ){ return m_geom[slot * STRIDE + CELL_CAP + 2]; }
+    public double getCellCapAngle( int slot ){ return m_geom[slot * STRIDE + CELL_ANGLE]; }
+
+    /**
+     * @return The squared distance from the slot's circumcentre to the given
+     *         position.
+     */
+    public double centerDistanceSquared( int slot, double x, double y, double z ){
+        int g = slot * STRIDE + CENTER;
+        double dx = m_geom[g] - x;
+        double dy = m_geom[g + 1] - y;
+        double dz = m_geom[g + 2] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Checks a position against the slot's circumsphere.
+     *
+     * @return 1 if it is definitely inside, -1 if it is definitely outside, or
+     *         0 if it is too close to the surface to tell without an exact
+     *         test.
+     */
+    public int circumsphereSide( int slot, double x, double y, double z ){
+        int g = slot * STRIDE;
+        double dist = centerDistanceSquared( slot, x, y, z );
+        if( dist > m_geom[g + OUTER_SQ] * (1 + SIDE_MARGIN) )
+            return -1;
+        if( dist < m_geom[g + INNER_SQ] * (1 - SIDE_MARGIN) )
+            return 1;
+        return 0;
+    }
+
+    /**
+     * Checks whether a direction from the planet centre passes through the
+     * slot's surface triangle.
+     */
+    public boolean strictlyContains( int slot, double x, double y, double z ){
+        int g = slot * STRIDE;
+        double[] geom = m_geom;
+        double v1 = geom[g + N1] * x + geom[g + N1 + 1] * y + geom[g + N1 + 2] * z;
+        double v2 = geom[g + N2] * x + geom[g + N2 + 1] * y + geom[g + N2 + 2] * z;
+        if( v1 < 0 && v2 > 0 )
+            return false;
+        if( v1 > 0 && v2 < 0 )
+            return false;
+        double v3 = geom[g + N3] * x + geom[g + N3 + 1] * y + geom[g + N3 + 2] * z;
+        return (v1 <= 0 && v2 <= 0 && v3 <= 0) || (v1 >= 0 && v2 >= 0 && v3 >= 0);
+    }
+
+    /**
+     * Works out which edge of the slot's surface triangle a direction from the
+     * planet centre passes outside of, for walking across the surface towards
+     * it. Only works for stores with a PointStore.
+     *
+     * @return -1 if the direction passes through the triangle (as for
+     *         strictlyContains()), otherwise the edge it is furthest beyond:
+     *         0 for b-c, 1 for c-d, 2 for d-b.
+     */
+    public int exitEdge( int slot, double x, double y, double z ){
+        int g = slot * STRIDE;
+        double[] geom = m_geom;
+
+        // The far corner of each edge lies on the inside of its plane, so the
+        // sign of d against the first plane gives the triangle's winding
+        int d = m_corners[slot * 3 + 2];
+        double inside = geom[g + N1] * m_points.getX( d ) + geom[g + N1 + 1] * m_points.getY( d ) + geom[g + N1 + 2] * m_points.getZ( d );
+        if( inside < 0 ){
+            x = -x;
+            y = -y;
+            z = -z;
+        }
+        double v1 = geom[g + N1] * x + geom[g + N1 + 1] * y + geom[g + N1 + 2] * z;
+        double v2 = geom[g + N2] * x + geom[g + N2 + 1] * y + geom[g + N2 + 2] * z;
+        double v3 = geom[g + N3] * x + geom[g + N3 + 1] * y + geom[g + N3 + 2] * z;
+        if( v1 >= 0 && v2 >= 0 && v3 >= 0 )
+            return -1;
+        if( v1 <= v2 && v1 <= v3 )
+            return 0;
+        return v2 <= v3 ? 1 : 2;
+    }
+
+    /**
+     * Works out the barycentric weights of the point where a direction from
+     * the planet centre crosses the slot's surface triangle. Each weight is
+     * the volume of the tet made by the direction and the opposite edge, so
+     * comes straight from the plane normals.
+     *
+     * @param out    Filled with the weights of the b, c and d corners, which
+     *               add up to 1.
+     * @param offset Where in out to put them.
+     */
+    public void barycentric( int slot, double x, double y, double z, double[] out, int offset ){
+        int g = slot * STRIDE;
+        double[] geom = m_geom;
+        double wb = geom[g + N2] * x + geom[g + N2 + 1] * y + geom[g + N2 + 2] * z;  // c-d
+        double wc = geom[g + N3] * x + geom[g + N3 + 1] * y + geom[g + N3 + 2] * z;  // d-b
+        double wd = geom[g + N1] * x + geom[g + N1 + 1] * y + geom[g + N1 + 2] * z;  // b-c
+        double sum = wb + wc + wd;
+        if( sum == 0 ){
+            out[offset] = out[offset + 1] = out[offset + 2] = 1.0 / 3;
+            return;
+        }
+        out[offset]     = wb / sum;
+        out[offset + 1] = wc / sum;
+        out[offset + 2] = wd / sum;
+    }
+
+    /**
+     * Recalculates the geometry of one slot from the given corner positions.
+     * Allocates nothing.
+     */
+    public void calc( int slot,
+                      double ax, double ay, double az,
+                      double bx, double by, double bz,
+                      double cx, double cy, double cz,
+                      double dx, double dy, double dz ){
+        double[] geom = m_geom;
+        int g = slot * STRIDE;
+        _cross( geom, g + N1, ax - bx, ay - by, az - bz, ax - cx, ay - cy, az - cz );  // a,b,c
+        _cross( geom, g + N2, ax - cx, ay - cy, az - cz, ax - dx, ay - dy, az - dz );  // a,c,d
+        _cross( geom, g + N3, ax - dx, ay - dy, az - dz, ax - bx, ay - by, az - bz );  // a,d,b
+
+        // The circumcentre lies on the surface, along the normal of the
+        // surface triangle
+        double nx = (by - cy) * (bz - dz) - (bz - cz) * (by - dy);
+        double ny = (bz - cz) * (bx - dx) - (bx - cx) * (bz - dz);
+        double nz = (bx - cx) * (by - dy) - (by - cy) * (bx - dx);
+        double side = nx * bx + ny * by + nz * bz;
+        nx *= side;
+        ny *= side;
+        nz *= side;
+        double scale = Tet.planetRadius / Math.sqrt( nx * nx + ny * ny + nz * nz );
+        double ccx = nx * scale, ccy = ny * scale, ccz = nz * scale;
+        geom[g + CENTER]     = ccx;
+        geom[g + CENTER + 1] = ccy;
+        geom[g + CENTER + 2] = ccz;
+        double db = _distSq( ccx, ccy, ccz, bx, by, bz );
+        double dc = _distSq( ccx, ccy, ccz, cx, cy, cz );
+        double dd = _distSq( ccx, ccy, ccz, dx, dy, dz );
+        geom[g + RADIUS_SQ] = db;
+        geom[g + INNER_SQ]  = Math.min( db, Math.min( dc, dd ) );
+        geom[g + OUTER_SQ]  = Math.max( db, Math.max( dc, dd ) );
+
+        calcArea( slot, bx, by, bz, cx, cy, cz, dx, dy, dz );
+    }
+
+    /**
+     * Recalculates the surface area of one slot from its corner positions,
+     * using Heron's formula.
+     */
+    public void calcArea( int slot,
+                          double bx, double by, double bz,
+                          double cx, double cy, double cz,
+                          double dx, double dy, double dz ){
+        double l1 = Math.sqrt( _distSq( bx, by, bz, cx, cy, cz ) );
+        double l2 = Math.sqrt( _distSq( cx, cy, cz, dx, dy, dz ) );
+        double l3 = Math.sqrt( _distSq( dx, dy, dz, bx, by, bz ) );
+        double s = (l1 + l2 + l3) * 0.5;
+        m_geom[slot * STRIDE + AREA] = Math.sqrt( s * (s - l1) * (s - l2) * (s - l3) );
+    }
+
+    /**
+     * Recalculates the geometry of every slot in use from the current
+     * positions in the PointStore. Large stores are split across the common
+     * fork/join pool; each slot is written by exactly one task.
+     */
+    public void calcAll(){
+        if( m_points == null )
+            throw new IllegalStateException( "TetStore has no PointStore to calculate from" );
+        if( m_top <= CALC_CHUNK )
+            _calcRange( 0, m_top );
+        else
+            ForkJoinPool.commonPool().invoke( new CalcTask( 0, m_top ) );
+    }
+
+    private void _calcRange( int from, int to ){
+        PointStore points = m_points;
+        int[] corners = m_corners;
+        Tet[] owner = m_owner;
+        for( int slot = from; slot < to; slot++ ){
+            if( owner[slot] == null )
+                continue;
+            int b = corners[slot * 3], c = corners[slot * 3 + 1], d = corners[slot * 3 + 2];
+            calc( slot,
+                  0, 0, 0,
+                  points.getX( b ), points.getY( b ), points.getZ( b ),
+                  points.getX( c ), points.getY( c ), points.getZ( c ),
+                  points.getX( d ), points.getY( d ), points.getZ( d ) );
+        }
+    }
+
+    private class CalcTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int m_from, m_to;
+
+        CalcTask( int from, int to ){
+            m_from = from;
+            m_to = to;
+        }
+
+        protected void compute(){
+            if( m_to - m_from <= CALC_CHUNK ){
+                _calcRange( m_from, m_to );
+                return;
+            }
+            int mid = (m_from + m_to) >>> 1;
+            invokeAll( new CalcTask( m_from, mid ), new CalcTask( mid, m_to ) );
+        }
+    }
+
+    private static void _cross( double[] out, int o, double x1, double y1, double z1, double x2, double y2, double z2 ){
+        out[o]     = y1 * z2 - z1 * y2;
+        out[o + 1] = z1 * x2 - x1 * z2;
+        out[o + 2] = x1 * y2 - y1 * x2;
+    }
+
+    private static double _distSq( double x1, double y1, double z1, double x2, double y2, double z2 ){
+        double dx = x1 - x2, dy = y1 - y2, dz = z1 - z2;
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
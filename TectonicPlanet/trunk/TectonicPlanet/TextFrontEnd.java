@@ -17,6 +17,13 @@ public class TextFrontEnd implements Runnable {
     // The limit to how many steps to take.
     private int m_stepLimit = 1;
 
+    // Whether to keep most of the points' data as floats (-single)
+    private boolean m_singlePrecision = false;
+
+    // The file to keep a new World's points and checkpoints in (-mapped), or
+    // null to keep them on the heap
+    private File m_mappedFile = null;
+
     /**
      * The <code>main</code> method is the entry-point for calls from the
      * command line. Sets up a new FrontEnd and starts the GUI.
@@ -26,13 +33,25 @@ public class TextFrontEnd implements Runnable {
     public static void main( String[] arg ){
         try {
             TextFrontEnd tfe = new TextFrontEnd();
-            if( arg.length == 1 )
-                tfe.init( arg[0] );
-            else if( arg.length == 2 )
-                tfe.init( arg[0], arg[1] );
+            int first = 0;
+            boolean ok = true;
+            for( ; ok && first < arg.length && arg[first].startsWith( "-" ); first++ ){
+                if( arg[first].equals( "-single" ) )
+                    tfe.m_singlePrecision = true;
+                else if( arg[first].equals( "-mapped" ) && first + 1 < arg.length )
+                    tfe.m_mappedFile = new File( arg[++first] );
+                else
+                    ok = false;
+            }
+            if( ok && arg.length - first == 1 )
+                tfe.init( arg[first] );
+            else if( ok && arg.length - first == 2 )
+                tfe.init( arg[first], arg[first + 1] );
             else
                 System.out.println(
-                    "Usage: java TextFrontEnd <timesteps> [<filename>]"
+                    "Usage: java TextFrontEnd [-single] [-mapped <pointfile>] <timesteps> [<filename>]\n"
+                  + "  -mapped keeps a new world's points in <pointfile>, checkpointing as it\n"
+                  + "  goes; give <pointfile> as <filename> to resume from its last checkpoint."
                 );
         }
         catch( Exception e ){
@@ -113,7 +132,12 @@ public class TextFrontEnd implements Runnable {
      * Creates a new world from scratch.
      */
     public void createNewWorld(){
-        m_world = new World();
+        if( m_mappedFile != null )
+            m_world = new World( 10, 10, World.DEFAULT_POINT_SPACING, m_mappedFile );
+        else if( m_singlePrecision )
+            m_world = new World( 10, 10, World.DEFAULT_POINT_SPACING, true );
+        else
+            m_world = new World();
 
         // FIXME: This should be handled by the world class.
         for( int i = 0; i < m_world.getNumPoints(); ++i ){
@@ -132,7 +156,10 @@ public class TextFrontEnd implements Runnable {
     public void loadWorld( String filename ){
         try {
             File file = new File( filename );
-            m_world   = new World( file.getCanonicalPath() );
+            if( World.isCheckpoint( file ) )
+                m_world = World.resume( file );
+            else
+                m_world = new World( file.getCanonicalPath(), m_singlePrecision );
         }
         catch( Exception e ){
             System.err.println( "Error loading world: " + filename );
@@ -11,6 +11,7 @@ import java.awt.image.BandedSampleModel;
 import java.awt.image.DataBuffer;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -20,6 +21,8 @@ import java.io.PrintWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 // Java3d imports
 import javax.imageio.*;
@@ -37,23 +40,68 @@ import javax.media.j3d.Transform3D;
  * @author Nate Lillich
  */
 public class World {
+    // locate() sorts positions on MORTON_BITS bits of each coordinate, leaving
+    // the low 24 bits of each key for the position's place in the batch
+    private static final int MORTON_BITS = 13;
+    private static final int MAX_LOCATE_BATCH = 1 << 24;
+
+    // Below this many tets the validity checks aren't worth splitting up
+    private static final int VALIDITY_CHUNK = 256;
+
+    // The default distance between surface points, in km
+    public static final int DEFAULT_POINT_SPACING = 360;
+
+    // The first triangulation is split into about this many patches per
+    // thread, so that the threads still finish together when some patches
+    // take longer than others
+    private static final int PATCHES_PER_THREAD = 2;
+
+    // How wide the cells of the mantle flow lookup grid are, as a fraction of
+    // the point spacing. The flow changes over thousands of km, so a cell of
+    // an eighth of the gap between points keeps the looked up flow well
+    // inside what a point could tell apart.
+    private static final double MANTLE_FLOW_CELL = 1.0 / 8.0;
+
+    // How many times redelaunay() will widen or reopen holes before giving up
+    private static final int MAX_HOLE_RETRIES = 1000;
+
+    // Marks the start of the triangulation in a world file ("TETS"); files
+    // saved before it was added end with the points
+    private static final int TOPOLOGY_TAG = 0x54455453;
+
     // Physics bits
 
     private ArrayList m_points = null;  // The points of the surface
+    private PointStore m_pointStore = null; // Columnar per-point state behind m_points
     private ArrayList m_plates = null;  // The plates of the surface
     private ArrayList m_tets = null;    // The tetrahedrons of the surface
+    private ArrayList[] m_pointTets = null; // The tets using each point, by PointStore index
+    private TetStore m_tetStore = null;     // Geometry of the tets in m_tets
     private int m_epoch = 0;            // "Date". Basically, how many cycles have been run.
     private double m_planetRadius = 6400.0, m_planetSurfaceArea;
-    private int m_pointSpacing = 360;   // The default distance between surface points
+    private int m_pointSpacing = DEFAULT_POINT_SPACING;
+    private boolean m_singlePrecision = false; // Keep old point positions, rock and forces as floats
+    private int m_checkpointInterval = 0; // Steps between checkpoints of a mapped world, 0 for never
+    private int m_reorderInterval = 20; // Steps between reorderings of the points in memory, 0 for never
+    private int m_stepsSinceReorder = 0;
     private TecPoint m_planetCenter = null;
     private Vector3d m_omega = null;    // Speed of planet rotation
     // Delaunay bits
-    private int m_gridSize;
-    private HashSet[][][] m_gridBox;
+    private PointGrid m_pointGrid;      // Cell list of the points, updated as they move
+    private PointGrid.Collector m_nearby; // Reused for the results of pointsSurrounding()
+    private ValidityCheck m_validityCheck;
+    private double[] m_nearestDistSq = new double[ 16 ]; // Scratch for nearest()
+    private int[] m_walkStart = new int[ 1 ]; // Scratch for getTet()
+    private Tet m_lastTet = null;       // The tet getTet() found last, to walk on from
+    private long[] m_locateOrder = new long[ 0 ]; // Scratch for locate()
     private LinkSystem m_linkSystem;
     // Mantle flow arrows
     private double[] m_mantleFlowStrength;
     private Point3d[] m_mantlePoint;
+    private int m_mantleFlowVersion = 0; // Bumped whenever the upwellings move
+    private SphereGrid m_flowCells;     // The mantle flow lookup grid...
+    private double[] m_flowField;       // ...and the flow through the middle of each cell, as x, y, z
+    private int m_flowFieldVersion = -1; // The m_mantleFlowVersion m_flowField was worked out for
     private int m_numMantlePoints;
     // Map saving bits
     private BufferedImage m_imageBuffer;
@@ -63,8 +111,10 @@ public class World {
     private boolean m_altered = false;
     private File m_saveFile = null;
     // Tet gridbox bits (for fast fluids)
-    private int m_tetGridSize;
-    private HashSet[][][] m_tetGridBox;
+    private SphereGrid m_tetCells;      // The cells tets are bucketed into, by the cells their bounding caps overlap
+    private HashSet[] m_tetGridBox;
+    private long m_tetLookups, m_tetWalkMisses, m_tetFallbackScans; // getTet() counts since the tets were last bucketed
+    private int m_tetShellDepth;
 
     /**
      * Default constructor - makes a new World using default settings.
@@ -87,6 +137,20 @@ public class World {
         initColors();
     }
 
+    /**
+     * Loads the World from the given file, optionally keeping its points in
+     * single precision.
+     *
+     * @param file            The filename of the file to load the World from
+     * @param singlePrecision Whether to store previous point positions, rock
+     *                        columns and forces as floats
+     */
+    public World( String file, boolean singlePrecision ){
+        m_singlePrecision = singlePrecision;
+        load( file );
+        initColors();
+    }
+
     /**
      * Builds a new World using the given parameters.
      *
@@ -100,11 +164,164 @@ public class World {
         _initPoints( numPlates );
     }
 
+    /**
+     * Builds a new World with the given point spacing. Dense worlds (for big
+     * image exports) can keep most of their per-point data in single
+     * precision to save memory. Current positions, and all the geometry, stay
+     * in double precision.
+     *
+     * @param mantlePoints    The number of mantle up-welling points to make
+     * @param numPlates       The number of tectonic plates to make
+     * @param pointSpacing    The distance between surface points, in km
+     * @param singlePrecision Whether to store previous point positions, rock
+     *                        columns and forces as floats
+     */
+    public World( int mantlePoints, int numPlates, int pointSpacing, boolean singlePrecision ){
+        this.m_numMantlePoints = mantlePoints;
+        this.m_pointSpacing = pointSpacing;
+        this.m_singlePrecision = singlePrecision;
+        initStorage();
+        initColors();
+        _initPoints( numPlates );
+    }
+
+    /**
+     * Builds a new World whose points are kept in a memory-mapped file rather
+     * than on the Java heap, for worlds too dense to fit in it. The same file
+     * holds checkpoints, written every few steps, which resume() can restart
+     * from without redoing the triangulation.
+     *
+     * @param mantlePoints The number of mantle up-welling points to make
+     * @param numPlates    The number of tectonic plates to make
+     * @param pointSpacing The distance between surface points, in km
+     * @param mappedFile   The file to keep the points and checkpoints in.
+     *                     Anything already in it is lost.
+     */
+    public World( int mantlePoints, int numPlates, int pointSpacing, File mappedFile ){
+        this.m_numMantlePoints = mantlePoints;
+        this.m_pointSpacing = pointSpacing;
+        // The mapped rows are all doubles, so this World is never single
+        // precision
+        MappedPointStore store = null;
+        try {
+            store = MappedPointStore.create( mappedFile, 1024 );
+        }
+        catch( IOException e ){
+            System.out.println( "Couldn't create " + mappedFile + " - " + e );
+            e.printStackTrace( System.out );
+            System.exit( 1 );
+        }
+        initStorage( store );
+        m_checkpointInterval = 10;
+        initColors();
+        _initPoints( numPlates );
+        checkpoint();
+    }
+
+    /**
+     * Rebuilds a World from the last checkpoint in a mapped store. Used by
+     * resume().
+     */
+    private World( MappedPointStore store ) throws IOException {
+        DataInputStream data = store.readCheckpoint();
+        m_pointStore = store;
+        m_points = new ArrayList();
+        m_imageSettings = new ImageSettings();
+        m_checkpointInterval = 10;
+        initColors();
+
+        m_epoch = data.readInt();
+        m_planetRadius = data.readDouble();
+        m_pointSpacing = data.readInt();
+        TecPoint.magmaDensity = data.readDouble();
+
+        m_numMantlePoints    = data.readInt();
+        m_mantleFlowStrength = new double[m_numMantlePoints];
+        m_mantlePoint        = new Point3d[m_numMantlePoints];
+        for( int i = 0; i < m_numMantlePoints; ++i ){
+            m_mantleFlowStrength[i] = data.readDouble();
+            m_mantlePoint[i] = new Point3d( data.readDouble(), data.readDouble(), data.readDouble() );
+        }
+
+        m_plates = new ArrayList();
+        int numPlates = data.readInt();
+        for( int i = 0; i < numPlates; ++i ){
+            TecPlate plate = new TecPlate( 0.0, 0.0, 0.0 );
+            plate.densityTweak = data.readDouble();
+            m_plates.add( plate );
+        }
+
+        // The points take back the rows they had when the checkpoint was written
+        int numPoints = data.readInt();
+        for( int i = 0; i < numPoints; ++i ){
+            int row = data.readInt();
+            TecPoint tecpoint = new TecPoint( this, row, data.readInt() );
+            tecpoint.setSize( data.readDouble() );
+            tecpoint.setPlate( getPlate( data.readInt() ) );
+            tecpoint.originalNorth = new Vector3d( data.readDouble(), data.readDouble(), data.readDouble() );
+            addPoint( tecpoint );
+        }
+        store.finishAdopting();
+
+        Tet.planetRadius = m_planetRadius;
+        for( int i = 0; i < numPlates; ++i )
+            getPlate( i ).center();
+        m_linkSystem = new LinkSystem();
+        initGridBoxSystems();
+        m_pointGrid.rebuild( m_points );
+
+        // Put the tets back as they were; their links come back with them
+        m_planetCenter = new TecPoint( 0.0, 0.0, 0.0, m_epoch );
+        _clearTets();
+        int numTets = data.readInt();
+        for( int i = 0; i < numTets; ++i ){
+            TecPoint b = store.getOwner( data.readInt() );
+            TecPoint c = store.getOwner( data.readInt() );
+            TecPoint d = store.getOwner( data.readInt() );
+            _addTet( new Tet( m_planetCenter, b, c, d ) );
+        }
+        m_tetStore.calcAll();
+        resetTetGridSystem();
+        pourOnWater();
+        _colourPoints();
+    }
+
+    /**
+     * Restarts a World from the last checkpoint written to a mapped file, as
+     * made by World( int, int, int, File ). Nothing has to be triangulated.
+     *
+     * @param mappedFile The file the World was keeping its points in.
+     *
+     * @return The World as it was at its last checkpoint.
+     */
+    public static World resume( File mappedFile ) throws IOException {
+        System.out.println( "Resuming from " + mappedFile + "..." );
+        long time = System.currentTimeMillis();
+        World world = new World( MappedPointStore.open( mappedFile ) );
+        System.out.println( "Resumed at epoch " + world.getEpoch() + " in " + (System.currentTimeMillis() - time) + "ms." );
+        return world;
+    }
+
+    /**
+     * @return Whether the given file holds a checkpoint resume() can read.
+     */
+    public static boolean isCheckpoint( File file ){
+        return MappedPointStore.isMappedStore( file );
+    }
+
     /**
      * Initializes the various arrays used to store the data about the world.
      */
     private void initStorage(){
+        initStorage( new PointStore( 1024, m_singlePrecision ) );
+    }
+
+    /**
+     * As initStorage(), keeping the points in the given store.
+     */
+    private void initStorage( PointStore pointStore ){
         m_points = new ArrayList();
+        m_pointStore = pointStore;
         m_plates = new ArrayList();
         m_mantlePoint   = new Point3d[ m_numMantlePoints ];
         m_linkSystem    = new LinkSystem();
@@ -214,8 +431,7 @@ public class World {
         delaunay();
 
         // Stick all the tets into the tetGridBox system
-        for( int i = 0; i < m_tets.size(); ++i )
-            gridBoxAdd( (Tet)m_tets.get( i ) );
+        resetTetGridSystem();
 
         // Mantle upwelling points
         System.out.println( "Randomizing mantle upwellings." );
@@ -230,6 +446,7 @@ public class World {
      * Places the mantel upwellings in random locations.
      */
     public void randomiseUpwellings(){
+        m_mantleFlowVersion++;
         for( int i = 0; i < m_numMantlePoints; ++i ){
             // Shuffle the upwelling point randomly, until it _isn't_ too close
             // to the other points.
@@ -260,6 +477,7 @@ public class World {
     public void breakUpSuperContinents(){
         // Move the mantle upwellings and try to place them underneath major
         // landmasses to initiate breakup of any supercontinents
+        m_mantleFlowVersion++;
         for( int i = 0; i < m_numMantlePoints; ++i ){
             System.out.println( "Moving mantle point " + (i + 1) + " of " + m_numMantlePoints );
 
@@ -286,16 +504,15 @@ public class World {
                 }
                 
                 // Check for the amount of deep rock overhead
-                volume = 0;
-                for( int p = 0; p < m_points.size(); ++p ){
-                    TecPoint tp = getPoint( p );
-                    double distance = pointI.distance( tp.getPos() );
-                    if( distance < 3000 ){
+                final double[] rock = new double[ 1 ];
+                withinRadius( pointI, 3000, new RadiusVisitor() {
+                    public void visit( TecPoint tp, int centre, double distance ){
                         double area  = tp.getArea();
                         double depth = tp.getDepth();
-                        volume += area * depth * (3000 - distance) / 3000;
+                        rock[0] += area * depth * (3000 - distance) / 3000;
                     }
-                }
+                } );
+                volume = rock[0];
 
                 // Rough estimate of the average depth of rock (ocean floor is
                 // ~7km thick).
@@ -313,26 +530,15 @@ public class World {
      * Initialize the two grid box systems.
      */
     public void initGridBoxSystems(){
-        // Allocate the normal gridBox.
-        m_gridSize = (int)Math.ceil( m_planetRadius / (m_pointSpacing * 1.1) - 1 );
-        m_gridBox  = new HashSet[m_gridSize][m_gridSize][m_gridSize];
-        for( int z = 0; z < m_gridSize; ++z ){
-            for( int y = 0; y < m_gridSize; ++y ){
-                for( int x = 0; x < m_gridSize; ++x ){
-                    m_gridBox[z][y][x] = null;
-                }
-            }
-        }
+        // Allocate the point grid. Its cells, and the tets', are sized to
+        // suit the point spacing.
+        m_pointGrid = new PointGrid( m_pointStore, m_planetRadius, m_pointSpacing * 1.1 );
+        m_nearby = new PointGrid.Collector( m_pointStore );
+        m_validityCheck = new ValidityCheck();
 
         // Initialise the tetGridBox system
-        m_tetGridSize = 15;
-        m_tetGridBox  = new HashSet[m_tetGridSize][m_tetGridSize][m_tetGridSize];
-        for( int z = 0; z < m_tetGridSize; z++ ){
-            for( int y = 0; y < m_tetGridSize; y++ ){
-                for( int x = 0; x < m_tetGridSize; x++ )
-                    m_tetGridBox[z][y][x] = null;
-            }
-        }
+        m_tetCells   = new SphereGrid( m_planetRadius, m_pointSpacing * 4.0 );
+        m_tetGridBox = new HashSet[ m_tetCells.getNumCells() ];
     }
 
     /**
@@ -370,10 +576,19 @@ public class World {
         //   baseDepthOffset    (double)
         //   rockThickness      (double)
         //   density            (double)
+        // topologyTag     (int, absent in older files, which end here)
+        // numTets         (int)
+        // tet data
+        //   b, c, d            (int, point numbers as above)
+        // numLinks        (int)
+        // link data
+        //   a, b               (int, point numbers as above)
+        //   count              (int)
 
         System.out.println( "Loading file " + filename + "..." );
         try {
-            int numPlates = _readFile( filename );
+            int[][] topology = new int[ 2 ][];
+            int numPlates = _readFile( filename, topology );
             m_altered = false;
 
             // Now sort out the bare planet we just loaded...
@@ -389,30 +604,22 @@ public class World {
             System.out.println( "Allocating grid boxes." );
             initGridBoxSystems();
 
-            // Delaunay the whole planet
-            System.out.println( "Delaunaying planet." );
+            // Put back the saved tets if there are any, or else Delaunay the
+            // whole planet
             Tet.biggestError = 0.0;
-            m_tets = null;
-            delaunay();
+            if( topology[0] != null && _restoreTopology( topology[0], topology[1] ) ){
+                System.out.println( "Restored " + m_tets.size() + " tets." );
+            }
+            else {
+                System.out.println( "Delaunaying planet." );
+                m_tets = null;
+                delaunay();
+            }
             resetTetGridSystem();
             pourOnWater();
 
             // Set Colors
-            for( int i = 0; i < getNumPoints(); ++i ){
-                TecPoint point  = getPoint( i );
-                double   height = point.getSurfaceHeight();
-                point.setColor( m_colorMap.map( height - TecPoint.seaLevel ) );
-            }
-
-            // Store interpolated colors in the links.
-            Color c1, c2;
-            ArrayList tempVec = new ArrayList( getLinkSystem().getCollection() );
-            for( int i = 0; i < tempVec.size(); ++i ){
-                LinkPair lp = (LinkPair)tempVec.get( i );
-                c1 = lp.getA().getColor();
-                c2 = lp.getB().getColor();
-                lp.col = new Color( (c1.getRed() + c2.getRed()) / 2, (c1.getGreen() + c2.getGreen()) / 2, (c1.getBlue() + c2.getBlue()) / 2 );
-            }
+            _colourPoints();
         }
         catch( Exception exception ){
             System.out.println( "Error while loading the world - " + exception );
@@ -420,6 +627,103 @@ public class World {
         }
     }
 
+    /**
+     * Sets how many steps a mapped World runs between checkpoints.
+     *
+     * @param steps The number of steps, or 0 to only checkpoint when the
+     *              point file has had to grow over the last one.
+     */
+    public void setCheckpointInterval( int steps ){
+        m_checkpointInterval = steps;
+    }
+
+    /**
+     * Writes a checkpoint to the World's mapped point file, which resume() can
+     * restart from. Does nothing if the points aren't kept in a mapped file.
+     */
+    public void checkpoint(){
+        if( !(m_pointStore instanceof MappedPointStore) )
+            return;
+        MappedPointStore store = (MappedPointStore)m_pointStore;
+        long time = System.currentTimeMillis();
+        try {
+            store.writeCheckpoint( new MappedPointStore.CheckpointWriter(){
+                public void write( DataOutputStream data ) throws IOException {
+                    _writeCheckpoint( data );
+                }
+            } );
+        }
+        catch( IOException e ){
+            System.out.println( "Error writing checkpoint - " + e );
+            e.printStackTrace( System.out );
+            return;
+        }
+        System.out.println( "Checkpointed in " + (System.currentTimeMillis() - time) + "ms." );
+    }
+
+    /**
+     * Writes everything a checkpoint needs beyond the rows of the point store:
+     * the things _writeFile() saves which aren't kept in the rows, and the
+     * tets, so resuming needn't triangulate.
+     */
+    private void _writeCheckpoint( DataOutputStream data ) throws IOException {
+        data.writeInt( m_epoch );
+        data.writeDouble( m_planetRadius );
+        data.writeInt( m_pointSpacing );
+        data.writeDouble( TecPoint.magmaDensity );
+
+        data.writeInt( m_numMantlePoints );
+        for( int i = 0; i < m_numMantlePoints; ++i ){
+            data.writeDouble( m_mantleFlowStrength[i] );
+            data.writeDouble( m_mantlePoint[i].x );
+            data.writeDouble( m_mantlePoint[i].y );
+            data.writeDouble( m_mantlePoint[i].z );
+        }
+
+        HashMap plateNums = new HashMap();
+        data.writeInt( m_plates.size() );
+        for( int i = 0; i < m_plates.size(); ++i ){
+            plateNums.put( getPlate( i ), Integer.valueOf( i ) );
+            data.writeDouble( getPlate( i ).densityTweak );
+        }
+
+        data.writeInt( m_points.size() );
+        for( int i = 0; i < m_points.size(); ++i ){
+            TecPoint point = getPoint( i );
+            data.writeInt( point.getIndex() );
+            data.writeInt( point.getCreationDate() );
+            data.writeDouble( point.getSize() );
+            data.writeInt( ((Integer)plateNums.get( point.getPlate() )).intValue() );
+            data.writeDouble( point.originalNorth.x );
+            data.writeDouble( point.originalNorth.y );
+            data.writeDouble( point.originalNorth.z );
+        }
+
+        data.writeInt( m_tets.size() );
+        for( int i = 0; i < m_tets.size(); ++i ){
+            Tet tet = (Tet)m_tets.get( i );
+            data.writeInt( tet.b.getIndex() );
+            data.writeInt( tet.c.getIndex() );
+            data.writeInt( tet.d.getIndex() );
+        }
+    }
+
+    /**
+     * Colours the points by height, and the links by their points.
+     */
+    private void _colourPoints(){
+        for( int i = 0; i < getNumPoints(); i++ )
+            getPoint( i ).setColor( m_colorMap.map( getPoint( i ).getSurfaceHeight() - TecPoint.seaLevel ) );
+        Color c1, c2;
+        ArrayList tempVec = new ArrayList( getLinkSystem().getCollection() );
+        for( int i = 0; i < tempVec.size(); i++ ){
+            LinkPair lp = (LinkPair)tempVec.get( i );
+            c1 = lp.getA().getColor();
+            c2 = lp.getB().getColor();
+            lp.setColor( new Color( (c1.getRed() + c2.getRed()) / 2, (c1.getGreen() + c2.getGreen()) / 2, (c1.getBlue() + c2.getBlue()) / 2 ) );
+        }
+    }
+
     /**
      * Saves the world to file.
      */
@@ -466,6 +770,7 @@ public class World {
      * @param tecpoint The point to add.
      */
     public void addPoint( TecPoint tecpoint ){
+        tecpoint.setListIndex( m_points.size() );
         m_points.add( tecpoint );
     }
 
@@ -531,21 +836,8 @@ public class World {
     public void delaunay(){
         long time = System.currentTimeMillis();
 
-        // Clear all the gridboxes
-        for( int i = 0; i < m_gridSize; ++i ){
-            for( int j = 0; j < m_gridSize; ++j ){
-                for( int k = 0; k < m_gridSize; ++k ){
-                    if( m_gridBox[i][j][k] != null ){
-                        m_gridBox[i][j][k].clear();
-                    }
-                }
-            }
-        }
-
-        // Put all the points in the gridBoxes
-        for( int i = 0; i < m_points.size(); i++ ){
-            gridBoxAdd( (TecPoint)m_points.get( i ) );
-        }
+        // Put all the points in the grid
+        m_pointGrid.rebuild( m_points );
 
         // Make sure there's a point at the center of the planet. We use it for
         // the tets
@@ -568,86 +860,24 @@ public class World {
 
                 // Check if tet is ok
                 for( int i = 0; i < m_points.size() && goodTet; ++i ){
-                    if( startTet.contains( getPoint( i ).getPos() ) )
+                    if( startTet.contains( getPoint( i ) ) )
                         goodTet = false;
                 }
             } while( !goodTet );
 
             // Found a good tet, start a new list based on it
-            m_tets = new ArrayList();
             m_linkSystem = new LinkSystem();
-            m_tets.add( startTet );
-            m_linkSystem.addLink( startTet.b, startTet.c );
-            m_linkSystem.addLink( startTet.b, startTet.d );
-            m_linkSystem.addLink( startTet.c, startTet.d );
+            _clearTets();
+            _addTet( startTet );
             activeTets.add( startTet );
         }
         else {
-            // First time Delaunay
-            // Reset the list of tets
-            activeTets = new ArrayList( 2000 );
-            m_tets = new ArrayList();
+            // First time Delaunay: triangulate patches of the planet side by
+            // side, which leaves nothing for the loop below
+            activeTets = new ArrayList();
             m_linkSystem = new LinkSystem();
-
-            // Try to make the first tet from the known pole points...
-            Tet tet1 = new Tet( m_planetCenter, getPoint( 0 ), getPoint( 1 ), getPoint( 2 ) );
-            tet1.calc();
-            // Check if it's ok
-            System.out.print( "Checking first tet..." );
-            boolean ok = true;
-            for( int i = 3; i < m_points.size(); i++ ){
-                if( ok && tet1.contains( getPoint( i ).getPos() ) )
-                    ok = false;
-            }
-            if( ok ){
-                // Cool, we've got our first tet
-                m_tets.add( tet1 );
-                m_linkSystem.addLink( tet1.b, tet1.c );
-                m_linkSystem.addLink( tet1.b, tet1.d );
-                m_linkSystem.addLink( tet1.c, tet1.d );
-                activeTets.add( tet1 );
-                System.out.println( "ok!" );
-            }
-            else {
-                // Nope, we'll have to use brute force
-                System.out.println( "bad :(" );
-                System.out.println( "Using brute force to find first tet..." );
-                do {
-                    ok = true;
-                    ArrayList nearby;
-                    do {
-                        nearby = new ArrayList( pointsSurrounding( getPoint( (int)(Math.random() * (double)(m_points.size() - 1)) ).getPos() ) );
-                    } while( nearby == null || nearby.size() < 4 );
-                    // OK, we've found some points, now pick 3 (plus centerOfPlanet) and make a tetrahedron from them
-                    int p1, p2, p3;
-                    p1 = (int)(Math.random() * nearby.size());
-                    do {
-                        p2 = (int)(Math.random() * nearby.size());
-                    } while( p2 == p1 );
-                    do {
-                        p3 = (int)(Math.random() * nearby.size());
-                    } while( p3 == p1 && p3 == p2 );
-                    tet1 = new Tet( m_planetCenter, (TecPoint)nearby.get( p1 ),
-                                    (TecPoint)nearby.get( p2 ),
-                                    (TecPoint)nearby.get( p3 ) );
-                    tet1.calc();
-                    for( int i_56_ = 0; i_56_ < m_points.size(); i_56_++ ){
-                        if( ok
-                                && !getPoint( i_56_ ).equals( (TecPoint)nearby.get( p1 ) )
-                                && !getPoint( i_56_ ).equals( (TecPoint)nearby.get( p2 ) )
-                                && !getPoint( i_56_ ).equals( (TecPoint)nearby.get( p3 ) )
-                                && tet1.contains( getPoint( i_56_ ).getPos() ) )
-                            ok = false;
-                    }
-                } while( !ok );
-                // Cool, we've got our first tet (by brute force!)
-                m_tets.add( tet1 );
-                m_linkSystem.addLink( tet1.b, tet1.c );
-                m_linkSystem.addLink( tet1.b, tet1.d );
-                m_linkSystem.addLink( tet1.c, tet1.d );
-                activeTets.add( tet1 );
-                System.out.println( tet1.b + "   " + tet1.c + "   " + tet1.d );
-            }
+            _clearTets();
+            _delaunayByPatches();
         }
 
         System.out.print( "Doing Delaunay tets" );
@@ -655,7 +885,6 @@ public class World {
         Tet t2 = null;
         Tet t3 = null;
         int tetNum = 0;
-        Iterator iter, iter2;
         while( activeTets.size() > 0 && tetNum < activeTets.size() ){
             Tet tet = (Tet)activeTets.get( tetNum );//(Tet) activeTets.get( (int) (Math.random() * (double) activeTets.size()));//
             if( Math.random() < 0.01 )
@@ -668,90 +897,69 @@ public class World {
 
             // Can we use link tet.b<->tet.c?
             if( m_linkSystem.getCount( tet.b, tet.c ) <= 1 ){
-                HashSet nearby = pointsSurrounding( tet.b.getPos(), tet.c.getPos() );
-                iter = nearby.iterator();
-                while( iter.hasNext() && t1 == null ){
-                    //for (int i = 0; t1 == null && i < nearby.size(); i++) {
-                    TecPoint tecpoint = (TecPoint)iter.next();//nearby.get(i);
+                PointGrid.Collector nearby = pointsSurrounding( tet.b.getPos(), tet.c.getPos() );
+                for( int n = 0; t1 == null && n < nearby.size(); n++ ){
+                    TecPoint tecpoint = nearby.getPoint( n );
                     if( !tecpoint.equals( tet.a ) && !tecpoint.equals( tet.b ) && !tecpoint.equals( tet.c ) && !tecpoint.equals( tet.d ) ){
                         Tet tet_63_ = new Tet( m_planetCenter, tet.b, tet.c, tecpoint );
                         tet_63_.calc();
                         // Now check against all nearby points
                         boolean ok = true;
-                        iter2 = nearby.iterator();
-                        while( ok && iter2.hasNext() ){
-                            //for (int i_64_ = 0; ok && i_64_ < nearby.size(); i_64_++) {
-                            TecPoint tecpoint_65_ = (TecPoint)iter2.next();//nearby.get(i_64_);
-                            if( tecpoint != tecpoint_65_ && tecpoint_65_ != tet.b && tecpoint_65_ != tet.c && tet_63_.contains( tecpoint_65_.getPos() ) )
+                        for( int m = 0; ok && m < nearby.size(); m++ ){
+                            TecPoint tecpoint_65_ = nearby.getPoint( m );
+                            if( tecpoint != tecpoint_65_ && tecpoint_65_ != tet.b && tecpoint_65_ != tet.c && tet_63_.contains( tecpoint_65_ ) )
                                 ok = false;
                         }
                         if( ok ){
                             t1 = tet_63_;
-                            m_tets.add( t1 );
+                            _addTet( t1 );
                             activeTets.add( t1 );
-                            m_linkSystem.addLink( t1.b, t1.c );
-                            m_linkSystem.addLink( t1.b, t1.d );
-                            m_linkSystem.addLink( t1.c, t1.d );
                         }
                     }
                 }
             }
             // Can we use link tet.c<->tet.d?
             if( m_linkSystem.getCount( tet.c, tet.d ) <= 1 ){
-                HashSet nearby = pointsSurrounding( tet.c.getPos(), tet.d.getPos() );
-                iter = nearby.iterator();
-                while( iter.hasNext() && t2 == null ){
-                    //for (int i = 0; t2 == null && i < nearby.size(); i++) {
-                    TecPoint tecpoint = (TecPoint)iter.next();//nearby.get(i);
+                PointGrid.Collector nearby = pointsSurrounding( tet.c.getPos(), tet.d.getPos() );
+                for( int n = 0; t2 == null && n < nearby.size(); n++ ){
+                    TecPoint tecpoint = nearby.getPoint( n );
                     if( !tecpoint.equals( tet.a ) && !tecpoint.equals( tet.b ) && !tecpoint.equals( tet.c ) && !tecpoint.equals( tet.d ) ){
                         Tet tet_67_ = new Tet( m_planetCenter, tet.c, tet.d, tecpoint );
                         tet_67_.calc();
                         // Now check against all nearby points
                         boolean ok = true;
-                        iter2 = nearby.iterator();
-                        while( ok && iter2.hasNext() ){
-                            //for (int i_68_ = 0; ok && i_68_ < nearby.size(); i_68_++) {
-                            TecPoint tecpoint_69_ = (TecPoint)iter2.next();//nearby.get(i_68_);
-                            if( tecpoint != tecpoint_69_ && tecpoint_69_ != tet.c && tecpoint_69_ != tet.d && tet_67_.contains( tecpoint_69_.getPos() ) )
+                        for( int m = 0; ok && m < nearby.size(); m++ ){
+                            TecPoint tecpoint_69_ = nearby.getPoint( m );
+                            if( tecpoint != tecpoint_69_ && tecpoint_69_ != tet.c && tecpoint_69_ != tet.d && tet_67_.contains( tecpoint_69_ ) )
                                 ok = false;
                         }
                         if( ok ){
                             t2 = tet_67_;
-                            m_tets.add( t2 );
+                            _addTet( t2 );
                             activeTets.add( t2 );
-                            m_linkSystem.addLink( t2.b, t2.c );
-                            m_linkSystem.addLink( t2.b, t2.d );
-                            m_linkSystem.addLink( t2.c, t2.d );
                         }
                     }
                 }
             }
             // Can we use link tet.b<->tet.d?
             if( m_linkSystem.getCount( tet.b, tet.d ) <= 1 ){
-                HashSet nearby = pointsSurrounding( tet.b.getPos(), tet.d.getPos() );
-                iter = nearby.iterator();
-                while( iter.hasNext() && t3 == null ){
-                    //for (int i = 0; t3 == null && i < vector_70_.size(); i++) {
-                    TecPoint tecpoint = (TecPoint)iter.next();//vector_70_.get(i);
+                PointGrid.Collector nearby = pointsSurrounding( tet.b.getPos(), tet.d.getPos() );
+                for( int n = 0; t3 == null && n < nearby.size(); n++ ){
+                    TecPoint tecpoint = nearby.getPoint( n );
                     if( !tecpoint.equals( tet.a ) && !tecpoint.equals( tet.b ) && !tecpoint.equals( tet.c ) && !tecpoint.equals( tet.d ) ){
                         Tet tet_71_ = new Tet( m_planetCenter, tet.b, tet.d, tecpoint );
                         tet_71_.calc();
                         // Now check against all nearby points
                         boolean ok = true;
-                        iter2 = nearby.iterator();
-                        while( ok && iter2.hasNext() ){
-                            //for (int i_72_ = 0; ok && i_72_ < vector_70_.size(); i_72_++) {
-                            TecPoint tecpoint_73_ = (TecPoint)iter2.next();//vector_70_.get(i_72_);
-                            if( tecpoint != tecpoint_73_ && tecpoint_73_ != tet.b && tecpoint_73_ != tet.d && tet_71_.contains( tecpoint_73_.getPos() ) )
+                        for( int m = 0; ok && m < nearby.size(); m++ ){
+                            TecPoint tecpoint_73_ = nearby.getPoint( m );
+                            if( tecpoint != tecpoint_73_ && tecpoint_73_ != tet.b && tecpoint_73_ != tet.d && tet_71_.contains( tecpoint_73_ ) )
                                 ok = false;
                         }
                         if( ok ){
                             t3 = tet_71_;
-                            m_tets.add( t3 );
+                            _addTet( t3 );
                             activeTets.add( t3 );
-                            m_linkSystem.addLink( t3.b, t3.c );
-                            m_linkSystem.addLink( t3.b, t3.d );
-                            m_linkSystem.addLink( t3.c, t3.d );
                         }
                     }
                 }
@@ -770,21 +978,159 @@ public class World {
         pourOnWater();
 
         // Set Colours
-        for( int i_39_ = 0; i_39_ < getNumPoints(); i_39_++ )
-            getPoint( i_39_ ).setColor( m_colorMap.map( getPoint( i_39_ ).getSurfaceHeight() - TecPoint.seaLevel ) );
-        // store interpolated colours in the links
-        Color c1, c2;
-        ArrayList tempVec = new ArrayList( getLinkSystem().getCollection() );
-        for( int i = 0; i < tempVec.size(); i++ ){
-            LinkPair lp = (LinkPair)tempVec.get( i );
-            c1 = lp.getA().getColor();
-            c2 = lp.getB().getColor();
-            lp.col = new Color( (c1.getRed() + c2.getRed()) / 2, (c1.getGreen() + c2.getGreen()) / 2, (c1.getBlue() + c2.getBlue()) / 2 );
-        }
+        _colourPoints();
 
         System.out.println( "Whole planet Delaunay in " + (System.currentTimeMillis() - time) / 60000.0f + " minutes! (" + (System.currentTimeMillis() - time) / 1000.0f + " seconds)" );
     }
 
+    /**
+     * Triangulates the planet for the first time, in patches: square blocks
+     * of the point grid's cells, one or more to each cube face. Each patch
+     * grows the tets with a corner in it from a start of its own, keeping
+     * its own links, so the patches can all be done at once on the fork/join
+     * pool. The Delaunay tets are the same whichever patch finds them (the
+     * tests in Predicates break every tie the same way), and each is kept
+     * only by the patch holding its first corner, so the patches fit
+     * together as they are. Anything they missed is then filled in from the
+     * edges of the gaps left.
+     */
+    private void _delaunayByPatches(){
+        // Enough patches to keep every thread busy, but none smaller than a
+        // cell
+        SphereGrid cells = m_pointGrid.getCells();
+        int threads = ForkJoinPool.commonPool().getParallelism();
+        int split = (int)Math.ceil( Math.sqrt( threads * PATCHES_PER_THREAD / 6.0 ) );
+        split = Math.max( 1, Math.min( split, cells.getSize() ) );
+        int numPatches = 6 * split * split;
+
+        // File each point under its patch, and start each patch from the
+        // first point in it
+        int[] patchOf = new int[ m_pointStore.size() ];
+        TecPoint[] seeds = new TecPoint[ numPatches ];
+        for( int i = 0; i < m_points.size(); i++ ){
+            TecPoint point = getPoint( i );
+            int patch = cells.block( point.getX(), point.getY(), point.getZ(), split );
+            patchOf[point.getIndex()] = patch;
+            if( seeds[patch] == null )
+                seeds[patch] = point;
+        }
+
+        System.out.print( "Triangulating " + numPatches + " patches on " + threads + " threads..." );
+        long time = System.currentTimeMillis();
+        ArrayList tets = ForkJoinPool.commonPool().invoke( new PatchTask( patchOf, seeds, 0, numPatches ) );
+        System.out.println( "Done in " + ((System.currentTimeMillis() - time) / 1000.0) + " seconds" );
+
+        for( int i = 0; i < tets.size(); i++ )
+            _addTet( (Tet)tets.get( i ) );
+
+        // The seams between patches are all over, so look everywhere for
+        // gaps
+        boolean[] zone = new boolean[ m_pointStore.size() ];
+        Arrays.fill( zone, true );
+        _fillHoles( zone );
+    }
+
+    /**
+     * Triangulates a range of patches, splitting the range between threads.
+     * The tets are joined up in patch order at the end.
+     */
+    private class PatchTask extends RecursiveTask<ArrayList> {
+        private static final long serialVersionUID = 1L;
+
+        private int[] m_patchOf;
+        private TecPoint[] m_seeds;
+        private int m_from, m_to;
+
+        PatchTask( int[] patchOf, TecPoint[] seeds, int from, int to ){
+            m_patchOf = patchOf;
+            m_seeds = seeds;
+            m_from = from;
+            m_to = to;
+        }
+
+        protected ArrayList compute(){
+            if( m_to - m_from == 1 )
+                return _growPatch( m_from, m_patchOf, m_seeds[m_from] );
+            int mid = (m_from + m_to) >>> 1;
+            PatchTask second = new PatchTask( m_patchOf, m_seeds, mid, m_to );
+            second.fork();
+            ArrayList tets = new PatchTask( m_patchOf, m_seeds, m_from, mid ).compute();
+            tets.addAll( second.join() );
+            return tets;
+        }
+    }
+
+    /**
+     * Grows the Delaunay tets with a corner in one patch, out from the edge
+     * between its seed point and that point's nearest neighbour (which is
+     * always a Delaunay edge). Only reads the grid and the points, so any
+     * number of patches can be grown at once.
+     *
+     * @param patch   The patch to grow.
+     * @param patchOf The patch of each row of the point store.
+     * @param seed    A point in the patch, or null if it has none.
+     * @return The tets found whose first corner, by point store row, is in
+     *         the patch. They aren't added to anything yet.
+     */
+    private ArrayList _growPatch( int patch, int[] patchOf, TecPoint seed ){
+        ArrayList kept = new ArrayList();
+        if( seed == null )
+            return kept;
+        LinkSystem links = new LinkSystem();
+        PointGrid.Collector nearby = new PointGrid.Collector( m_pointStore );
+        ValidityCheck check = new ValidityCheck();
+
+        int[] found = new int[ 2 ];
+        if( m_pointGrid.nearest( seed.getX(), seed.getY(), seed.getZ(), 2, found, new double[ 2 ] ) < 2 )
+            return kept;
+        TecPoint neighbour = m_pointStore.getOwner( found[0] == seed.getIndex() ? found[1] : found[0] );
+        Tet first = _findAcross( seed, neighbour, 1, links, nearby, check );
+        if( first == null )
+            first = _findAcross( seed, neighbour, -1, links, nearby, check );
+        if( first == null )
+            return kept;
+
+        ArrayList grown = new ArrayList();
+        _addPatchTet( first, links, grown );
+        for( int i = 0; i < grown.size(); i++ ){
+            Tet tet = (Tet)grown.get( i );
+            // Past the tets with a corner in the patch, the other patches
+            // take over
+            if( patchOf[tet.b.getIndex()] != patch && patchOf[tet.c.getIndex()] != patch && patchOf[tet.d.getIndex()] != patch )
+                continue;
+            _growAcross( tet.b, tet.c, tet.d, links, nearby, check, grown );
+            _growAcross( tet.c, tet.d, tet.b, links, nearby, check, grown );
+            _growAcross( tet.b, tet.d, tet.c, links, nearby, check, grown );
+        }
+
+        for( int i = 0; i < grown.size(); i++ ){
+            Tet tet = (Tet)grown.get( i );
+            int firstCorner = Math.min( tet.b.getIndex(), Math.min( tet.c.getIndex(), tet.d.getIndex() ) );
+            if( patchOf[firstCorner] == patch )
+                kept.add( tet );
+        }
+        return kept;
+    }
+
+    /**
+     * As _expandAcross(), for a patch being grown by _growPatch(). Where
+     * nothing fits, the edge is left open for the gaps to be filled later.
+     */
+    private void _growAcross( TecPoint p, TecPoint q, TecPoint r, LinkSystem links, PointGrid.Collector nearby, ValidityCheck check, ArrayList grown ){
+        if( links.getCount( p, q ) >= 2 )
+            return;
+        Tet tet = _findAcross( p, q, Predicates.orient( p, q, r ), links, nearby, check );
+        if( tet != null )
+            _addPatchTet( tet, links, grown );
+    }
+
+    private static void _addPatchTet( Tet tet, LinkSystem links, ArrayList grown ){
+        grown.add( tet );
+        links.addLink( tet.b, tet.c );
+        links.addLink( tet.b, tet.d );
+        links.addLink( tet.c, tet.d );
+    }
+
     public void addPlate( TecPlate tecplate ){
         m_plates.add( tecplate );
     }
@@ -809,14 +1155,27 @@ public class World {
     }
 
     public Vector3d getMantleFlow( double x, double y, double z ){
+        Vector3d out = new Vector3d();
+        getMantleFlow( x, y, z, out );
+        return out;
+    }
+
+    /**
+     * Works out the mantle flow at a position without allocating anything.
+     *
+     * @param out Set to the flow.
+     */
+    public void getMantleFlow( double x, double y, double z, Vector3d out ){
         // Find the closest and second-closest upwelling points
-        Point3d point3d = new Point3d( x, y, z );
         int cp = -1;
         int scp = -1;
         double scd;
         double cd = scd = Math.pow( m_planetRadius * 2.0 + 100.0, 2.0 );
         for( int i_80_ = 0; i_80_ < m_numMantlePoints; i_80_++ ){
-            double dist = m_mantlePoint[i_80_].distanceSquared( point3d );
+            double dx = m_mantlePoint[i_80_].x - x;
+            double dy = m_mantlePoint[i_80_].y - y;
+            double dz = m_mantlePoint[i_80_].z - z;
+            double dist = dx * dx + dy * dy + dz * dz;
             if( dist <= cd ){
                 // Move cd down to scd
                 scd = cd;
@@ -841,126 +1200,307 @@ public class World {
             speed = ratio * 10.0;
         else
             speed = (0.4 - (ratio - 0.1)) / 0.4;
-        Vector3d out = new Vector3d( x - m_mantlePoint[cp].x, y - m_mantlePoint[cp].y, z - m_mantlePoint[cp].z );
+        out.set( x - m_mantlePoint[cp].x, y - m_mantlePoint[cp].y, z - m_mantlePoint[cp].z );
         out.normalize();
         out.scale( speed * 100 );
-        return out;
     }
 
-    // GridBox system
-    private int getGridBoxX( TecPoint tecpoint ){
-        return getGridBoxX( tecpoint.getX() );
+    /**
+     * @return A number which changes whenever the upwellings move, so anything
+     *         worked out from getMantleFlow() can be kept until it does.
+     */
+    public int getMantleFlowVersion(){
+        return m_mantleFlowVersion;
     }
 
-    private int getGridBoxX( double d ){
-        return (int)Math.round( (d + m_planetRadius) * (double)(m_gridSize - 1) / (m_planetRadius * 2.0) );
+    /**
+     * Looks up the mantle flow at a position: the flow through the middle of
+     * the cell of the lookup grid it is in. The grid is only worked out again
+     * when the upwellings move, so this is much cheaper than getMantleFlow(),
+     * and allocates nothing.
+     *
+     * @param out Set to the flow.
+     */
+    private void _lookUpMantleFlow( double x, double y, double z, Vector3d out ){
+        if( m_flowFieldVersion != m_mantleFlowVersion )
+            _fillFlowField();
+        int k = 3 * m_flowCells.cell( x, y, z );
+        out.set( m_flowField[k], m_flowField[k + 1], m_flowField[k + 2] );
     }
 
-    private int getGridBoxY( TecPoint tecpoint ){
-        return getGridBoxY( tecpoint.getY() );
+    private void _fillFlowField(){
+        m_flowCells = new SphereGrid( m_planetRadius, m_pointSpacing * MANTLE_FLOW_CELL );
+        m_flowField = new double[ 3 * m_flowCells.getNumCells() ];
+        double[] direction = new double[ 3 ];
+        Vector3d flow = new Vector3d();
+        for( int cell = 0; cell < m_flowCells.getNumCells(); cell++ ){
+            m_flowCells.direction( cell, direction );
+            getMantleFlow( direction[0] * m_planetRadius, direction[1] * m_planetRadius, direction[2] * m_planetRadius, flow );
+            m_flowField[3 * cell]     = flow.x;
+            m_flowField[3 * cell + 1] = flow.y;
+            m_flowField[3 * cell + 2] = flow.z;
+        }
+        m_flowFieldVersion = m_mantleFlowVersion;
     }
 
-    private int getGridBoxY( double d ){
-        return (int)Math.round( (d + m_planetRadius) * (double)(m_gridSize - 1) / (m_planetRadius * 2.0) );
+    // GridBox system
+    // The "pointsSurrounding" methods fill m_nearby with the points found in the
+    // gridbox containing the input point, and the gridboxes surrounding it. It
+    // is reused by the next call, so finish with one before asking for another.
+    private PointGrid.Collector pointsSurrounding( Point3d point3d ){
+        m_nearby.clear();
+        m_pointGrid.visitNear( point3d.x, point3d.y, point3d.z, m_nearby );
+        return m_nearby;
     }
 
-    private int getGridBoxZ( TecPoint tecpoint ){
-        return getGridBoxZ( tecpoint.getZ() );
+    private PointGrid.Collector pointsSurrounding( Point3d p1, Point3d p2 ){
+        m_nearby.clear();
+        m_pointGrid.visitNear( p1.x, p1.y, p1.z, p2.x, p2.y, p2.z, m_nearby );
+        return m_nearby;
     }
 
-    private int getGridBoxZ( double d ){
-        return (int)Math.round( (d + m_planetRadius) * (double)(m_gridSize - 1) / (m_planetRadius * 2.0) );
-    }
+    /**
+     * Looks for a point, other than its own corners, inside a tet's
+     * circumsphere. Stops at the first one it finds.
+     */
+    private class ValidityCheck implements PointVisitor {
+        Tet tet;
 
-    public void gridBoxAdd( TecPoint tecpoint ){
-        int x = getGridBoxX( tecpoint );
-        int y = getGridBoxY( tecpoint );
-        int z = getGridBoxZ( tecpoint );
-        try {
-            if( m_gridBox[x][y][z] == null )
-                m_gridBox[x][y][z] = new HashSet( 100 );
-            m_gridBox[x][y][z].add( tecpoint );
-        }
-        catch( Exception e ){
-            System.out.println( "Problem adding to gridBox[" + x + "][" + y + "][" + z + "] :" + e );
-            e.printStackTrace( System.out );
-            System.exit( 1 );
+        public boolean visit( int point ){
+            TecPoint checkpoint = m_pointStore.getOwner( point );
+            return tet.uses( checkpoint ) || !tet.contains( checkpoint );
         }
     }
 
-    // The "pointsSurrounding" methods return a vector of points: those found in the gridbox containing the input point, and the gridboxes surrounding it
-    private HashSet pointsSurrounding( Point3d point3d ){
-        return pointsSurrounding( getGridBoxX( point3d.x ), getGridBoxX( point3d.y ), getGridBoxX( point3d.z ) );
-    }
-
-    private HashSet pointsSurrounding( int x, int y, int z ){
-        HashSet out = new HashSet( 100 );
-        for( int i = -1; i <= 1; i++ )
-            for( int j = -1; j <= 1; j++ )
-                for( int k = -1; k <= 1; k++ )
-                    if( x + i >= 0 && x + i < m_gridSize && y + j >= 0 && y + j < m_gridSize && z + k >= 0 && z + k < m_gridSize && m_gridBox[x + i][y + j][z + k] != null )
-                        out.addAll( m_gridBox[x + i][y + j][z + k] );
-        return out;
-    }
-
-    private HashSet pointsSurrounding( Point3d p1, Point3d p2 ){
-        HashSet out = new HashSet( 100 );
-
-        int x1 = getGridBoxX( p1.x );
-        int y1 = getGridBoxY( p1.y );
-        int z1 = getGridBoxZ( p1.z );
-        int x2 = getGridBoxX( p2.x );
-        int y2 = getGridBoxY( p2.y );
-        int z2 = getGridBoxZ( p2.z );
-
-        for( int i = Math.min( x1, x2 ) - 1; i <= Math.max( x1, x2 ) + 1; i++ )
-            for( int j = Math.min( y1, y2 ) - 1; j <= Math.max( y1, y2 ) + 1; j++ )
-                for( int k = Math.min( z1, z2 ) - 1; k <= Math.max( z1, z2 ) + 1; k++ )
-                    if( i >= 0 && i < m_gridSize && j >= 0 && j < m_gridSize && k >= 0 && k < m_gridSize && m_gridBox[i][j][k] != null )
-                        out.addAll( m_gridBox[i][j][k] );
-        return out;
+    private boolean checkIfValid( Tet tet ){
+        return _checkIfValid( tet, m_validityCheck );
     }
 
-    private boolean checkIfValid( Tet tet ){
+    private boolean _checkIfValid( Tet tet, ValidityCheck check ){
         // Work out which gridboxes overlap the circumcircle of this tet,
         // and check if any of the points in them are inside the circumcircle.
         // If any is, the tet is invalid.
-        double ccRadius = Math.sqrt( tet.radiussq );
-        int minx = getGridBoxX( tet.center.x - ccRadius );
-        int miny = getGridBoxY( tet.center.y - ccRadius );
-        int minz = getGridBoxZ( tet.center.z - ccRadius );
-        int maxx = getGridBoxX( tet.center.x + ccRadius );
-        int maxy = getGridBoxY( tet.center.y + ccRadius );
-        int maxz = getGridBoxZ( tet.center.z + ccRadius );
-        TecPoint checkpoint;
-        Iterator iter;
-        for( int i = minx; i <= maxx; i++ )
-            for( int j = miny; j <= maxy; j++ )
-                for( int k = minz; k <= maxz; k++ )
-                    if( i >= 0 && i < m_gridSize && j >= 0 && j < m_gridSize && k >= 0 && k < m_gridSize && m_gridBox[i][j][k] != null ){
-                        iter = m_gridBox[i][j][k].iterator();
-                        while( iter.hasNext() ){
-                            checkpoint = (TecPoint)iter.next();
-                            if( !tet.uses( checkpoint ) && tet.contains( checkpoint.getPos() ) )
-                                return false; // Tet is invalid, so we can stop checking now
-                        }
-                    }
-        return true;  // Checked all possible invalidating points: this tet is fine.
+        check.tet = tet;
+        boolean valid = m_pointGrid.visitBall( tet.getCenterX(), tet.getCenterY(), tet.getCenterZ(), Math.sqrt( tet.getRadiusSq() ), check );
+        check.tet = null;
+        return valid;
     }
 
-    public LinkSystem getLinkSystem(){
-        return m_linkSystem;
+    /**
+     * Checks a list of tets for validity, splitting the list between threads.
+     * The checks only read the grid, the points and the tets' geometry, so
+     * they can all go on at once; each piece of the list gets its own
+     * ValidityCheck and its own list of invalid tets, and the lists are
+     * joined up in order at the end.
+     *
+     * @return The invalid tets, in the order they came in the list.
+     */
+    private ArrayList _findInvalidTets( ArrayList tets ){
+        return ForkJoinPool.commonPool().invoke( new ValidityTask( tets, 0, tets.size() ) );
     }
 
-    public int getNumMantlePoints(){
-        return m_numMantlePoints;
-    }
+    private class ValidityTask extends RecursiveTask<ArrayList> {
+        private static final long serialVersionUID = 1L;
 
-    public Point3d getMantlePoint( int i ){
-        return m_mantlePoint[i];
-    }
+        private ArrayList m_tets;
+        private int m_from, m_to;
 
-    public int getNumTets(){
+        ValidityTask( ArrayList tets, int from, int to ){
+            m_tets = tets;
+            m_from = from;
+            m_to = to;
+        }
+
+        protected ArrayList compute(){
+            if( m_to - m_from <= VALIDITY_CHUNK ){
+                ValidityCheck check = new ValidityCheck();
+                ArrayList invalid = new ArrayList();
+                for( int i = m_from; i < m_to; i++ ){
+                    Tet tet = (Tet)m_tets.get( i );
+                    if( !_checkIfValid( tet, check ) )
+                        invalid.add( tet );
+                }
+                return invalid;
+            }
+            int mid = (m_from + m_to) >>> 1;
+            ValidityTask second = new ValidityTask( m_tets, mid, m_to );
+            second.fork();
+            ArrayList invalid = new ValidityTask( m_tets, m_from, mid ).compute();
+            invalid.addAll( second.join() );
+            return invalid;
+        }
+    }
+
+    /**
+     * Finds the k surface points nearest a position, nearest first. Meant for
+     * anything which needs to look up the surface under lots of positions -
+     * renderers, picking, interpolation - so allocates nothing.
+     *
+     * @param pos The position to search around.
+     * @param k   The number of points wanted.
+     * @param out Filled with the PointStore indices of the points found (use
+     *            getPointStore().getOwner() for the TecPoints). Must have
+     *            room for k.
+     *
+     * @return The number of points found, which is k unless the World has
+     *         fewer points than that.
+     */
+    public int nearest( Point3d pos, int k, int[] out ){
+        if( m_nearestDistSq.length < k )
+            m_nearestDistSq = new double[ k ];
+        return nearest( pos, k, out, m_nearestDistSq );
+    }
+
+    /**
+     * As nearest( Point3d, int, int[] ), also giving the squared distance to
+     * each point found.
+     */
+    public int nearest( Point3d pos, int k, int[] out, double[] distSq ){
+        return m_pointGrid.nearest( pos.x, pos.y, pos.z, k, out, distSq );
+    }
+
+    /**
+     * Visits every point closer than the given distance to a position, so
+     * that effects spread around an event only cost as much as the area they
+     * cover. Distances are straight lines, not round the surface.
+     *
+     * @param centre  The position to search around.
+     * @param km      How far to look.
+     * @param visitor Given each point found, with 0 as the centre number.
+     */
+    public void withinRadius( Point3d centre, double km, RadiusVisitor visitor ){
+        RadiusQuery query = new RadiusQuery( new double[] { centre.x, centre.y, centre.z }, km, visitor );
+        query.group[0] = 0;
+        query.groupSize = 1;
+        m_pointGrid.visitBall( centre.x, centre.y, centre.z, km, query );
+    }
+
+    /**
+     * Visits every point closer than the given distance to any of a batch of
+     * positions, in one pass over the area they cover. Each cell of the point
+     * grid is gone through once, and each point in it checked against just
+     * the positions whose reach overlaps that cell. A point near several
+     * positions is visited once for each.
+     *
+     * @param centres The positions to search around.
+     * @param count   How many of them to use.
+     * @param km      How far to look from each.
+     * @param visitor Given each point found, and the number of the position
+     *                it was found near.
+     */
+    public void withinRadius( Point3d[] centres, int count, double km, RadiusVisitor visitor ){
+        double[] pos = new double[ 3 * count ];
+        for( int c = 0; c < count; c++ ){
+            pos[3 * c]     = centres[c].x;
+            pos[3 * c + 1] = centres[c].y;
+            pos[3 * c + 2] = centres[c].z;
+        }
+
+        // Pair each position with every cell its reach might overlap, and
+        // sort the pairs so that each cell's positions come together
+        SphereGrid cells = m_pointGrid.getCells();
+        long[] pairs = new long[ 16 * count + 16 ];
+        int numPairs = 0;
+        for( int c = 0; c < count; c++ ){
+            double x = pos[3 * c], y = pos[3 * c + 1], z = pos[3 * c + 2];
+            double angle = SphereGrid.capAngle( x, y, z, km );
+            for( int face = 0; face < 6; face++ ){
+                long range = cells.faceRange( face, x, y, z, angle );
+                if( range < 0 )
+                    continue;
+                for( int i = SphereGrid.firstRow( range ); i <= SphereGrid.lastRow( range ); i++ ){
+                    for( int j = SphereGrid.firstColumn( range ); j <= SphereGrid.lastColumn( range ); j++ ){
+                        if( numPairs == pairs.length ){
+                            long[] grown = new long[ 2 * numPairs ];
+                            System.arraycopy( pairs, 0, grown, 0, numPairs );
+                            pairs = grown;
+                        }
+                        pairs[numPairs++] = ((long)cells.cellIndex( face, i, j ) << 32) | c;
+                    }
+                }
+            }
+        }
+        Arrays.sort( pairs, 0, numPairs );
+
+        RadiusQuery query = new RadiusQuery( pos, km, visitor );
+        query.group = new int[ count ];
+        for( int k = 0; k < numPairs; ){
+            int cell = (int)(pairs[k] >>> 32);
+            query.groupSize = 0;
+            for( ; k < numPairs && (int)(pairs[k] >>> 32) == cell; k++ )
+                query.group[ query.groupSize++ ] = (int)pairs[k];
+            m_pointGrid.visitCell( cell, query );
+        }
+    }
+
+    /**
+     * Checks each point a withinRadius() query finds against a group of
+     * positions, and passes on those close enough to any of them.
+     */
+    private class RadiusQuery implements PointVisitor {
+        double[] centres;   // x, y, z of each position
+        double radiusSq;
+        RadiusVisitor visitor;
+        int[] group = new int[ 1 ]; // The positions to check this cell's points against
+        int groupSize;
+
+        RadiusQuery( double[] centres, double radius, RadiusVisitor visitor ){
+            this.centres = centres;
+            this.radiusSq = radius * radius;
+            this.visitor = visitor;
+        }
+
+        public boolean visit( int point ){
+            TecPoint tecpoint = null;
+            for( int k = 0; k < groupSize; k++ ){
+                int c = group[k];
+                double distSq = m_pointStore.distanceSquared( point, centres[3 * c], centres[3 * c + 1], centres[3 * c + 2] );
+                if( distSq < radiusSq ){
+                    if( tecpoint == null )
+                        tecpoint = m_pointStore.getOwner( point );
+                    visitor.visit( tecpoint, c, Math.sqrt( distSq ) );
+                }
+            }
+            return true;
+        }
+    }
+
+    public LinkSystem getLinkSystem(){
+        return m_linkSystem;
+    }
+
+    /**
+     * @return A frozen CSR copy of the current links, indexed by PointStore
+     *         index. Rebuilt automatically after links change.
+     */
+    public LinkGraph getLinkGraph(){
+        return m_linkSystem.getGraph( m_pointStore );
+    }
+
+    /**
+     * @return Whether this World keeps most of its point data as floats.
+     */
+    public boolean isSinglePrecision(){
+        return m_pointStore.isSinglePrecision();
+    }
+
+    /**
+     * @return The columns holding the position, rock column and force data of
+     *         this World's points.
+     */
+    public PointStore getPointStore(){
+        return m_pointStore;
+    }
+
+    public int getNumMantlePoints(){
+        return m_numMantlePoints;
+    }
+
+    public Point3d getMantlePoint( int i ){
+        return m_mantlePoint[i];
+    }
+
+    public int getNumTets(){
         return m_tets.size();
     }
 
@@ -969,20 +1509,31 @@ public class World {
     }
 
     private void calcMantleForceForTecPoint( TecPoint p ){
-        p.mantleFlow = getMantleFlow( p.getPos() );
+        int i = p.getIndex();
+        double x = m_pointStore.getX( i ), y = m_pointStore.getY( i ), z = m_pointStore.getZ( i );
+
+        if( p.mantleFlow == null )
+            p.mantleFlow = new Vector3d();
+        _lookUpMantleFlow( x, y, z, p.mantleFlow );
         if( p.mantleForce == null )
             p.mantleForce = new Vector3d();
         p.mantleForce.set( p.mantleFlow );
-        Vector3d pointMove = new Vector3d( p.getPos() );
-        pointMove.sub( p.getOldpos() );
-        //pointMove.scale(0.1);
-        p.mantleForce.sub( pointMove );    // The force is due to the _difference_ in speed between the mantle and the point
+        // The force is due to the _difference_ in speed between the mantle and the point
+        p.mantleForce.x -= x - m_pointStore.getOldX( i );
+        p.mantleForce.y -= y - m_pointStore.getOldY( i );
+        p.mantleForce.z -= z - m_pointStore.getOldZ( i );
         p.mantleForce.scale( p.getArea() * 0.00003 );
     }
 
     public void timeStep(){
         // First do the tectonics: move the plates, and tidy up
         final long timeStepStart = System.currentTimeMillis();
+        if( m_reorderInterval > 0 && ++m_stepsSinceReorder >= m_reorderInterval ){
+            _reorderPoints();
+            m_stepsSinceReorder = 0;
+        }
+        else
+            _compactPoints();
         _updatePlateMovements();
 
         // Check gaps between plates and redo delaunay triangulation.
@@ -1029,20 +1580,15 @@ public class World {
         pourOnWater();
 
         // Set Colours
-        for( int i_39_ = 0; i_39_ < getNumPoints(); i_39_++ )
-            getPoint( i_39_ ).setColor( m_colorMap.map( getPoint( i_39_ ).getSurfaceHeight() - TecPoint.seaLevel ) );
-        // store interpolated colours in the links
-        Color c1, c2;
-        ArrayList tempVec = new ArrayList( getLinkSystem().getCollection() );
-        for( int i = 0; i < tempVec.size(); i++ ){
-            LinkPair lp = (LinkPair)tempVec.get( i );
-            c1 = lp.getA().getColor();
-            c2 = lp.getB().getColor();
-            lp.col = new Color( (c1.getRed() + c2.getRed()) / 2, (c1.getGreen() + c2.getGreen()) / 2, (c1.getBlue() + c2.getBlue()) / 2 );
-        }
+        _colourPoints();
 
         // Time step completed. Record how long that took.
         ++m_epoch;
+        if( m_pointStore instanceof MappedPointStore ){
+            MappedPointStore mapped = (MappedPointStore)m_pointStore;
+            if( !mapped.hasCheckpoint() || (m_checkpointInterval > 0 && m_epoch % m_checkpointInterval == 0) )
+                checkpoint();
+        }
         final long timeStepEnd = System.currentTimeMillis();
         final long timeStepDuration = timeStepEnd - timeStepStart;
         System.out.println( "TimeStepped in " + timeStepDuration + "ms." );
@@ -1053,20 +1599,17 @@ public class World {
             double   gradientLimitOnLand,
             double   gradientLimitInSea
         ){
-        point.volCap  = 10e10;
-        point.volCap2 = 10e10;
-        ArrayList linkedPoints  = m_linkSystem.getPointLinks( point );
-        int linkedPointsCount   = linkedPoints.size();
+        point.setVolCap(  10e10 );
+        point.setVolCap2( 10e10 );
+        LinkGraph  graph        = getLinkGraph();
+        int        end          = graph.getEnd( point.getIndex() );
         TecPoint[] points       = new TecPoint[2];
         double[]   pointHeights = new double[2];
-        Point3d[]  pointPoses   = new Point3d[2];
         points[0]       = point;
         pointHeights[0] = point.getSurfaceHeight();
-        pointPoses[0]   = point.getPos();
-        for( int i = 0; i < linkedPointsCount; ++i ){
-            points[1]       = (TecPoint)linkedPoints.get( i );
+        for( int i = graph.getStart( point.getIndex() ); i < end; ++i ){
+            points[1]       = graph.getNeighbourPoint( i );
             pointHeights[1] = points[1].getSurfaceHeight();
-            pointPoses[1]   = points[1].getPos();
             int lowPntId;
             int highPntId;
             if( pointHeights[0] > pointHeights[1] ){
@@ -1080,7 +1623,7 @@ public class World {
             TecPoint lowPoint  = points[lowPntId];
             TecPoint highPoint = points[highPntId];
             double diff = pointHeights[highPntId] - pointHeights[lowPntId];
-            double dist = pointPoses[lowPntId].distance( pointPoses[highPntId] );
+            double dist = lowPoint.distance( highPoint );
 
             // Calculate limit for the lower point
             // Limit due to not wanting tp to grow higher than the highPoint
@@ -1090,9 +1633,9 @@ public class World {
             }
             double area = lowPoint.getArea();
             double adjustedDist = diff + gradLimit * dist;
-            lowPoint.volCap  = Math.min( lowPoint.volCap,  area * adjustedDist );
-            lowPoint.volCap  = Math.min( lowPoint.volCap,  area * diff );
-            lowPoint.volCap2 = Math.min( lowPoint.volCap2, area * adjustedDist );
+            lowPoint.setVolCap(  Math.min( lowPoint.getVolCap(),  area * adjustedDist ) );
+            lowPoint.setVolCap(  Math.min( lowPoint.getVolCap(),  area * diff ) );
+            lowPoint.setVolCap2( Math.min( lowPoint.getVolCap2(), area * adjustedDist ) );
 
             // Calculate limit for the higher point
             gradLimit = gradientLimitOnLand;
@@ -1101,8 +1644,8 @@ public class World {
             }
             area = highPoint.getArea();
             adjustedDist = gradLimit * dist - diff;
-            highPoint.volCap  = Math.min( highPoint.volCap,  area * adjustedDist );
-            highPoint.volCap2 = Math.min( highPoint.volCap2, area * adjustedDist );
+            highPoint.setVolCap(  Math.min( highPoint.getVolCap(),  area * adjustedDist ) );
+            highPoint.setVolCap2( Math.min( highPoint.getVolCap2(), area * adjustedDist ) );
         }
     }
 
@@ -1111,452 +1654,558 @@ public class World {
         System.out.println( "Redelaunaying..." );
         long time = System.currentTimeMillis();
 
-        // Empty all the gridBoxes
-        for( int i = 0; i < m_gridSize; i++ ){
-            for( int j = 0; j < m_gridSize; j++ ){
-                for( int k = 0; k < m_gridSize; k++ ){
-                    if( m_gridBox[i][j][k] != null )
-                        m_gridBox[i][j][k].clear();
-                }
-            }
-        }
-
-        // Put all the points in the gridBoxes
-        for( int i = 0; i < m_points.size(); i++ )
-            gridBoxAdd( (TecPoint)m_points.get( i ) );
+        // Bring the grid up to date; only the points which have crossed into
+        // another cell since the plates moved need shifting
+        int moved = m_pointGrid.update( m_points );
+        System.out.println( moved + " points changed grid cell" );
 
         // The points have probably all moved, so let's recalc all the tets
-        for( int i = 0; i < m_tets.size(); i++ )
-            ((Tet)m_tets.get( i )).calc();
+        m_tetStore.calcAll();
 
-        // Expand the zone of invalidation
+        // Each plate moves as a whole, which leaves the tets inside it
+        // Delaunay. Only around the invalid points (those on plate edges,
+        // squashed in collisions, next to killed points or new) can anything
+        // have gone wrong, so only the tets there need looking at.
         System.out.println( "Expanding zone of invalidation..." );
-        ArrayList invalidTets = new ArrayList( m_tets.size() );
-
-        // Check the existing possibly invalid tets for actual validity
-        System.out.print( "Checking validity..." );
+        boolean[] zone = _invalidZone();
+
+        // Flip the edges the moves have left out of Delaunay, and put any new
+        // points into the triangles they landed in. That leaves only what
+        // flipping can't mend (folds, holes) for the checks below.
+        long flipTime = System.currentTimeMillis();
+        int flips = _flipToDelaunay( _tetsTouching( zone ) );
+        int[] inserted = new int[ 1 ];
+        flips += _insertNewPoints( inserted );
+        System.out.println( flips + " edges flipped, " + inserted[0] + " new points inserted in "
+                + ((System.currentTimeMillis() - flipTime) / 1000.0) + " seconds" );
+
+        // Check the possibly invalid tets, including any the flips made, for
+        // actual validity
+        zone = _invalidZone();
+        ArrayList suspectTets = _tetsTouching( zone );
+        System.out.print( "Checking validity of " + suspectTets.size() + " tets..." );
         long validityTime = System.currentTimeMillis();
-
-        // New validity checking method
-        for( int i = 0; i < m_tets.size(); i++ ){
-            Tet tet = (Tet)m_tets.get( i );
-            //if (!tet.b.isValid() || !tet.c.isValid() || !tet.d.isValid()) {
-            if( !checkIfValid( tet ) )
-                invalidTets.add( tet );
-            //}
-        }
+        ArrayList invalidTets = _findInvalidTets( suspectTets );
         System.out.println( "Done in " + ((System.currentTimeMillis() - validityTime) / 1000.0) + " seconds" );
 
         System.out.println( "Removing " + invalidTets.size() + " tets" );
-        if( invalidTets.size() % 2 == 1 ){
-            boolean bool = true;
-        }
-        else {
-            boolean bool = false;
-        }
         for( int i = 0; i < invalidTets.size(); i++ ){
             Tet tet = (Tet)invalidTets.get( i );
             // Bad tet! Remove it, and tidy the linksystem
-            m_tets.remove( tet );
-            m_linkSystem.removeLink( tet.b, tet.c );
-            m_linkSystem.removeLink( tet.b, tet.d );
-            m_linkSystem.removeLink( tet.c, tet.d );
+            _removeTet( tet );
+            _addToZone( zone, tet );
         }
 
-        // Build list of active tets
-        ArrayList activeTets = new ArrayList( m_tets.size() );
-        for( int i = 0; i < m_tets.size(); i++ ){
-            Tet tet = (Tet)m_tets.get( i );
-            if( m_linkSystem.getCount( tet.b, tet.c ) < 2
-                    || m_linkSystem.getCount( tet.b, tet.d ) < 2
-                    || m_linkSystem.getCount( tet.c, tet.d ) < 2 )
-                activeTets.add( tet );
-        }
+        // A point whose tets have all gone can still lie under tets beyond
+        // the zone, where plates overlap; those have to go too
+        _clearOverStrays( zone );
+
+        // Build list of active tets: those on the edge of a hole. Every hole
+        // lies in the zone, so the zone's tets are all that need looking at.
+        ArrayList activeTets = _holeEdgeTets( zone );
 
         // If we removed an odd number of tets, correct the problem here
         for( int i = 0; i < activeTets.size(); i++ ){
             Tet tet = (Tet)activeTets.get( i );
             // Bad tet! Remove it, and tidy the linksystem
-            m_tets.remove( tet );
-            m_linkSystem.removeLink( tet.b, tet.c );
-            m_linkSystem.removeLink( tet.b, tet.d );
-            m_linkSystem.removeLink( tet.c, tet.d );
+            _removeTet( tet );
+            _addToZone( zone, tet );
         }
 
-        // Build list of active tets
-        activeTets = new ArrayList( m_tets.size() );
-        for( int i = 0; i < m_tets.size(); i++ ){
-            Tet tet = (Tet)m_tets.get( i );
-            if( m_linkSystem.getCount( tet.b, tet.c ) < 2
-                    || m_linkSystem.getCount( tet.b, tet.d ) < 2
-                    || m_linkSystem.getCount( tet.c, tet.d ) < 2 )
-                activeTets.add( tet );
-        }
+        // Grow the tets back in from the edges of the holes
+        _fillHoles( zone );
 
-        System.out.print( "Doing Delaunay tets..." );
-        Tet t1 = null;
-        Tet t2 = null;
-        Tet t3 = null;
+        resetTetGridSystem(); // Hopefully this fixes the bug in saveJPG which was introduced in version 5
+        calculateAreas();
+        pourOnWater();
+        for( int i = 0; i < m_points.size(); i++ )
+            getPoint( i ).setValid( true );
+        System.out.println( "done!" );
+        System.out.println( "Whole planet reDelaunayed in " + ((float)(System.currentTimeMillis() - time) / 60000.0F) + " minutes! (" + ((float)(System.currentTimeMillis() - time) / 1000.0F) + " seconds)" );
+        System.out.println( m_tets.size() + " tets" );
+    }
 
-        boolean failedToExpand = false;
-        Tet tet = null;
+    /**
+     * Fills in the holes in the surface, growing tets in from their edges.
+     * Wherever the edge of a hole is wrong (nothing fits across it without
+     * overlapping what is there) the hole is widened, and wherever the holes
+     * close over a point they didn't take in, the tets over it are taken out
+     * again, so the holes grow until they can be filled.
+     *
+     * @param zone Holds every point on the edge of a hole. Points whose tets
+     *             are taken out are added to it.
+     */
+    private void _fillHoles( boolean[] zone ){
+        ArrayList activeTets = _holeEdgeTets( zone );
+        System.out.print( "Doing Delaunay tets..." );
+        int widened = 0;
+        int reopened = 0;
         int tetNum = 0;
-        while( activeTets.size() > 0 && !failedToExpand && tetNum < activeTets.size() ){
-            if( !failedToExpand )
-                tet = (Tet)activeTets.get( tetNum );    //((Tet)activeTets.get((int) (Math.random() * (double) activeTets.size())));
+        while( widened + reopened < MAX_HOLE_RETRIES ){
+            if( tetNum == activeTets.size() ){
+                // Finished, unless the holes have closed over a point they
+                // didn't take in
+                if( _clearOverStrays( zone ) == 0 )
+                    break;
+                reopened++;
+                activeTets = _holeEdgeTets( zone );
+                tetNum = 0;
+                continue;
+            }
+            Tet tet = (Tet)activeTets.get( tetNum );
             if( Math.random() < 0.01 )
                 System.out.print( "." );
 
-            t1 = null;
-            t2 = null;
-            t3 = null;
-
-            Iterator iter, iter2;
-            // Take the centre point and two of the surface points as the
-            // start of a new tet
+            // Take the centre point and each open edge as the start of a new
+            // tet
+            boolean stuck = !_expandAcross( tet.b, tet.c, tet.d, activeTets )
+                    || !_expandAcross( tet.c, tet.d, tet.b, activeTets )
+                    || !_expandAcross( tet.b, tet.d, tet.c, activeTets );
+            if( !stuck ){
+                tetNum++;
+                continue;
+            }
 
-            // Can we use link tet.b<->tet.c?
-            if( m_linkSystem.getCount( tet.b, tet.c ) <= 1 ){
-                HashSet nearby = pointsSurrounding( tet.b.getPos(), tet.c.getPos() );
-                if( failedToExpand ){
-                    nearby = new HashSet( m_points );
-                    failedToExpand = false;
-                }
-                iter = nearby.iterator();
-                while( t1 == null && iter.hasNext() ){
-                    //for (int i = 0; t1 == null && i < nearby.size(); i++) {
-                    TecPoint tecpoint = (TecPoint)iter.next();//nearby.get(i);
-                    if( !tecpoint.equals( tet.a ) && !tecpoint.equals( tet.b )
-                            && !tecpoint.equals( tet.c ) && !tecpoint.equals( tet.d )
-                            && m_linkSystem.getCount( tet.b, tecpoint ) <= 1
-                            && m_linkSystem.getCount( tet.c, tecpoint ) <= 1 ){
-                        Tet tet_209_ = new Tet( m_planetCenter, tet.b, tet.c, tecpoint );
-                        tet_209_.calc();
-                        // Now check against all nearby points
-                        boolean ok = true;
-                        iter2 = nearby.iterator();
-                        while( ok && iter2.hasNext() ){
-                            //for (int check = 0; ok && check < nearby.size(); check++) {
-                            TecPoint checkPoint = (TecPoint)iter2.next();//nearby.get(check);
-                            if( tecpoint != checkPoint && checkPoint != tet.b
-                                    && checkPoint != tet.c
-                                    && tet_209_.contains( checkPoint.getPos() ) )
-                                ok = false;
-                        }
-                        if( ok ){
-//System.out.println("Added new tet");
-                            t1 = tet_209_;
-                            m_tets.add( t1 );
-                            activeTets.add( t1 );
-                            m_linkSystem.addLink( t1.b, t1.c );
-                            m_linkSystem.addLink( t1.b, t1.d );
-                            m_linkSystem.addLink( t1.c, t1.d );
-                        }
-                    }
+            // Nothing fits across one of the edges without overlapping what
+            // is already there, so the hole's edge is wrong around this tet.
+            // Take it and its neighbours out, and carry on from the wider
+            // hole's edge.
+            widened++;
+            TecPoint[] corners = { tet.b, tet.c, tet.d };
+            for( int k = 0; k < corners.length; k++ ){
+                ArrayList pointTets = _getPointTets( corners[k] );
+                while( pointTets.size() > 0 ){
+                    Tet neighbour = (Tet)pointTets.get( pointTets.size() - 1 );
+                    _removeTet( neighbour );
+                    _addToZone( zone, neighbour );
                 }
             }
+            activeTets = _holeEdgeTets( zone );
+            tetNum = 0;
+        }
+        if( widened + reopened > 0 )
+            System.out.println( "Widened " + widened + " and reopened " + reopened + " holes to fill them" );
+        if( widened + reopened >= MAX_HOLE_RETRIES )
+            System.out.println( "Gave up filling holes; the surface has gaps" );
+    }
 
-            // Can we use link tet.c<->tet.d?
-            if( m_linkSystem.getCount( tet.c, tet.d ) <= 1 ){
-                HashSet nearby = pointsSurrounding( tet.c.getPos(), tet.d.getPos() );
-                if( failedToExpand ){
-                    nearby = new HashSet( m_points );
-                    failedToExpand = false;
-                }
-                iter = nearby.iterator();
-                while( t2 == null && iter.hasNext() ){
-                    //for (int i = 0; t2 == null && i < nearby.size(); i++) {
-                    TecPoint tecpoint = (TecPoint)iter.next();//nearby.get(i);
-                    if( !tecpoint.equals( tet.a ) && !tecpoint.equals( tet.b )
-                            && !tecpoint.equals( tet.c ) && !tecpoint.equals( tet.d )
-                            && m_linkSystem.getCount( tet.c, tecpoint ) <= 1
-                            && m_linkSystem.getCount( tet.d, tecpoint ) <= 1 ){
-                        Tet tempTet = new Tet( m_planetCenter, tet.c, tet.d, tecpoint );
-                        tempTet.calc();
-                        // Now check against all nearby points
-                        boolean ok = true;
-                        iter2 = nearby.iterator();
-                        while( ok && iter2.hasNext() ){
-                            //for (int i_216_ = 0; ok && i_216_ < nearby.size(); i_216_++) {
-                            TecPoint checkPoint = (TecPoint)iter2.next();//nearby.get(i_216_);
-                            if( tecpoint != checkPoint && checkPoint != tet.c
-                                    && checkPoint != tet.d
-                                    && tempTet.contains( checkPoint.getPos() ) )
-                                ok = false;
-                        }
-                        if( ok ){
-//System.out.println("Added new tet");
-                            t2 = tempTet;
-                            m_tets.add( t2 );
-                            activeTets.add( t2 );
-                            m_linkSystem.addLink( t2.b, t2.c );
-                            m_linkSystem.addLink( t2.b, t2.d );
-                            m_linkSystem.addLink( t2.c, t2.d );
-                        }
-                    }
-                }
+    /**
+     * Marks the points whose tets might not be Delaunay any more: the invalid
+     * points, and the points they share a tet with.
+     *
+     * @return A flag for each row of the point store.
+     */
+    private boolean[] _invalidZone(){
+        boolean[] zone = new boolean[ m_pointStore.size() ];
+        for( int i = 0; i < m_points.size(); i++ ){
+            TecPoint point = getPoint( i );
+            if( point.isValid() )
+                continue;
+            zone[point.getIndex()] = true;
+            ArrayList tets = _getPointTets( point );
+            for( int k = 0; k < tets.size(); k++ )
+                _addToZone( zone, (Tet)tets.get( k ) );
+        }
+        return zone;
+    }
+
+    private static void _addToZone( boolean[] zone, Tet tet ){
+        zone[tet.b.getIndex()] = true;
+        zone[tet.c.getIndex()] = true;
+        zone[tet.d.getIndex()] = true;
+    }
+
+    /**
+     * @return Each tet with a corner in the zone, once.
+     */
+    private ArrayList _tetsTouching( boolean[] zone ){
+        ArrayList tets = new ArrayList();
+        for( int i = 0; i < m_points.size(); i++ ){
+            TecPoint point = getPoint( i );
+            if( !zone[point.getIndex()] )
+                continue;
+            ArrayList pointTets = _getPointTets( point );
+            for( int k = 0; k < pointTets.size(); k++ ){
+                // Only take a tet from its first corner in the zone
+                Tet tet = (Tet)pointTets.get( k );
+                TecPoint first = zone[tet.b.getIndex()] ? tet.b : (zone[tet.c.getIndex()] ? tet.c : tet.d);
+                if( first == point )
+                    tets.add( tet );
             }
+        }
+        return tets;
+    }
 
-            // Can we use link tet.b<->tet.d?
-            if( m_linkSystem.getCount( tet.b, tet.d ) <= 1 ){
-                HashSet nearby = pointsSurrounding( tet.b.getPos(), tet.d.getPos() );
-                if( failedToExpand ){
-                    nearby = new HashSet( m_points );
-                    failedToExpand = false;
-                }
-                iter = nearby.iterator();
-                while( t3 == null && iter.hasNext() ){
-                    //for (int i = 0; t3 == null && i < nearby.size(); i++) {
-                    TecPoint tecpoint = (TecPoint)iter.next();//nearby.get(i);
-                    if( !tecpoint.equals( tet.a ) && !tecpoint.equals( tet.b )
-                            && !tecpoint.equals( tet.c ) && !tecpoint.equals( tet.d )
-                            && m_linkSystem.getCount( tet.b, tecpoint ) <= 1
-                            && m_linkSystem.getCount( tet.d, tecpoint ) <= 1 ){
-                        Tet tempTet = new Tet( m_planetCenter, tet.b, tet.d, tecpoint );
-                        tempTet.calc();
-                        // Now check against all nearby points
-                        boolean ok = true;
-                        iter2 = nearby.iterator();
-                        while( ok && iter2.hasNext() ){
-                            //for (int check = 0; ok && check < nearby.size(); check++) {
-                            TecPoint checkPoint = (TecPoint)iter2.next();//nearby.get(check);
-                            if( tecpoint != checkPoint && checkPoint != tet.b
-                                    && checkPoint != tet.d
-                                    && tempTet.contains( checkPoint.getPos() ) )
-                                ok = false;
-                        }
-                        if( ok ){
-//System.out.println("Added new tet");
-                            t3 = tempTet;
-                            m_tets.add( t3 );
-                            activeTets.add( t3 );
-                            m_linkSystem.addLink( t3.b, t3.c );
-                            m_linkSystem.addLink( t3.b, t3.d );
-                            m_linkSystem.addLink( t3.c, t3.d );
-                        }
-                    }
+    /**
+     * @return The tets with a corner in the zone and an edge on a hole.
+     */
+    private ArrayList _holeEdgeTets( boolean[] zone ){
+        ArrayList tets = _tetsTouching( zone );
+        ArrayList edgeTets = new ArrayList();
+        for( int i = 0; i < tets.size(); i++ ){
+            Tet tet = (Tet)tets.get( i );
+            if( m_linkSystem.getCount( tet.b, tet.c ) < 2
+                    || m_linkSystem.getCount( tet.b, tet.d ) < 2
+                    || m_linkSystem.getCount( tet.c, tet.d ) < 2 )
+                edgeTets.add( tet );
+        }
+        return edgeTets;
+    }
+
+    /**
+     * Takes out the tets lying over points which have no tets of their own:
+     * ones whose circumcircle holds such a point, among the tets of the
+     * points around it, or failing that the tet it lies under.
+     *
+     * @param zone Has the corners of the tets taken out added to it.
+     * @return The number of tets taken out.
+     */
+    private int _clearOverStrays( boolean[] zone ){
+        int removed = 0;
+        ArrayList over = new ArrayList();
+        for( int i = 0; i < m_points.size(); i++ ){
+            TecPoint point = getPoint( i );
+            if( !_getPointTets( point ).isEmpty() )
+                continue;
+            over.clear();
+            PointGrid.Collector nearby = pointsSurrounding( point.getPos() );
+            for( int n = 0; n < nearby.size(); n++ ){
+                ArrayList tets = _getPointTets( nearby.getPoint( n ) );
+                for( int k = 0; k < tets.size(); k++ ){
+                    Tet tet = (Tet)tets.get( k );
+                    if( !over.contains( tet ) && tet.contains( point ) )
+                        over.add( tet );
                 }
             }
-            if( m_linkSystem.getCount( tet.b, tet.c ) >= 2
-                    && m_linkSystem.getCount( tet.b, tet.d ) >= 2
-                    && m_linkSystem.getCount( tet.c, tet.d ) >= 2 ){
-                tetNum++;//activeTets.remove(remTetNum);
+            if( over.isEmpty() ){
+                Tet under = _walkToTet( point.getPos(), null );
+                if( under != null )
+                    over.add( under );
             }
-            else {
-                System.out.println( "Completely failed to expand from tet.\nLinkcounts are " + m_linkSystem.getCount( tet.b, tet.c ) + "," + m_linkSystem.getCount( tet.c, tet.d ) + "," + m_linkSystem.getCount( tet.b, tet.d ) );
-                // Detailed error report/debugging info
-                if( m_tets.contains( tet ) ){
-                    System.out.println( "Tet is #" + m_tets.indexOf( tet ) + " of " + m_tets.size() + " tets" );
-                }
-                else
-                    System.out.println( "Tet isn't in tets" );
-                if( activeTets.contains( tet ) ){
-                    System.out.println( "and #" + activeTets.indexOf( tet ) + " of " + activeTets.size() + " activeTets" );
-                }
-                else
-                    System.out.println( "Tet isn't in activeTets" );
-                System.out.print( "tet.a=(" + tet.a.getX() + "," + tet.a.getY() + "," + tet.a.getZ() + ")" );
-                if( m_points.contains( tet.a ) )
-                    System.out.println( " and is point #" + m_points.indexOf( tet.a ) );
-                else
-                    System.out.println( " and isn't in points!" );
-                System.out.print( "tet.b=(" + tet.b.getX() + "," + tet.b.getY() + "," + tet.b.getZ() + ")" );
-                if( m_points.contains( tet.b ) )
-                    System.out.println( " and is point #" + m_points.indexOf( tet.b ) );
-                else
-                    System.out.println( " and isn't in points!" );
-                System.out.print( "tet.c=(" + tet.c.getX() + "," + tet.c.getY() + "," + tet.c.getZ() + ")" );
-                if( m_points.contains( tet.c ) )
-                    System.out.println( " and is point #" + m_points.indexOf( tet.c ) );
-                else
-                    System.out.println( " and isn't in points!" );
-                System.out.print( "tet.d=(" + tet.d.getX() + "," + tet.d.getY() + "," + tet.d.getZ() + ")" );
-                if( m_points.contains( tet.d ) )
-                    System.out.println( " and is point #" + m_points.indexOf( tet.d ) );
-                else
-                    System.out.println( " and isn't in points!" );
-                if( t1 == null ){
-                    System.out.println( "t1 is null" );
-                    if( m_linkSystem.getCount( tet.b, tet.c ) <= 1 ){
-                        System.out.println( "We should have expanded from b-c, so why didn't we?" );
-                        HashSet nearby = pointsSurrounding( tet.b.getPos(), tet.c.getPos() );
-                        //int i = 0;
-                        TecPoint bestPoint = null;
-                        double bestDist = 0.0, closestDist = Double.MAX_VALUE;
-                        iter = nearby.iterator();
-                        while( t1 == null && iter.hasNext() ){
-                            //for (/**/; t1 == null && i < nearby.size(); i++) {
-                            TecPoint pk = (TecPoint)iter.next();//nearby.get(i);
-                            if( !pk.equals( tet.a )
-                                    && !pk.equals( tet.b )
-                                    && !pk.equals( tet.c )
-                                    && !pk.equals( tet.d )
-                                    && (m_linkSystem.getCount( tet.b, pk ) <= 1)
-                                    && (m_linkSystem.getCount( tet.c, pk ) <= 1) ){
-                                Tet tempTet = new Tet( m_planetCenter, tet.b, tet.c, pk );
-                                tempTet.calc();
-                                // Now check against all nearby points
-                                boolean ok = true;
-                                TecPoint checkPoint = null;
-                                iter2 = nearby.iterator();
-                                while( ok && iter2.hasNext() ){
-                                    //for (/**/; ok && check < nearby.size(); check++) {
-                                    checkPoint = (TecPoint)iter2.next();//nearby.get(check);
-                                    double distRatio = ((tempTet.center.distance( checkPoint.getPos() )) / Math.sqrt( tempTet.radiussq ));
-                                    if( pk != checkPoint && checkPoint != tet.b
-                                            && checkPoint != tet.c
-                                            && distRatio < closestDist ){
-                                        // This checkPoint is the closest so far, record it
-                                        closestDist = distRatio;
-                                    }
-                                }
-                            }
-                            // If that pk has the best results so far, record it
-                            if( closestDist > bestDist ){
-                                bestPoint = pk;
-                                bestDist = closestDist;
-                            }
-                        }
-                        Tet temp = new Tet( m_planetCenter, tet.b, tet.c, bestPoint );
-                        temp.calc();
-                        System.out.print( "The best possible tet for this side involved a point at (" + bestPoint.getX() + "," + bestPoint.getY() + "," + bestPoint.getZ() + ") " );
-                        System.out.println( "whose closest stopper had a distanceRatio of " + bestDist + " away." );
-                        System.out.println( "The circumradius was inner=" + Math.sqrt( temp.innersq ) + ", outer=" + Math.sqrt( temp.outersq ) );
-                    }
-                }
-                else
-                    System.out.println( "t1 is NOT null" );
-                if( t2 == null ){
-                    System.out.println( "t2 is null" );
-                    if( m_linkSystem.getCount( tet.c, tet.d ) <= 1 ){
-                        System.out.println( "We should have expanded from c-d, so why didn't we?" );
-                        HashSet nearby = pointsSurrounding( tet.c.getPos(), tet.d.getPos() );
-                        int i = 0;
-                        TecPoint bestPoint = null;
-                        double bestDist = 0.0;
-                        double closestDist = Double.MAX_VALUE;
-                        iter = nearby.iterator();
-                        while( t1 == null && iter.hasNext() ){
-                            //for (/**/; t1 == null && i < nearby.size(); i++) {
-                            TecPoint pk = (TecPoint)iter.next();//nearby.get(i);
-                            if( !pk.equals( tet.a )
-                                    && !pk.equals( tet.b )
-                                    && !pk.equals( tet.c )
-                                    && !pk.equals( tet.d )
-                                    && (m_linkSystem.getCount( tet.c, pk ) <= 1)
-                                    && (m_linkSystem.getCount( tet.d, pk ) <= 1) ){
-                                Tet tempTet = new Tet( m_planetCenter, tet.c, tet.d, pk );
-                                tempTet.calc();
-                                // Now check against all nearby points
-                                boolean ok = true;
-                                closestDist = Double.MAX_VALUE;
-                                iter2 = nearby.iterator();
-                                while( ok && iter2.hasNext() ){
-                                    //for (/**/; ok && check < nearby.size(); check++) {
-                                    TecPoint checkPoint = (TecPoint)iter2.next();//nearby.get(check);
-                                    double d_244_ = ((tempTet.center.distance( checkPoint.getPos() )) / Math.sqrt( tempTet.radiussq ));
-                                    if( checkPoint != pk && checkPoint != tet.c && checkPoint != tet.d && d_244_ < closestDist ){
-                                        // This checkPoint is the closest so far, record it
-                                        closestDist = d_244_;
-                                    }
-                                }
-                            }
-                            // If that pk has the best results so far, record it
-                            if( closestDist > bestDist ){
-                                bestPoint = pk;
-                                bestDist = closestDist;
-                            }
-                        }
-                        Tet tempTet = new Tet( m_planetCenter, tet.c, tet.d, bestPoint );
-                        tempTet.calc();
-                        System.out.print( "The best possible tet for this side involved a point at (" + bestPoint.getX() + "," + bestPoint.getY() + "," + bestPoint.getZ() + ") " );
-                        System.out.println( "whose closest stopper had a distanceRatio of " + bestDist + " away." );
-                        System.out.println( "The circumradius was inner=" + Math.sqrt( tempTet.innersq ) + ", outer=" + Math.sqrt( tempTet.outersq ) );
-                    }
-                }
-                else
-                    System.out.println( "t2 is NOT null" );
-                if( t3 == null ){
-                    System.out.println( "t3 is null" );
-                    if( m_linkSystem.getCount( tet.b, tet.d ) <= 1 ){
-                        System.out.println( "We should have expanded from b-d, so why didn't we?" );
-                        HashSet nearby = pointsSurrounding( tet.b.getPos(), tet.d.getPos() );
-                        TecPoint bestPoint = null;
-                        double bestDist = 0.0;
-                        double closestDist = Double.MAX_VALUE;
-                        iter = nearby.iterator();
-                        while( t1 == null && iter.hasNext() ){
-                            //for (/**/; t1 == null && i < nearby.size(); i++) {
-                            TecPoint pk = (TecPoint)iter.next();//nearby.get(i);
-                            if( !pk.equals( tet.a ) && !pk.equals( tet.b )
-                                    && !pk.equals( tet.c ) && !pk.equals( tet.d )
-                                    && (m_linkSystem.getCount( tet.b, pk ) <= 1)
-                                    && (m_linkSystem.getCount( tet.d, pk ) <= 1) ){
-                                Tet temp = new Tet( m_planetCenter, tet.b, tet.d, pk );
-                                temp.calc();
-                                // Now check against all nearby points
-                                boolean ok = true;
-                                closestDist = Double.MAX_VALUE;
-                                iter2 = nearby.iterator();
-                                while( ok && iter2.hasNext() ){
-                                    //for (/**/; ok && check < nearby.size(); check++) {
-                                    TecPoint checkPoint = (TecPoint)iter2.next();//nearby.get(check);
-                                    double d_256_ = ((temp.center.distance( checkPoint.getPos() )) / Math.sqrt( temp.radiussq ));
-                                    if( checkPoint != pk && checkPoint != tet.b
-                                            && checkPoint != tet.d
-                                            && d_256_ < closestDist ){
-                                        // This checkPoint is the closest so far, record it
-                                        closestDist = d_256_;
-                                    }
-                                }
-                            }
-                            // If that pk has the best results so far, record it
-                            if( closestDist > bestDist ){
-                                bestPoint = pk;
-                                bestDist = closestDist;
-                            }
-                        }
-                        Tet temp = new Tet( m_planetCenter, tet.b, tet.d, bestPoint );
-                        temp.calc();
-                        System.out.print( "The best possible tet for this side involved a point at (" + bestPoint.getX() + "," + bestPoint.getY() + "," + bestPoint.getZ() + ") " );
-                        System.out.println( "whose closest stopper had a distanceRatio of " + bestDist + " away." );
-                        System.out.println( "The circumradius was inner=" + Math.sqrt( temp.innersq ) + ", outer=" + Math.sqrt( temp.outersq ) );
-                    }
-                }
-                else
-                    System.out.println( "t3 is NOT null" );
-                failedToExpand = true;
+            for( int k = 0; k < over.size(); k++ ){
+                Tet tet = (Tet)over.get( k );
+                _removeTet( tet );
+                _addToZone( zone, tet );
+                removed++;
             }
         }
-        if( failedToExpand ){
-            // OK, we got stuck trying to reDelaunay
-            System.out.println( "=====================\nARG! :(  Redelaunay failed\nTry to rescue it by doing a first-time delaunay\n=====================" );
-            // Try to rescue it by doing a first-time Delaunay
-            delaunay();
+        return removed;
+    }
+
+    /**
+     * Fills in the tet on the far side of an edge of a hole, if it hasn't
+     * been already.
+     *
+     * @param p        One end of the edge.
+     * @param q        The other end of the edge.
+     * @param r        The third corner of the tet already on the edge.
+     * @param newTets  Any tet added is added to this too.
+     * @return False if nothing fits across the edge without overlapping the
+     *         tets already there.
+     */
+    private boolean _expandAcross( TecPoint p, TecPoint q, TecPoint r, ArrayList newTets ){
+        if( m_linkSystem.getCount( p, q ) >= 2 )
+            return true;
+        Tet best = _findAcross( p, q, Predicates.orient( p, q, r ), m_linkSystem, m_nearby, m_validityCheck );
+        if( best == null )
+            return false;
+        _addTet( best );
+        newTets.add( best );
+        return true;
+    }
+
+    /**
+     * Finds the tet on one side of an edge: the one whose third corner leaves
+     * no other point inside its circumcircle. Candidates are found around the
+     * edge, looking further out only if there are none there, and then each
+     * better one found inside the circumcircle of the best so far, so a hole
+     * of any size fills in without looking through the whole planet. Only
+     * reads the grid and the points, so several threads can look at once,
+     * each with its own links, collector and check.
+     *
+     * @param p      One end of the edge.
+     * @param q      The other end of the edge.
+     * @param side   The side not to look on, as given by Predicates.orient()
+     *               for p, q and a point there.
+     * @param links  The links made so far; edges already used twice are
+     *               left alone.
+     * @param nearby Used to collect the candidates.
+     * @param check  Used to check the tet found.
+     * @return The tet, not yet added to anything, or null if nothing fits
+     *         across the edge without overlapping the tets already there.
+     */
+    private Tet _findAcross( TecPoint p, TecPoint q, int side, LinkSystem links, PointGrid.Collector nearby, ValidityCheck check ){
+        nearby.clear();
+        m_pointGrid.visitNear( p.getX(), p.getY(), p.getZ(), q.getX(), q.getY(), q.getZ(), nearby );
+        Tet best = _bestAcross( null, nearby, p, q, side, links );
+
+        // Everything beside the edge is used up; look further out
+        double reach = p.distance( q );
+        while( best == null && reach < m_planetRadius ){
+            reach *= 2;
+            nearby.clear();
+            m_pointGrid.visitBall( (p.getX() + q.getX()) / 2, (p.getY() + q.getY()) / 2, (p.getZ() + q.getZ()) / 2, reach, nearby );
+            best = _bestAcross( null, nearby, p, q, side, links );
+        }
+        if( best == null )
+            return null;
+
+        // Any better third corner is inside the best one's circumcircle
+        for( Tet previous = null; best != previous; ){
+            previous = best;
+            nearby.clear();
+            m_pointGrid.visitBall( best.getCenterX(), best.getCenterY(), best.getCenterZ(), Math.sqrt( best.getRadiusSq() ), nearby );
+            best = _bestAcross( best, nearby, p, q, side, links );
+        }
+
+        // Something still inside must be a point that can't be used
+        if( !_checkIfValid( best, check ) )
+            return null;
+        return best;
+    }
+
+    /**
+     * @return Of the candidates on the far side of edge p-q from side which
+     *         could still make a tet with it, the one whose circumcircle with
+     *         p and q holds none of the others, if it is better than best.
+     */
+    private Tet _bestAcross( Tet best, PointGrid.Collector candidates, TecPoint p, TecPoint q, int side, LinkSystem links ){
+        for( int n = 0; n < candidates.size(); n++ ){
+            TecPoint point = candidates.getPoint( n );
+            if( point == p || point == q
+                    || (best != null && (best.uses( point ) || !best.contains( point )))
+                    || Predicates.orient( p, q, point ) != -side
+                    || links.getCount( p, point ) > 1
+                    || links.getCount( q, point ) > 1 )
+                continue;
+            best = new Tet( m_planetCenter, p, q, point ).calc();
         }
+        return best;
+    }
 
-        resetTetGridSystem(); // Hopefully this fixes the bug in saveJPG which was introduced in version 5
-        calculateAreas();
-        pourOnWater();
-        for( int i = 0; i < m_points.size(); i++ )
-            getPoint( i ).setValid( true );
-        System.out.println( "done!" );
-        System.out.println( "Whole planet reDelaunayed in " + ((float)(System.currentTimeMillis() - time) / 60000.0F) + " minutes! (" + ((float)(System.currentTimeMillis() - time) / 1000.0F) + " seconds)" );
-        System.out.println( m_tets.size() + " tets" );
+    /**
+     * Restores the Delaunay property by Lawson flips: wherever the far corner
+     * of a tet's neighbour lies inside the tet's circumsphere, the edge they
+     * share is swapped for the one between their far corners, and the two new
+     * tets checked in turn. Since every tet has the planet centre as a
+     * corner, this is the same as making the surface the convex hull of the
+     * points. Edges on the edge of a hole, and edges whose quad is folded or
+     * not convex, are left alone.
+     *
+     * @param tets The tets to start from. Only tets made by flips are looked
+     *             at besides these.
+     * @return The number of edges flipped.
+     */
+    private int _flipToDelaunay( Collection tets ){
+        ArrayList stack = new ArrayList( tets );
+        int flips = 0;
+
+        // With exact tests flipping always ends; this is only a backstop
+        int maxFlips = 4 * m_tets.size() + 64;
+        while( !stack.isEmpty() && flips < maxFlips ){
+            Tet tet = (Tet)stack.remove( stack.size() - 1 );
+            if( tet.index < 0 )
+                continue;   // Already flipped away
+            Tet[] made = _flipEdge( tet, tet.b, tet.c, tet.d );
+            if( made == null )
+                made = _flipEdge( tet, tet.c, tet.d, tet.b );
+            if( made == null )
+                made = _flipEdge( tet, tet.d, tet.b, tet.c );
+            if( made != null ){
+                stack.add( made[0] );
+                stack.add( made[1] );
+                flips++;
+            }
+        }
+        if( flips >= maxFlips )
+            System.out.println( "Gave up flipping after " + flips + " flips" );
+        return flips;
+    }
+
+    /**
+     * Flips the edge p-q of a tet, whose third corner is r, if it isn't
+     * Delaunay and can be flipped.
+     *
+     * @return The two tets made, or null if the edge was left alone.
+     */
+    private Tet[] _flipEdge( Tet tet, TecPoint p, TecPoint q, TecPoint r ){
+        Tet other = _neighbourTet( tet, p, q );
+        if( other == null )
+            return null;
+        TecPoint s = other.b != p && other.b != q ? other.b : (other.c != p && other.c != q ? other.c : other.d);
+        if( !tet.contains( s ) || !other.contains( r ) )
+            return null;
+
+        // r and s must be either side of p-q, and p and q either side of r-s,
+        // or the new tets would overlap their neighbours
+        if( _sameSide( p, q, r, s ) || _sameSide( r, s, p, q ) )
+            return null;
+        if( m_linkSystem.getCount( r, s ) > 0 )
+            return null;
+
+        _removeTet( tet );
+        _removeTet( other );
+        p.setValid( false );
+        q.setValid( false );
+        r.setValid( false );
+        s.setValid( false );
+        Tet[] made = { new Tet( m_planetCenter, r, s, p ), new Tet( m_planetCenter, r, s, q ) };
+        made[0].calc();
+        made[1].calc();
+        _addTet( made[0] );
+        _addTet( made[1] );
+        return made;
+    }
+
+    /**
+     * @return True unless c and d lie strictly on opposite sides of the plane
+     *         through the planet centre, a and b.
+     */
+    private static boolean _sameSide( TecPoint a, TecPoint b, TecPoint c, TecPoint d ){
+        return Predicates.orient( a, b, c ) * Predicates.orient( a, b, d ) >= 0;
+    }
+
+    /**
+     * Puts each point which isn't yet part of any tet (new points, such as
+     * those checkPlateGaps() adds) into the triangulation: the tet it lies
+     * over is split in three around it, and the new edges flipped until
+     * they're Delaunay. Points which don't lie over a tet, because they're in
+     * a hole, are left for the hole to be filled around them.
+     *
+     * @param inserted Set to the number of points put in.
+     * @return The number of edges flipped.
+     */
+    private int _insertNewPoints( int[] inserted ){
+        int flips = 0;
+        int[] near = new int[ 8 ];
+        inserted[0] = 0;
+        for( int i = 0; i < m_points.size(); i++ ){
+            TecPoint point = getPoint( i );
+            if( !_getPointTets( point ).isEmpty() )
+                continue;
+
+            // Walk from a tet of one of its neighbours
+            Point3d pos = point.getPos();
+            Tet hint = null;
+            int found = nearest( pos, near.length, near );
+            for( int k = 0; hint == null && k < found; k++ ){
+                ArrayList tets = _getPointTets( m_pointStore.getOwner( near[k] ) );
+                if( !tets.isEmpty() )
+                    hint = (Tet)tets.get( 0 );
+            }
+            Tet tet = hint == null ? null : _walkToTet( pos, hint );
+            if( tet == null )
+                continue;
+
+            _removeTet( tet );
+            point.setValid( false );
+            tet.b.setValid( false );
+            tet.c.setValid( false );
+            tet.d.setValid( false );
+            ArrayList made = new ArrayList( 3 );
+            made.add( new Tet( m_planetCenter, tet.b, tet.c, point ).calc() );
+            made.add( new Tet( m_planetCenter, tet.c, tet.d, point ).calc() );
+            made.add( new Tet( m_planetCenter, tet.d, tet.b, point ).calc() );
+            for( int k = 0; k < made.size(); k++ )
+                _addTet( (Tet)made.get( k ) );
+            flips += _flipToDelaunay( made );
+            inserted[0]++;
+        }
+        return flips;
+    }
+
+    /**
+     * Fills the hole left by taking away a point's tets with the Delaunay
+     * triangulation of its neighbours, so a point can be taken away without
+     * leaving anything for redelaunay() to mend. Ears of the ring of
+     * neighbours are cut off one at a time, only ever ones which are convex
+     * and whose circumsphere holds none of the other neighbours.
+     *
+     * @param point The point taken away.
+     * @param star  Its tets, already removed.
+     * @return False if the hole couldn't be filled (the tets around the point
+     *         didn't make a simple ring, or no ear would do); whatever is
+     *         left is then a hole for redelaunay() to fill.
+     */
+    private boolean _fillStar( TecPoint point, ArrayList star ){
+        int n = star.size();
+        if( n < 3 )
+            return false;
+
+        // Chain the far edges of the tets into a ring
+        TecPoint[] ring = new TecPoint[ n ];
+        boolean[] used = new boolean[ n ];
+        Tet first = (Tet)star.get( 0 );
+        ring[0] = first.b == point ? first.c : first.b;
+        ring[1] = first.d == point || first.d == ring[0] ? (first.c == point || first.c == ring[0] ? first.b : first.c) : first.d;
+        used[0] = true;
+        for( int k = 2; k <= n; k++ ){
+            TecPoint next = null;
+            for( int t = 0; next == null && t < n; t++ ){
+                Tet tet = (Tet)star.get( t );
+                if( used[t] || !tet.uses( ring[k - 1] ) )
+                    continue;
+                used[t] = true;
+                next = tet.b != point && tet.b != ring[k - 1] ? tet.b : (tet.c != point && tet.c != ring[k - 1] ? tet.c : tet.d);
+            }
+            if( next == null )
+                return false;
+            if( k < n )
+                ring[k] = next;
+            else if( next != ring[0] )
+                return false;
+        }
+
+        // Every tet of the star must wind the same way round the point
+        int winding = Predicates.orient( point, ring[0], ring[1] );
+        for( int k = 1; k < n; k++ )
+            if( Predicates.orient( point, ring[k], ring[(k + 1) % n] ) * winding <= 0 )
+                return false;
+
+        // Cut off ears until just one triangle is left
+        ArrayList left = new ArrayList( Arrays.asList( ring ) );
+        while( left.size() > 3 ){
+            int size = left.size();
+            Tet ear = null;
+            int at = -1;
+            for( int k = 0; ear == null && k < size; k++ ){
+                TecPoint u = (TecPoint)left.get( (k + size - 1) % size );
+                TecPoint v = (TecPoint)left.get( k );
+                TecPoint w = (TecPoint)left.get( (k + 1) % size );
+                if( Predicates.orient( u, v, w ) * winding <= 0 || m_linkSystem.getCount( u, w ) > 0 )
+                    continue;
+                Tet tet = new Tet( m_planetCenter, u, v, w ).calc();
+                boolean empty = true;
+                for( int j = 0; empty && j < size; j++ ){
+                    TecPoint other = (TecPoint)left.get( j );
+                    if( other != u && other != v && other != w && tet.contains( other ) )
+                        empty = false;
+                }
+                if( empty ){
+                    ear = tet;
+                    at = k;
+                }
+            }
+            if( ear == null )
+                return false;
+            _addTet( ear );
+            left.remove( at );
+        }
+        _addTet( new Tet( m_planetCenter, (TecPoint)left.get( 0 ), (TecPoint)left.get( 1 ), (TecPoint)left.get( 2 ) ).calc() );
+        return true;
     }
 
     private void calculateAreas(){
         System.out.print( "Calculating polygon areas..." );
-        for( int i = 0; i < m_points.size(); i++ )
-            getPoint( i ).setArea( 0.0 );
+        m_pointStore.clearAreas();
         double d = 0.0;
         for( int i = 0; i < m_tets.size(); i++ ){
             Tet tet = (Tet)m_tets.get( i );
-            double d_259_ = tet.area / 3.0;
+            double d_259_ = tet.getArea() / 3.0;
             tet.b.addArea( d_259_ );
             tet.c.addArea( d_259_ );
             tet.d.addArea( d_259_ );
-            d += tet.area;
+            d += tet.getArea();
         }
         System.out.println( "done. Planetary surface area=" + d + " km^2" );
         m_planetSurfaceArea = d;
@@ -1743,83 +2392,38 @@ public class World {
         g.setColor( Color.white );
         g.fillRect( 0, 0, width, height );
         Point3d pos = new Point3d();
-        double lon, lat, dist1, dist2, dist3, temp, a, b, c, area1, area2, area3;
-        TecPoint closest1 = null, closest2 = null, closest3 = null;
-        Tet tet = null;
-        //Vector gridBox;
+        double lon, lat;
+        double[] column = new double[ 3 * height ];  // The positions down one column of pixels
+        Tet[] tets = new Tet[ height ];
+        double[] weights = new double[ 3 * height ];
         for( int x = 0; x < width; x++ ){
             if( x % 20 == 0 )
                 System.out.println( (x * 100 / width) + "%" );
             lon = (double)x / width * 2 * Math.PI;
             for( int y = 0; y < height; y++ ){
                 lat = -Math.PI / 2 + (double)y / (height - 1) * Math.PI;
-                pos.x = Math.sin( lon ) * Math.cos( lat ) * m_planetRadius;
-                pos.y = Math.sin( lat ) * m_planetRadius;
-                pos.z = Math.cos( lon ) * Math.cos( lat ) * m_planetRadius;
-
-                tet = getTet( pos );
-                if( tet != null ){
-                    closest1 = tet.b;
-                    closest2 = tet.c;
-                    closest3 = tet.d;
-                    dist1 = pos.distance( closest1.getPos() );
-                    dist2 = pos.distance( closest2.getPos() );
-                    dist3 = pos.distance( closest3.getPos() );
-
-                    // Make sure they're actually in order of size, or the faultlines break
-                    // This can be removed for speedup once there's a better way of drawing on the faultlines
-                    if( dist1 > dist2 ){
-                        temp = dist2;
-                        dist2 = dist1;
-                        dist1 = temp;
-                        TecPoint tempP = closest2;
-                        closest2 = closest1;
-                        closest1 = tempP;
-                    }
-                    if( dist2 > dist3 ){
-                        temp = dist2;
-                        dist2 = dist3;
-                        dist3 = temp;
-                        TecPoint tempP = closest2;
-                        closest2 = closest3;
-                        closest3 = tempP;
-                        if( dist1 > dist2 ){
-                            temp = dist2;
-                            dist2 = dist1;
-                            dist1 = temp;
-                            tempP = closest2;
-                            closest2 = closest1;
-                            closest1 = tempP;
-                        }
-                    }
-
-                    if( showFaults && (closest1.getPlate() != closest2.getPlate())
-                            && Math.min( dist1, dist2 ) / Math.max( dist1, dist2 ) > 0.7 ){
-                        image.setRGB( x, height - y - 1, Color.red.getRGB() );
-                    }
-                    else {
-                        //dist3=Math.sqrt(dist3);
-                        area1 = triangleArea( dist2, dist3, closest2.getPos().distance( closest3.getPos() ) );
-                        area2 = triangleArea( dist1, dist3, closest1.getPos().distance( closest3.getPos() ) );
-                        area3 = triangleArea( dist1, dist2, closest1.getPos().distance( closest2.getPos() ) );
-                        area1 = Math.pow( area1, 1.5 );
-                        area2 = Math.pow( area2, 1.5 );  // This powering is beautiful :)  Lovely, soft, cubic curves on the image! :D
-                        area3 = Math.pow( area3, 1.5 );  // Causes slight "bobbling" in low-res areas, but smooths the jagged edges of coastlines.
-                        temp = 1.0 / (area1 + area2 + area3);
-                        a = area1 * temp;
-                        b = area2 * temp;
-                        c = area3 * temp;
-                        //image.setRGB(x,height-y-1,colorMap.map((closest1.getSurfaceHeight() - TecPoint.seaLevel)*a+(closest2.getSurfaceHeight() - TecPoint.seaLevel)*b+(closest3.getSurfaceHeight() - TecPoint.seaLevel)*c).getRGB());
-                        double hasl = closest1.heightAboveSeaLevel() * a + closest2.heightAboveSeaLevel() * b + closest3.heightAboveSeaLevel() * c;
-                        image.setRGB( x, height - y - 1, m_colorMap.mapToRGB( hasl ) );
-                        if( hasl > m_colorMap.maxValue() ){
-                            //System.out.println(hasl+" -> "+tcol);
-                            image.setRGB( x, height - y - 1, m_colorMap.topRGB() );
-                        }
-                        //image.setRGB(x,height-y-1,colorMap.mapToRGB(closest1.heightAboveSeaLevel()*a+closest2.heightAboveSeaLevel()*b+closest3.heightAboveSeaLevel()*c).getRGB());
-                    }
+                column[3 * y]     = Math.sin( lon ) * Math.cos( lat ) * m_planetRadius;
+                column[3 * y + 1] = Math.sin( lat ) * m_planetRadius;
+                column[3 * y + 2] = Math.cos( lon ) * Math.cos( lat ) * m_planetRadius;
+            }
+            locate( column, height, tets, weights );
+            for( int y = 0; y < height; y++ ){
+                Tet tet = tets[y];
+                if( tet == null )
+                    continue;
+                pos.set( column[3 * y], column[3 * y + 1], column[3 * y + 2] );
+                if( showFaults && _onFault( tet, pos ) ){
+                    image.setRGB( x, height - y - 1, Color.red.getRGB() );
+                }
+                else {
+                    _softenWeights( weights, 3 * y );
+                    double hasl = tet.b.heightAboveSeaLevel() * weights[3 * y]
+                            + tet.c.heightAboveSeaLevel() * weights[3 * y + 1]
+                            + tet.d.heightAboveSeaLevel() * weights[3 * y + 2];
+                    image.setRGB( x, height - y - 1, m_colorMap.mapToRGB( hasl ) );
+                    if( hasl > m_colorMap.maxValue() )
+                        image.setRGB( x, height - y - 1, m_colorMap.topRGB() );
                 }
-                //Thread.yield();
             }
         }
         if( showAgeDots ){
@@ -1850,8 +2454,9 @@ public class World {
         Graphics g = image.getGraphics();
         Point3d pos = new Point3d();
         double lon, lat, dist1, dist2, dist3, temp, a, b, c, area1, area2, area3;
-        TecPoint closest1 = null, closest2 = null, closest3 = null;
-        HashSet gridBoxSet;
+        TecPoint closest1, closest2, closest3;
+        int[] closest = new int[ 3 ];
+        double[] closestDistSq = new double[ 3 ];
         for( int y1 = 0; y1 < height; y1++ ){
             int y = (int)((Math.asin( 1 - 2 * (double)y1 / (height - 1) ) + Math.PI / 2) / Math.PI * height);
             lat = -Math.PI / 2 + (double)y / (height - 1) * Math.PI;
@@ -1863,46 +2468,21 @@ public class World {
                 pos.x = Math.sin( lon ) * Math.cos( lat ) * m_planetRadius;
                 pos.y = Math.sin( lat ) * m_planetRadius;
                 pos.z = Math.cos( lon ) * Math.cos( lat ) * m_planetRadius;
-                dist1 = m_planetRadius * m_planetRadius;
-                dist2 = m_planetRadius * m_planetRadius;
-                dist3 = m_planetRadius * m_planetRadius;
-                closest1 = closest2 = null;
-                gridBoxSet = pointsSurrounding( getGridBoxX( pos.x ), getGridBoxY( pos.y ), getGridBoxZ( pos.z ) );
-                if( gridBoxSet != null ){
-                    Iterator iter = gridBoxSet.iterator();
-                    while( iter.hasNext() ){
-                        TecPoint tp = (TecPoint)iter.next();
-                        temp = tp.getPos().distanceSquared( pos );
-                        if( temp < dist1 ){
-                            dist3 = dist2;
-                            closest3 = closest2;
-                            dist2 = dist1;
-                            closest2 = closest1;
-                            closest1 = tp;
-                            dist1 = temp;
-                        }
-                        else if( temp < dist2 ){
-                            dist3 = dist2;
-                            closest3 = closest2;
-                            closest2 = tp;
-                            dist2 = temp;
-                        }
-                        else if( temp < dist3 ){
-                            closest3 = tp;
-                            dist3 = temp;
-                        }
-                    }
-                    dist1 = Math.sqrt( dist1 );
-                    dist2 = Math.sqrt( dist2 );
+                if( nearest( pos, 3, closest, closestDistSq ) == 3 ){
+                    closest1 = m_pointStore.getOwner( closest[0] );
+                    closest2 = m_pointStore.getOwner( closest[1] );
+                    closest3 = m_pointStore.getOwner( closest[2] );
+                    dist1 = Math.sqrt( closestDistSq[0] );
+                    dist2 = Math.sqrt( closestDistSq[1] );
                     if( showFaults && (closest1.getPlate() != closest2.getPlate())
                             && Math.min( dist1, dist2 ) / Math.max( dist1, dist2 ) > 0.7 ){
                         image.setRGB( x, y1, Color.red.getRGB() );
                     }
                     else {
-                        dist3 = Math.sqrt( dist3 );
-                        area1 = triangleArea( dist2, dist3, closest2.getPos().distance( closest3.getPos() ) );
-                        area2 = triangleArea( dist1, dist3, closest1.getPos().distance( closest3.getPos() ) );
-                        area3 = triangleArea( dist1, dist2, closest1.getPos().distance( closest2.getPos() ) );
+                        dist3 = Math.sqrt( closestDistSq[2] );
+                        area1 = triangleArea( dist2, dist3, Math.sqrt( m_pointStore.distanceSquared( closest[1], closest[2] ) ) );
+                        area2 = triangleArea( dist1, dist3, Math.sqrt( m_pointStore.distanceSquared( closest[0], closest[2] ) ) );
+                        area3 = triangleArea( dist1, dist2, Math.sqrt( m_pointStore.distanceSquared( closest[0], closest[1] ) ) );
                         temp = 1.0 / (area1 + area2 + area3);
                         a = area1 * temp;
                         b = area2 * temp;
@@ -1914,6 +2494,44 @@ public class World {
         }
     }
 
+    /**
+     * @return Whether a position over the given tet is about as close to the
+     *         two nearest of its corners, and they are on different plates;
+     *         used to draw fault lines.
+     */
+    private boolean _onFault( Tet tet, Point3d pos ){
+        TecPoint p1 = tet.b, p2 = tet.c, p3 = tet.d, temp;
+        double dist1 = pos.distance( p1.getPos() );
+        double dist2 = pos.distance( p2.getPos() );
+        double dist3 = pos.distance( p3.getPos() );
+        // Drop the furthest corner
+        if( dist3 < dist1 ){
+            temp = p1; p1 = p3; p3 = temp;
+            double d = dist1; dist1 = dist3; dist3 = d;
+        }
+        if( dist3 < dist2 ){
+            p2 = p3;
+            dist2 = dist3;
+        }
+        return p1.getPlate() != p2.getPlate() && Math.min( dist1, dist2 ) / Math.max( dist1, dist2 ) > 0.7;
+    }
+
+    /**
+     * Raises a set of barycentric weights, as returned by locate(), to the
+     * power 1.5 and scales them back to add up to 1. This powering is
+     * beautiful :)  Lovely, soft, cubic curves on the image! :D  Causes slight
+     * "bobbling" in low-res areas, but smooths the jagged edges of coastlines.
+     */
+    private static void _softenWeights( double[] weights, int offset ){
+        double a = Math.pow( Math.max( 0, weights[offset] ), 1.5 );
+        double b = Math.pow( Math.max( 0, weights[offset + 1] ), 1.5 );
+        double c = Math.pow( Math.max( 0, weights[offset + 2] ), 1.5 );
+        double scale = 1.0 / (a + b + c);
+        weights[offset]     = a * scale;
+        weights[offset + 1] = b * scale;
+        weights[offset + 2] = c * scale;
+    }
+
     public double triangleArea( double a, double b, double c ){
         double s = (a + b + c) / 2;
         return Math.sqrt( s * (s - a) * (s - b) * (s - c) );
@@ -1976,35 +2594,36 @@ public class World {
         north.cross( east, new Vector3d( pos ) );  // Local north is at right angles to local east and local vertical
         north.normalize();
         double[][] heightmap = new double[res][res];
-        Tet tet;
         double minHeight = 100, maxHeight = -100;
-        ArrayList previousTets = new ArrayList();
+        double[] pixels = new double[ 3 * res * res ];
         for( int i = 0; i < res; i++ )
             for( int j = 0; j < res; j++ ){
                 pos2.set( pos );
                 pos2.scaleAdd( i * pixelSize / 1000, east, pos2 );
                 pos2.scaleAdd( -j * pixelSize / 1000, north, pos2 );  // -j because we actually want to go south
                 pos2.scale( m_planetRadius / (new Vector3d( pos2 ).length()) );
-                tet = getTet( pos2, previousTets );
-                if( !previousTets.contains( tet ) )
-                    previousTets.add( tet );
-                TecPoint tp1 = tet.b;
-                TecPoint tp2 = tet.c;
-                TecPoint tp3 = tet.d;
-                double dist1 = pos2.distance( tp1.getPos() );
-                double dist2 = pos2.distance( tp2.getPos() );
-                double dist3 = pos2.distance( tp3.getPos() );
-                double area1 = triangleArea( dist2, dist3, (tp2.getPos().distance( tp3.getPos() )) );
-                double area2 = triangleArea( dist1, dist3, (tp1.getPos().distance( tp3.getPos() )) );
-                double area3 = triangleArea( dist1, dist2, (tp1.getPos().distance( tp2.getPos() )) );
-                area1 = Math.pow( area1, 1.5 );
-                area2 = Math.pow( area2, 1.5 );  // This powering is beautiful :)  Lovely, soft, cubic curves on the image! :D
-                area3 = Math.pow( area3, 1.5 );  // Causes slight "bobbling" in low-res areas, but smooths the jagged edges of coastlines.
-                double areascale = 1.0 / (area1 + area2 + area3);
-                double cont1 = area1 * areascale;
-                double cont2 = area2 * areascale;
-                double cont3 = area3 * areascale;
-                heightmap[i][j] = tp1.getSurfaceHeight() * cont1 + tp2.getSurfaceHeight() * cont2 + tp3.getSurfaceHeight() * cont3;
+                int k = 3 * (i * res + j);
+                pixels[k]     = pos2.x;
+                pixels[k + 1] = pos2.y;
+                pixels[k + 2] = pos2.z;
+            }
+        Tet[] tets = new Tet[ res * res ];
+        double[] weights = new double[ 3 * res * res ];
+        locate( pixels, res * res, tets, weights );
+        int[] found = new int[ 1 ];
+        for( int i = 0; i < res; i++ )
+            for( int j = 0; j < res; j++ ){
+                Tet tet = tets[i * res + j];
+                int k = 3 * (i * res + j);
+                if( tet == null ){
+                    // No tet found under this pixel, so use the nearest point
+                    pos2.set( pixels[k], pixels[k + 1], pixels[k + 2] );
+                    if( nearest( pos2, 1, found ) > 0 )
+                        heightmap[i][j] = m_pointStore.getOwner( found[0] ).getSurfaceHeight();
+                    continue;
+                }
+                _softenWeights( weights, k );
+                heightmap[i][j] = tet.b.getSurfaceHeight() * weights[k] + tet.c.getSurfaceHeight() * weights[k + 1] + tet.d.getSurfaceHeight() * weights[k + 2];
             }
         for( int i = 0; i < res; i++ )
             for( int j = 0; j < res; j++ ){
@@ -2110,42 +2729,33 @@ public class World {
         System.out.println( 2 * Math.PI * m_planetRadius / (Math.pow( 2.0, (double)(levels - 1) ) * (double)num * (double)size) + "km/pixel at the highest resolution" );
         m_imageBuffer = new BufferedImage( size, size, 1 );
         int[][] is = new int[size][size];
-        Point3d point3d = new Point3d();
-        Tet tet = null;
+        double[] pixels = new double[ 3 * size * size ];
+        Tet[] tets = new Tet[ size * size ];
+        double[] weights = new double[ 3 * size * size ];
         for( int lev = levels - 1; lev < levels; lev++ ){
             for( int row = 0; ( (double)row < (double)num * Math.pow( 2.0, (double)lev ) / 2.0 ); row++ ){
                 for( int col = 0; ( (double)col < (double)num * Math.pow( 2.0, (double)lev ) ); col++ ){
                     System.out.println( "Generating tile(" + row + "," + col + ") of level " + lev );
-                    ArrayList vector = new ArrayList();
                     for( int x = 0; x < size; x++ ){
                         double lon = (2 * Math.PI * ((double)col + (double)x / (double)size) / ((double)num * Math.pow( 2.0, (double)lev )));
                         lon = (lon + Math.PI) % (2 * Math.PI);
                         for( int y = 0; y < size; y++ ){
                             double lat = (Math.PI/-2.0 + (Math.PI * ((double)row + (double)y / (double)size) / ((double)num * Math.pow( 2.0, (double)lev ) / 2.0)));
-                            point3d.x = (Math.sin( lon ) * Math.cos( lat ) * m_planetRadius);
-                            point3d.y = Math.sin( lat ) * m_planetRadius;
-                            point3d.z = (Math.cos( lon ) * Math.cos( lat ) * m_planetRadius);
-                            if( tet == null || !tet.strictlyContains( point3d ) )
-                                tet = getTet( point3d, vector );
+                            int k = 3 * (x * size + y);
+                            pixels[k]     = (Math.sin( lon ) * Math.cos( lat ) * m_planetRadius);
+                            pixels[k + 1] = Math.sin( lat ) * m_planetRadius;
+                            pixels[k + 2] = (Math.cos( lon ) * Math.cos( lat ) * m_planetRadius);
+                        }
+                    }
+                    locate( pixels, size * size, tets, weights );
+                    for( int x = 0; x < size; x++ ){
+                        for( int y = 0; y < size; y++ ){
+                            Tet tet = tets[x * size + y];
                             if( tet != null ){
-                                if( !vector.contains( tet ) )
-                                    vector.add( tet );
-                                TecPoint tecpoint = tet.b;
-                                TecPoint tecpoint_333_ = tet.c;
-                                TecPoint tecpoint_334_ = tet.d;
-                                double dist1 = point3d.distance( tecpoint.getPos() );
-                                double dist2 = point3d.distance( tecpoint_333_.getPos() );
-                                double dist3 = point3d.distance( tecpoint_334_.getPos() );
-                                double area1 = triangleArea( dist2, dist3, (tecpoint_333_.getPos().distance( tecpoint_334_.getPos() )) );
-                                double area2 = triangleArea( dist1, dist3, (tecpoint.getPos().distance( tecpoint_334_.getPos() )) );
-                                double area3 = triangleArea( dist1, dist2, (tecpoint.getPos().distance( tecpoint_333_.getPos() )) );
-                                double d_341_ = 1.0 / (area1 + area2 + area3);
-                                double d_342_ = area1 * d_341_;
-                                double d_343_ = area2 * d_341_;
-                                double d_344_ = area3 * d_341_;
-                                double d_345_ = (tecpoint.getSurfaceHeight() * d_342_ + (tecpoint_333_.getSurfaceHeight() * d_343_) + (tecpoint_334_.getSurfaceHeight() * d_344_));
-                                is[size - y - 1][x] = (int)(d_345_ * 1000.0);
-                                m_imageBuffer.setRGB( x, size - y - 1, m_colorMap.map( d_345_ - TecPoint.seaLevel ).getRGB() );
+                                int k = 3 * (x * size + y);
+                                double height = tet.b.getSurfaceHeight() * weights[k] + tet.c.getSurfaceHeight() * weights[k + 1] + tet.d.getSurfaceHeight() * weights[k + 2];
+                                is[size - y - 1][x] = (int)(height * 1000.0);
+                                m_imageBuffer.setRGB( x, size - y - 1, m_colorMap.map( height - TecPoint.seaLevel ).getRGB() );
                             }
                         }
                     }
@@ -2386,24 +2996,24 @@ public class World {
 
     public void splitPlate( TecPlate tecplate ){
         double d = plateLinkCrossers( tecplate );
-        ArrayList vector = new ArrayList();
+        final Vector3d splitVector = tecplate.splitVector;
+        PointFilter filter = new PointFilter() {
+            public boolean accept( TecPoint point ){
+                return splitVector.x * point.getX() + splitVector.y * point.getY() + splitVector.z * point.getZ() > 0.0;
+            }
+        };
+        int count = 0;
         for( int i = 0; i < tecplate.getPoints().size(); i++ ){
-            TecPoint tecpoint = tecplate.getPoint( i );
-            if( tecplate.splitVector.dot( new Vector3d( tecpoint.getPos() ) ) > 0.0 )
-                vector.add( tecpoint );
+            if( filter.accept( tecplate.getPoint( i ) ) )
+                count++;
         }
         int i = 10; // plate size limit
-        if( vector.size() <= i || vector.size() >= tecplate.getPoints().size() - i )
+        if( count <= i || count >= tecplate.getPoints().size() - i )
             // Can't split the plate along that line! There's not enough points on one side of it!
             System.out.println( "Bad split attempted" );
         else {
-            TecPlate newPlate = new TecPlate( tecplate.getPos().x, tecplate.getPos().y, tecplate.getPos().z );
+            TecPlate newPlate = splitPlate( tecplate, filter );
             newPlate.densityTweak = Math.random() * 0.1;
-            addPlate( newPlate );
-            for( int i_457_ = 0; i_457_ < vector.size(); i_457_++ ){
-                TecPoint tecpoint = (TecPoint)vector.get( i_457_ );
-                tecpoint.setPlate( newPlate );
-            }
             // Display the different vectors of the plates, for diagnostics
             double d_458_ = 0.0;
             double d_459_ = 0.0;
@@ -2438,6 +3048,34 @@ public class World {
         }
     }
 
+    /**
+     * Moves the points of a plate accepted by the filter onto a new plate, in
+     * one pass over the plate. The new plate is added to the World, but
+     * neither plate is re-centred.
+     *
+     * @param plate  The plate to split.
+     * @param filter Accepts the points which should go on the new plate.
+     * @return The new plate.
+     */
+    public TecPlate splitPlate( TecPlate plate, PointFilter filter ){
+        TecPlate newPlate = new TecPlate( plate.getPos().x, plate.getPos().y, plate.getPos().z );
+        plate.movePoints( filter, newPlate );
+        addPlate( newPlate );
+        return newPlate;
+    }
+
+    /**
+     * Moves all the points of one plate onto another and removes the emptied
+     * plate from the World. Takes time proportional to the size of src.
+     *
+     * @param src The plate to merge away.
+     * @param dst The plate which receives its points.
+     */
+    public void mergePlates( TecPlate src, TecPlate dst ){
+        dst.absorb( src );
+        m_plates.remove( src );
+    }
+
     public void calculateEdgeLinkPairs(){
         // Go through all the tets, and give each plate a list of its edge linkPairs.
 
@@ -2479,10 +3117,10 @@ public class World {
             // If the break is _not_ on the ocean floor, add magma until it   //
             // reaches the level of surrounding rocks                         //
             ////////////////////////////////////////////////////////////////////
-            TecPoint np1 = new TecPoint( (tecpoint.getPos().x * 2.0 / 3.0 + tecpoint2.getPos().x / 3.0),
+            TecPoint np1 = new TecPoint( this, (tecpoint.getPos().x * 2.0 / 3.0 + tecpoint2.getPos().x / 3.0),
                                          (tecpoint.getPos().y * 2.0 / 3.0 + tecpoint2.getPos().y / 3.0),
                                          (tecpoint.getPos().z * 2.0 / 3.0 + tecpoint2.getPos().z / 3.0), tecpoint.getPlate(), m_epoch );
-            TecPoint np2 = (new TecPoint( (tecpoint.getPos().x / 3.0 + tecpoint2.getPos().x * 2.0 / 3.0),
+            TecPoint np2 = (new TecPoint( this, (tecpoint.getPos().x / 3.0 + tecpoint2.getPos().x * 2.0 / 3.0),
                                           (tecpoint.getPos().y / 3.0 + tecpoint2.getPos().y * 2.0 / 3.0),
                                           (tecpoint.getPos().z / 3.0 + tecpoint2.getPos().z * 2.0 / 3.0), tecpoint2.getPlate(), m_epoch ));
             np1.setHeight( m_planetRadius );
@@ -2542,26 +3180,248 @@ public class World {
         return point2d;
     }
 
+    /**
+     * Removes a point from the World, along with every tet using it. Only the
+     * point's own neighbourhood is touched.
+     *
+     * @param tecpoint The point to remove.
+     */
     public void killPoint( TecPoint tecpoint ){
-        m_points.remove( tecpoint );
-        if( tecpoint.getPlate() != null ){
-            tecpoint.getPlate().removePoint( tecpoint );
-            if( tecpoint.getPlate().getPoints().isEmpty() )
-                m_plates.remove( tecpoint.getPlate() );
-        }
-        for( int i = 0; i < m_tets.size(); i++ ){
-            if( ((Tet)m_tets.get( i )).uses( tecpoint ) ){
-                Tet tet = (Tet)m_tets.get( i );
-                m_tets.remove( tet );
-                m_linkSystem.removeLink( tet.b, tet.c );
-                m_linkSystem.removeLink( tet.b, tet.d );
-                m_linkSystem.removeLink( tet.c, tet.d );
+        ArrayList points = new ArrayList( 1 );
+        points.add( tecpoint );
+        killPoints( points );
+    }
+
+    /**
+     * Removes a batch of points from the World in one pass, along with every
+     * tet using them. Repeated or already removed points are ignored. Points
+     * around the holes left behind are marked invalid so the next
+     * redelaunay() fills them in.
+     *
+     * @param points The TecPoints to remove.
+     */
+    public void killPoints( Collection points ){
+        HashMap platePoints = new HashMap();  // TecPlate -> HashSet of its dying points
+        Iterator iter = points.iterator();
+        while( iter.hasNext() ){
+            TecPoint tecpoint = (TecPoint)iter.next();
+            int listIndex = tecpoint.getListIndex();
+            if( listIndex < 0 )
+                continue;   // Already dead
+
+            // Swap the last point into its place in the list
+            TecPoint last = (TecPoint)m_points.remove( m_points.size() - 1 );
+            if( last != tecpoint ){
+                m_points.set( listIndex, last );
+                last.setListIndex( listIndex );
+            }
+            tecpoint.setListIndex( -1 );
+
+            if( tecpoint.getPlate() != null ){
+                HashSet dying = (HashSet)platePoints.get( tecpoint.getPlate() );
+                if( dying == null ){
+                    dying = new HashSet();
+                    platePoints.put( tecpoint.getPlate(), dying );
+                }
+                dying.add( tecpoint );
+            }
+
+            // Remove the tets which use it, and triangulate the hole left
+            ArrayList tets = _getPointTets( tecpoint );
+            ArrayList star = new ArrayList( tets );
+            while( !tets.isEmpty() ){
+                Tet tet = (Tet)tets.get( tets.size() - 1 );
+                _removeTet( tet );
                 tet.b.setValid( false );
                 tet.c.setValid( false );
                 tet.d.setValid( false );
-                i--;
             }
+            m_pointTets[tecpoint.getIndex()] = null;
+            _fillStar( tecpoint, star );
+            m_linkSystem.removePoint( tecpoint );
+            tecpoint.detach();   // Its row can now be reused
+        }
+
+        // Take the dead points off their plates, one pass per plate
+        iter = platePoints.keySet().iterator();
+        while( iter.hasNext() ){
+            TecPlate plate = (TecPlate)iter.next();
+            plate.removePoints( (HashSet)platePoints.get( plate ) );
+            if( plate.getPoints().isEmpty() )
+                m_plates.remove( plate );
+        }
+    }
+
+    /**
+     * Renumbers the points so that their PointStore rows are packed together,
+     * once point deaths have left more than a quarter as many holes as there
+     * are live points, and rewrites everything keyed on the old indices.
+     */
+    private void _compactPoints(){
+        int live = m_pointStore.liveCount();
+        if( m_pointStore.size() - live <= live / 4 )
+            return;
+        System.out.print( "Compacting point store..." );
+        _pointsRenumbered( m_pointStore.compact() );
+        System.out.println( "done. " + live + " points" );
+    }
+
+    /**
+     * Brings everything which keeps points by index up to date after the
+     * point store has been renumbered.
+     *
+     * @param remap The new index of each old row, or -1 if it was free.
+     */
+    private void _pointsRenumbered( int[] remap ){
+        m_linkSystem.reindex();
+        if( m_pointGrid != null )
+            m_pointGrid.remap( remap );
+        if( m_tetStore != null )
+            m_tetStore.refreshCorners();
+        if( m_pointTets != null ){
+            ArrayList[] pointTets = new ArrayList[ m_pointStore.size() ];
+            for( int i = 0; i < remap.length && i < m_pointTets.length; i++ ){
+                if( remap[i] >= 0 )
+                    pointTets[remap[i]] = m_pointTets[i];
+            }
+            m_pointTets = pointTets;
+        }
+    }
+
+    /**
+     * Renumbers the points in Morton order of their positions, so points
+     * which are near each other on the surface are near each other in the
+     * store, then puts the links, tets and each plate's points in the same
+     * order. New points are added wherever there's room, so without this
+     * the sweeps along links jump all over the store.
+     */
+    private void _reorderPoints(){
+        long time = System.currentTimeMillis();
+        int n = m_points.size();
+        if( n >= MAX_LOCATE_BATCH )
+            return;
+        double[] pos = new double[ 3 * n ];
+        for( int k = 0; k < n; k++ ){
+            int i = getPoint( k ).getIndex();
+            pos[3 * k]     = m_pointStore.getX( i );
+            pos[3 * k + 1] = m_pointStore.getY( i );
+            pos[3 * k + 2] = m_pointStore.getZ( i );
+        }
+        long[] order = _mortonOrder( pos, 0, n );
+        TecPoint[] sorted = new TecPoint[ n ];
+        int[] rows = new int[ n ];
+        for( int k = 0; k < n; k++ ){
+            sorted[k] = getPoint( (int)(order[k] & (MAX_LOCATE_BATCH - 1)) );
+            rows[k] = sorted[k].getIndex();
+        }
+        _pointsRenumbered( m_pointStore.reorder( rows ) );
+        m_points.clear();
+        for( int k = 0; k < n; k++ ){
+            sorted[k].setListIndex( k );
+            m_points.add( sorted[k] );
+        }
+        m_linkSystem.sortSlots();
+        for( int i = 0; i < m_plates.size(); i++ )
+            getPlate( i ).sortPoints();
+
+        // Tets in order of their first corner, in a fresh store to match
+        if( m_tets != null ){
+            Collections.sort( m_tets, new Comparator(){
+                public int compare( Object o1, Object o2 ){
+                    return _firstCorner( (Tet)o1 ) - _firstCorner( (Tet)o2 );
+                }
+            } );
+            TetStore store = new TetStore( m_pointStore, Math.max( 1, m_tets.size() ) );
+            for( int i = 0; i < m_tets.size(); i++ ){
+                Tet tet = (Tet)m_tets.get( i );
+                tet.index = i;
+                tet.attach( store );
+            }
+            m_tetStore = store;
         }
+        System.out.println( "Reordered " + n + " points in " + (System.currentTimeMillis() - time) + "ms." );
+    }
+
+    private static int _firstCorner( Tet tet ){
+        return Math.min( tet.b.getIndex(), Math.min( tet.c.getIndex(), tet.d.getIndex() ) );
+    }
+
+    /**
+     * Sets how often the points are renumbered to keep neighbours together in
+     * memory (see _reorderPoints()).
+     *
+     * @param steps The number of steps between reorders, or 0 for never.
+     */
+    public void setReorderInterval( int steps ){
+        m_reorderInterval = steps;
+    }
+
+    /**
+     * Starts a new, empty, list of tets.
+     */
+    private void _clearTets(){
+        m_tets = new ArrayList();
+        m_pointTets = new ArrayList[ m_pointStore.size() ];
+        m_tetStore = new TetStore( m_pointStore, Math.max( 1, 2 * m_pointStore.size() ) );
+    }
+
+    /**
+     * Adds a tet to the surface, links up its edges and records it against
+     * each of its points.
+     *
+     * @param tet The tet to add.
+     */
+    private void _addTet( Tet tet ){
+        tet.index = m_tets.size();
+        m_tets.add( tet );
+        tet.attach( m_tetStore );
+        _getPointTets( tet.b ).add( tet );
+        _getPointTets( tet.c ).add( tet );
+        _getPointTets( tet.d ).add( tet );
+        m_linkSystem.addLink( tet.b, tet.c );
+        m_linkSystem.addLink( tet.b, tet.d );
+        m_linkSystem.addLink( tet.c, tet.d );
+    }
+
+    /**
+     * Takes a tet off the surface and unlinks its edges. The last tet in the
+     * list is moved into its place, so this costs the same however many tets
+     * there are.
+     *
+     * @param tet The tet to remove.
+     */
+    private void _removeTet( Tet tet ){
+        if( tet.index < 0 )
+            return;
+        Tet last = (Tet)m_tets.remove( m_tets.size() - 1 );
+        if( last != tet ){
+            m_tets.set( tet.index, last );
+            last.index = tet.index;
+        }
+        tet.index = -1;
+        tet.detach();
+        _getPointTets( tet.b ).remove( tet );
+        _getPointTets( tet.c ).remove( tet );
+        _getPointTets( tet.d ).remove( tet );
+        m_linkSystem.removeLink( tet.b, tet.c );
+        m_linkSystem.removeLink( tet.b, tet.d );
+        m_linkSystem.removeLink( tet.c, tet.d );
+    }
+
+    /**
+     * @param point A point on the surface.
+     * @return The (live) list of tets using the given point.
+     */
+    private ArrayList _getPointTets( TecPoint point ){
+        int index = point.getIndex();
+        if( index >= m_pointTets.length ){
+            ArrayList[] grown = new ArrayList[ Math.max( index + 1, m_pointTets.length * 2 ) ];
+            System.arraycopy( m_pointTets, 0, grown, 0, m_pointTets.length );
+            m_pointTets = grown;
+        }
+        if( m_pointTets[index] == null )
+            m_pointTets[index] = new ArrayList( 6 );
+        return m_pointTets[index];
     }
 
     public ColorMap getColorMap(){
@@ -2572,41 +3432,211 @@ public class World {
         return m_imageSettings;
     }
 
+    /**
+     * Finds the tet whose surface triangle the given position lies over,
+     * walking from wherever the last call found one, so positions visited in
+     * order (such as along a scanline) are each found in a step or two.
+     */
     public Tet getTet( Point3d point3d ){
-        for( int i = 0; i < m_tetGridSize; i++ ){
+        Tet tet = getTet( point3d, m_lastTet );
+        if( tet != null )
+            m_lastTet = tet;
+        return tet;
+    }
+
+    /**
+     * Finds the tet whose surface triangle the given position lies over, by
+     * walking across the surface from the hint: each step crosses the edge of
+     * the current triangle which faces the position. Without a usable hint
+     * the walk starts at a tet of the point nearest the position. If the walk
+     * loses its way, as it can while the triangulation isn't Delaunay, the
+     * tets bucketed in the position's cell are tried instead, and only if the
+     * buckets are out of date are the cells around it searched.
+     *
+     * @param hint A tet at or near the position, such as the one found for
+     *             the previous pixel, or null.
+     */
+    public Tet getTet( Point3d point3d, Tet hint ){
+        m_tetLookups++;
+        Tet tet = _walkToTet( point3d, hint );
+        if( tet != null )
+            return tet;
+        m_tetWalkMisses++;
+
+        // Every tet is bucketed in each cell its bounding cap overlaps, so the
+        // position's own cell holds any tet it could be over
+        HashSet cell = getTetGridBox( point3d );
+        if( cell != null ){
+            Iterator iter = cell.iterator();
+            while( iter.hasNext() ){
+                Tet t = (Tet)iter.next();
+                if( t.index >= 0 && t.strictlyContains( point3d ) )
+                    return t;
+            }
+        }
+
+        // The points have moved since the tets were bucketed
+        m_tetFallbackScans++;
+        for( int i = 1; i < _numTetRings(); i++ ){
             HashSet vector = tetsSurrounding( point3d, i );
             Iterator iter = vector.iterator();
             while( iter.hasNext() ){
                 Tet t = (Tet)iter.next();
-                if( t.strictlyContains( point3d ) )
+                if( t.index >= 0 && t.strictlyContains( point3d ) ){
+                    m_tetShellDepth = Math.max( m_tetShellDepth, i );
                     return t;
+                }
             }
         }
-        for( int i = 0; i < m_tets.size(); i++ ){
-            if( ((Tet)m_tets.get( i )).strictlyContains( point3d ) )
-                return (Tet)m_tets.get( i );
-        }
         return null;
     }
 
-    public Tet getTet( Point3d point3d, ArrayList vector ){
-        if( vector != null ){
-            for( int i = 0; i < vector.size(); i++ ){
-                if( ((Tet)vector.get( i )).strictlyContains( point3d ) )
-                    return (Tet)vector.get( i );
+    /**
+     * @return The number of getTet() lookups since the tets were last
+     *         bucketed.
+     */
+    public long getTetLookups(){
+        return m_tetLookups;
+    }
+
+    /**
+     * @return The number of getTet() lookups since the tets were last bucketed
+     *         whose walk failed, so which had to look in the buckets.
+     */
+    public long getTetWalkMisses(){
+        return m_tetWalkMisses;
+    }
+
+    /**
+     * @return The number of getTet() lookups since the tets were last bucketed
+     *         which didn't find their tet in their own cell, so which had to
+     *         search the rings of cells around it.
+     */
+    public long getTetFallbackScans(){
+        return m_tetFallbackScans;
+    }
+
+    /**
+     * @return The deepest ring of cells any getTet() lookup has had to search
+     *         since the tets were last bucketed; 0 if none have needed to.
+     */
+    public int getTetShellDepth(){
+        return m_tetShellDepth;
+    }
+
+    private Tet _walkToTet( Point3d point3d, Tet tet ){
+        if( m_tets.size() == 0 )
+            return null;
+        if( tet == null || tet.index < 0 ){
+            tet = null;
+            if( nearest( point3d, 1, m_walkStart ) == 1 ){
+                ArrayList tets = _getPointTets( m_pointStore.getOwner( m_walkStart[0] ) );
+                if( tets.size() > 0 )
+                    tet = (Tet)tets.get( 0 );
             }
+            if( tet == null )
+                tet = (Tet)m_tets.get( 0 );
+        }
+
+        // Crossing the planet takes about sqrt(tets) steps; more than a few
+        // times that and the walk is going round in circles
+        int maxSteps = 4 * (int)Math.sqrt( m_tets.size() ) + 16;
+        for( int step = 0; step < maxSteps; step++ ){
+            int edge = tet.getStore().exitEdge( tet.getSlot(), point3d.x, point3d.y, point3d.z );
+            if( edge < 0 )
+                return tet;
+            if( edge == 0 )
+                tet = _neighbourTet( tet, tet.b, tet.c );
+            else if( edge == 1 )
+                tet = _neighbourTet( tet, tet.c, tet.d );
+            else
+                tet = _neighbourTet( tet, tet.d, tet.b );
+            if( tet == null )
+                return null;
         }
-        for( int i = 0; i < m_tetGridSize; i++ ){
-            Iterator iter = vector.iterator();
-            while( iter.hasNext() ){
-                Tet t = (Tet)iter.next();
-                if( t.strictlyContains( point3d ) )
-                    return t;
+        return null;
+    }
+
+    /**
+     * Finds the tets under a whole batch of positions, such as the pixels of
+     * an image, and the barycentric weights of each position within its tet's
+     * surface triangle. The positions are visited along a Morton curve rather
+     * than in the order given, each walk starting from the last tet found, so
+     * neighbouring positions are found in a step or two and the cost per
+     * position doesn't grow with the size of the batch.
+     *
+     * @param pos     The positions: x, y and z for each.
+     * @param count   The number of positions.
+     * @param tets    Filled with the tet under each position, or null where
+     *                none was found.
+     * @param weights Filled with the weights of the b, c and d corners of each
+     *                position's tet, 3 per position, adding up to 1.
+     */
+    public void locate( double[] pos, int count, Tet[] tets, double[] weights ){
+        Point3d p = new Point3d();
+        Tet tet = m_lastTet;
+        for( int start = 0; start < count; start += MAX_LOCATE_BATCH ){
+            int n = Math.min( count - start, MAX_LOCATE_BATCH );
+            long[] order = _mortonOrder( pos, start, n );
+            for( int k = 0; k < n; k++ ){
+                int q = start + (int)(order[k] & (MAX_LOCATE_BATCH - 1));
+                p.set( pos[3 * q], pos[3 * q + 1], pos[3 * q + 2] );
+                Tet found = getTet( p, tet );
+                tets[q] = found;
+                if( found != null ){
+                    found.getStore().barycentric( found.getSlot(), p.x, p.y, p.z, weights, 3 * q );
+                    tet = found;
+                }
             }
         }
-        for( int i = 0; i < m_tets.size(); i++ ){
-            if( ((Tet)m_tets.get( i )).strictlyContains( point3d ) )
-                return (Tet)m_tets.get( i );
+        m_lastTet = tet;
+    }
+
+    /**
+     * Sorts n of the given positions, from start, into Morton order.
+     *
+     * @return The sorted keys, whose low bits are each position's offset from
+     *         start. Only valid until the next call.
+     */
+    private long[] _mortonOrder( double[] pos, int start, int n ){
+        if( m_locateOrder.length < n )
+            m_locateOrder = new long[ n + n / 4 ];
+        long[] order = m_locateOrder;
+        double scale = (1 << MORTON_BITS) / (2.02 * m_planetRadius);
+        for( int k = 0; k < n; k++ ){
+            int q = 3 * (start + k);
+            long key = _spreadBits( _mortonCell( pos[q], scale ) )
+                    | (_spreadBits( _mortonCell( pos[q + 1], scale ) ) << 1)
+                    | (_spreadBits( _mortonCell( pos[q + 2], scale ) ) << 2);
+            order[k] = (key << 24) | k;
+        }
+        Arrays.sort( order, 0, n );
+        return order;
+    }
+
+    private static int _mortonCell( double v, double scale ){
+        int cell = (int)((v * scale) + (1 << (MORTON_BITS - 1)));
+        return cell < 0 ? 0 : Math.min( cell, (1 << MORTON_BITS) - 1 );
+    }
+
+    // Spreads the low MORTON_BITS bits of v out to every third bit
+    private static long _spreadBits( int v ){
+        long out = 0;
+        for( int bit = 0; bit < MORTON_BITS; bit++ )
+            out |= (long)((v >> bit) & 1) << (3 * bit);
+        return out;
+    }
+
+    /**
+     * @return The other tet sharing the edge p1-p2 with the given one, or null
+     *         if there isn't one.
+     */
+    private Tet _neighbourTet( Tet tet, TecPoint p1, TecPoint p2 ){
+        ArrayList tets = _getPointTets( p1 );
+        for( int i = 0; i < tets.size(); i++ ){
+            Tet t = (Tet)tets.get( i );
+            if( t != tet && t.uses( p2 ) )
+                return t;
         }
         return null;
     }
@@ -2615,64 +3645,111 @@ public class World {
         return TecPoint.seaLevel;
     }
 
+    /**
+     * Buckets every tet afresh, with cells sized to suit the current mean edge
+     * length, and starts the getTet() counts again.
+     */
     private void resetTetGridSystem(){
-        for( int i = 0; i < m_tetGridSize; i++ ){
-            for( int i_548_ = 0; i_548_ < m_tetGridSize; i_548_++ ){
-                for( int i_549_ = 0; i_549_ < m_tetGridSize; i_549_++ )
-                    m_tetGridBox[i][i_548_][i_549_] = null;
+        m_tetLookups = m_tetWalkMisses = m_tetFallbackScans = 0;
+        m_tetShellDepth = 0;
+        if( m_tets.size() > 0 ){
+            SphereGrid cells = new SphereGrid( m_planetRadius, 2 * _meanEdgeLength() );
+            if( cells.getSize() != m_tetCells.getSize() ){
+                m_tetCells = cells;
+                m_tetGridBox = new HashSet[ m_tetCells.getNumCells() ];
             }
         }
+        Arrays.fill( m_tetGridBox, null );
         for( int i = 0; i < m_tets.size(); i++ )
             gridBoxAdd( (Tet)m_tets.get( i ) );
     }
 
-    private int getTetGridBoxX( double d ){
-        return (int)Math.rint( (d + m_planetRadius) * (double)(m_tetGridSize - 1) / (m_planetRadius * 2.0) );
-    }
-
-    private int getTetGridBoxY( double d ){
-        return (int)Math.rint( (d + m_planetRadius) * (double)(m_tetGridSize - 1) / (m_planetRadius * 2.0) );
+    /**
+     * @return The mean length of the tets' surface edges.
+     */
+    private double _meanEdgeLength(){
+        double sum = 0;
+        for( int i = 0; i < m_tets.size(); i++ ){
+            Tet tet = (Tet)m_tets.get( i );
+            sum += Math.sqrt( m_pointStore.distanceSquared( tet.b.getIndex(), tet.c.getIndex() ) )
+                 + Math.sqrt( m_pointStore.distanceSquared( tet.c.getIndex(), tet.d.getIndex() ) )
+                 + Math.sqrt( m_pointStore.distanceSquared( tet.d.getIndex(), tet.b.getIndex() ) );
+        }
+        return sum / (3 * m_tets.size());
     }
 
-    private int getTetGridBoxZ( double d ){
-        return (int)Math.rint( (d + m_planetRadius) * (double)(m_tetGridSize - 1) / (m_planetRadius * 2.0) );
+    /**
+     * Buckets a tet in every cell its surface triangle might overlap.
+     */
+    public void gridBoxAdd( Tet tet ){
+        // Use a cap round the centroid big enough to hold all three corners,
+        // and keep it with the tet for when it is taken out again
+        double cx = (tet.b.getX() + tet.c.getX() + tet.d.getX()) / 3;
+        double cy = (tet.b.getY() + tet.c.getY() + tet.d.getY()) / 3;
+        double cz = (tet.b.getZ() + tet.c.getZ() + tet.d.getZ()) / 3;
+        double distSq = Math.max( m_pointStore.distanceSquared( tet.b.getIndex(), cx, cy, cz ),
+                Math.max( m_pointStore.distanceSquared( tet.c.getIndex(), cx, cy, cz ),
+                          m_pointStore.distanceSquared( tet.d.getIndex(), cx, cy, cz ) ) );
+        double angle = SphereGrid.capAngle( cx, cy, cz, Math.sqrt( distSq ) );
+        tet.setCellCap( cx, cy, cz, angle );
+        _bucketTet( tet, cx, cy, cz, angle, true );
     }
 
-    public void gridBoxAdd( Tet tet ){
-        int i = getTetGridBoxX( tet.b.getPos().x );
-        int i_550_ = getTetGridBoxY( tet.b.getPos().y );
-        int i_551_ = getTetGridBoxZ( tet.b.getPos().z );
-        try {
-            if( m_tetGridBox[i][i_550_][i_551_] == null )
-                m_tetGridBox[i][i_550_][i_551_] = new HashSet( 100 );
-            m_tetGridBox[i][i_550_][i_551_].add( tet );
-        }
-        catch( Exception exception ){
-            System.out.println( "Problem adding to tetGridBox[" + i + "][" + i_550_ + "][" + i_551_ + "] :" + exception );
-            System.out.println( "Point was " + tet.b.getPos().x + "," + tet.b.getPos().y + "," + tet.b.getPos().z );
-            System.out.println( "PlanetRadius=" + m_planetRadius + ", tetGridSize=" + m_tetGridSize );
-            exception.printStackTrace( System.out );
-            System.exit( 1 );
+    // Adds the tet to, or removes it from, each cell overlapped by the cap
+    private void _bucketTet( Tet tet, double cx, double cy, double cz, double angle, boolean add ){
+        for( int face = 0; face < 6; face++ ){
+            long range = m_tetCells.faceRange( face, cx, cy, cz, angle );
+            if( range < 0 )
+                continue;
+            for( int row = SphereGrid.firstRow( range ); row <= SphereGrid.lastRow( range ); row++ ){
+                for( int column = SphereGrid.firstColumn( range ); column <= SphereGrid.lastColumn( range ); column++ ){
+                    int cell = m_tetCells.cellIndex( face, row, column );
+                    if( add ){
+                        if( m_tetGridBox[cell] == null )
+                            m_tetGridBox[cell] = new HashSet( 32 );
+                        m_tetGridBox[cell].add( tet );
+                    }
+                    else if( m_tetGridBox[cell] != null )
+                        m_tetGridBox[cell].remove( tet );
+                }
+            }
         }
     }
 
     private HashSet getTetGridBox( Point3d point3d ){
-        int i = getTetGridBoxX( point3d.x );
-        int i_552_ = getTetGridBoxY( point3d.y );
-        int i_553_ = getTetGridBoxZ( point3d.z );
-        return m_tetGridBox[i][i_552_][i_553_];
+        return m_tetGridBox[ m_tetCells.cell( point3d.x, point3d.y, point3d.z ) ];
+    }
+
+    /**
+     * @return The number of rings of cells round any point it takes to cover
+     *         the whole planet; see tetsSurrounding().
+     */
+    private int _numTetRings(){
+        return (int)Math.ceil( 1.0 / m_tetCells.getCellAngle() ) + 1;
     }
 
+    /**
+     * Finds the tets in the i'th ring of cells around a position: ring 0 is
+     * the cell the position is in, ring 1 the cells around that, and so on.
+     */
     public HashSet tetsSurrounding( Point3d point3d, int i ){
         HashSet out = new HashSet( 100 );
-        int x = getTetGridBoxX( point3d.x );
-        int y = getTetGridBoxY( point3d.y );
-        int z = getTetGridBoxZ( point3d.z );
-        for( int dx = -i; dx <= i; dx++ ){
-            for( int dy = -i; dy <= i; dy++ ){
-                for( int dz = -i; dz <= i; dz++ ){
-                    if( x + dx >= 0 && x + dx < m_tetGridSize && y + dy >= 0 && y + dy < m_tetGridSize && z + dz >= 0 && z + dz < m_tetGridSize && (m_tetGridBox[x + dx][y + dy][z + dz]) != null && (dx <= -i || dx >= i || dy <= -i || dy >= i || dz <= -i || dz >= i) )
-                        out.addAll( m_tetGridBox[x + dx][y + dy][z + dz] );
+        double cellAngle = m_tetCells.getCellAngle();
+        for( int face = 0; face < 6; face++ ){
+            long range = m_tetCells.faceRange( face, point3d.x, point3d.y, point3d.z, i * cellAngle );
+            if( range < 0 )
+                continue;
+            long inner = i == 0 ? -1 : m_tetCells.faceRange( face, point3d.x, point3d.y, point3d.z, (i - 1) * cellAngle );
+            for( int row = SphereGrid.firstRow( range ); row <= SphereGrid.lastRow( range ); row++ ){
+                for( int column = SphereGrid.firstColumn( range ); column <= SphereGrid.lastColumn( range ); column++ ){
+                    // Skip the cells the inner rings have already covered
+                    if( inner >= 0
+                            && row >= SphereGrid.firstRow( inner ) && row <= SphereGrid.lastRow( inner )
+                            && column >= SphereGrid.firstColumn( inner ) && column <= SphereGrid.lastColumn( inner ) )
+                        continue;
+                    HashSet cell = m_tetGridBox[ m_tetCells.cellIndex( face, row, column ) ];
+                    if( cell != null )
+                        out.addAll( cell );
                 }
             }
         }
@@ -2680,11 +3757,14 @@ public class World {
     }
 
     public void removeTet( Tet tet ){
-        m_tets.remove( tet );
-        getTetGridBox( tet.b.getPos() ).remove( tet );
-        m_linkSystem.removeLink( tet.b, tet.c );
-        m_linkSystem.removeLink( tet.d, tet.c );
-        m_linkSystem.removeLink( tet.b, tet.d );
+        _removeTet( tet );
+        // Take it out of the cells it was put in, not the ones its corners
+        // would pick now they've moved
+        double angle = tet.getCellCapAngle();
+        if( angle >= 0 ){
+            _bucketTet( tet, tet.getCellCapX(), tet.getCellCapY(), tet.getCellCapZ(), angle, false );
+            tet.setCellCap( 0, 0, 0, -1 );
+        }
     }
 
     public Vector3d getRandomVector(){
@@ -2717,6 +3797,7 @@ public class World {
             double adjustedLon   = lon + Math.random();
 
             TecPoint tecPoint = new TecPoint(
+                this,
                 adjustedAngle,
                 adjustedLon,
                 m_planetRadius,
@@ -2804,10 +3885,13 @@ public class World {
      * @throws IOException
      *
      * @param filename The name of the file to read.
+     * @param topology Given the file's tet corners and link counts, as read
+     *                 by _restoreTopology(), or left empty for a file saved
+     *                 without them.
      *
      * @return The number of plates specified in the file.
      */
-    private int _readFile( String filename )
+    private int _readFile( String filename, int[][] topology )
             throws FileNotFoundException, IOException {
         DataInputStream data = new DataInputStream( new FileInputStream( filename ) );
         // Load the epoch, planet radius, and point spacing first.
@@ -2822,6 +3906,7 @@ public class World {
         }
 
         // Load mantle points and flow strength
+        m_mantleFlowVersion++;
         m_numMantlePoints    = data.readInt();
         m_mantleFlowStrength = new double[m_numMantlePoints];
         m_mantlePoint        = new Point3d[m_numMantlePoints];
@@ -2854,6 +3939,7 @@ public class World {
         // Load the point data
         m_points = new ArrayList();
         int numPoints = data.readInt();
+        m_pointStore = new PointStore( numPoints, m_singlePrecision );
         for( int i = 0; i < numPoints; ++i ){
             TecPoint tecpoint = new TecPoint(
                 this,               // Owning world
@@ -2876,6 +3962,24 @@ public class World {
             // Finally, add the point.
             addPoint( tecpoint );
         }
+
+        // Then the triangulation, if the file was saved with one
+        int tag = 0;
+        try {
+            tag = data.readInt();
+        }
+        catch( EOFException e ){
+        }
+        if( tag == TOPOLOGY_TAG ){
+            int[] corners = new int[ 3 * data.readInt() ];
+            for( int i = 0; i < corners.length; ++i )
+                corners[i] = data.readInt();
+            int[] links = new int[ 3 * data.readInt() ];
+            for( int i = 0; i < links.length; ++i )
+                links[i] = data.readInt();
+            topology[0] = corners;
+            topology[1] = links;
+        }
         data.close();
         return numPlates;
     }
@@ -2937,10 +4041,88 @@ public class World {
             data.writeDouble( point.getRockThickness() );
             data.writeDouble( point.getDensity() );
         }
+
+        // Then the triangulation, by point number, so loading needn't redo it
+        data.writeInt( TOPOLOGY_TAG );
+        data.writeInt( m_tets.size() );
+        for( int i = 0; i < m_tets.size(); ++i ){
+            Tet tet = (Tet)m_tets.get( i );
+            data.writeInt( tet.b.getListIndex() );
+            data.writeInt( tet.c.getListIndex() );
+            data.writeInt( tet.d.getListIndex() );
+        }
+        data.writeInt( m_linkSystem.size() );
+        Iterator links = m_linkSystem.getIterator();
+        while( links.hasNext() ){
+            LinkPair lp = (LinkPair)links.next();
+            data.writeInt( lp.getA().getListIndex() );
+            data.writeInt( lp.getB().getListIndex() );
+            data.writeInt( lp.getCount() );
+        }
         m_altered = false;
         data.close();
     }
 
+    /**
+     * Puts back the tets saved in a world file, instead of triangulating the
+     * points again; their links come back with them. The saved link counts
+     * are checked against the links the tets make, in case the tets don't
+     * belong with the points. They are then checked for being Delaunay, all
+     * at once on the fork/join pool, and the points of any which aren't are
+     * marked invalid for the next redelaunay() to mend.
+     *
+     * @param corners The points of each tet, three numbers per tet.
+     * @param links   The points and count of each link, three numbers per
+     *                link.
+     *
+     * @return Whether the tets were put back. If not, there are none.
+     */
+    private boolean _restoreTopology( int[] corners, int[] links ){
+        m_pointGrid.rebuild( m_points );
+        m_planetCenter = new TecPoint( 0.0, 0.0, 0.0, m_epoch );
+        _clearTets();
+        m_linkSystem = new LinkSystem();
+        int numPoints = m_points.size();
+        boolean ok = corners.length == 3 * (2 * numPoints - 4);
+        for( int i = 0; ok && i < corners.length; i += 3 ){
+            int b = corners[i], c = corners[i + 1], d = corners[i + 2];
+            ok = b >= 0 && b < numPoints && c >= 0 && c < numPoints && d >= 0 && d < numPoints
+                    && b != c && c != d && b != d;
+            if( ok )
+                _addTet( new Tet( m_planetCenter, getPoint( b ), getPoint( c ), getPoint( d ) ) );
+        }
+        ok = ok && m_linkSystem.size() == links.length / 3;
+        for( int i = 0; ok && i < links.length; i += 3 ){
+            int a = links[i], b = links[i + 1];
+            ok = a >= 0 && a < numPoints && b >= 0 && b < numPoints
+                    && m_linkSystem.getCount( getPoint( a ), getPoint( b ) ) == links[i + 2];
+        }
+        if( !ok ){
+            System.out.println( "The saved tets don't fit the points." );
+            _clearTets();
+            m_linkSystem = new LinkSystem();
+            return false;
+        }
+        m_tetStore.calcAll();
+        calculateAreas();
+
+        // The tets were Delaunay for these points when they were saved, but
+        // check them all the same. Only the points of any that aren't need
+        // looking at again by the first redelaunay().
+        ArrayList invalidTets = _findInvalidTets( m_tets );
+        for( int i = 0; i < numPoints; ++i )
+            getPoint( i ).setValid( true );
+        for( int i = 0; i < invalidTets.size(); ++i ){
+            Tet tet = (Tet)invalidTets.get( i );
+            tet.b.setValid( false );
+            tet.c.setValid( false );
+            tet.d.setValid( false );
+        }
+        if( invalidTets.size() > 0 )
+            System.out.println( invalidTets.size() + " of the saved tets need mending." );
+        return true;
+    }
+
     /**
      * Creates a new save file that doesn't exist on disc yet.
      */
@@ -2999,40 +4181,44 @@ public class World {
 
         // While they're fresh, check for any plates which have fragmented (Thanks to Jeremy Hussell for this bit, which is faster than my version was)
         boolean foundBadness = false;
+        LinkGraph graph = getLinkGraph();
+        boolean[] reached = new boolean[ m_pointStore.size() ];
+        int[] queue = new int[ m_pointStore.size() ];
         for( int i = 0; i < m_plates.size(); i++ ){
             TecPlate tecplate = (TecPlate)m_plates.get( i );
-            HashSet tempPoints = new HashSet( tecplate.getPoints() );
-            LinkedList addedPoints = new LinkedList();
-            TecPoint tecpoint = tecplate.getPoint( 0 );
-            addedPoints.add( tecpoint );
-            tempPoints.remove( tecpoint );
-            while( !addedPoints.isEmpty() ){
-                tecpoint = (TecPoint)addedPoints.removeFirst();
-                ArrayList linkedPoints = (ArrayList)m_linkSystem.getPointLinks( tecpoint );
-                if( linkedPoints != null )
-                    for( int j = 0; j < linkedPoints.size(); j++ ){
-                        TecPoint tp = (TecPoint)linkedPoints.get( j );
-                        if( tp.getPlate() == tecplate && tempPoints.remove( tp ) )
-                            addedPoints.add( tp );
+            ArrayList platePoints = tecplate.getPoints();
+            int plateId = tecplate.getId();
+            int head = 0, tail = 0;
+            queue[tail++] = tecplate.getPoint( 0 ).getIndex();
+            reached[queue[0]] = true;
+            while( head < tail ){
+                int index = queue[head++];
+                for( int j = graph.getStart( index ); j < graph.getEnd( index ); j++ ){
+                    int linked = graph.getNeighbour( j );
+                    if( !reached[linked] && m_pointStore.getPlateId( linked ) == plateId ){
+                        reached[linked] = true;
+                        queue[tail++] = linked;
                     }
+                }
             }
             // OK, we've moved all the ones linked to the original point. Are there any left?
-            if( tempPoints.size() > 0 ){
+            if( tail < platePoints.size() ){
                 // Yes, there are! The plate must be fragmented.
                 System.out.println( "Fragmented plate, splitting into 2." );
                 foundBadness = true;
                 // Give one set of the points a new plate
-                TecPlate newPlate = new TecPlate( tecplate.getPos().x, tecplate.getPos().y, tecplate.getPos().z );
-                addPlate( newPlate );
-                Iterator iter = tempPoints.iterator();
-                while( iter.hasNext() ){
-                    TecPoint tp = (TecPoint)iter.next();
-                    tp.setPlate( newPlate );
-                }
+                final boolean[] reachedPoints = reached;
+                TecPlate newPlate = splitPlate( tecplate, new PointFilter() {
+                    public boolean accept( TecPoint point ){
+                        return !reachedPoints[point.getIndex()];
+                    }
+                } );
                 newPlate.center();
                 newPlate.linkRemoved = false;
                 tecplate.center();
             }
+            for( int j = 0; j < tail; j++ )
+                reached[queue[j]] = false;
             tecplate.linkRemoved = false;
         }
 
@@ -3055,6 +4241,7 @@ public class World {
             tecPlate.move();
             tecPlate.resetForces();
         }
+        m_pointGrid.update( m_points );
 
         // Invalidate every edge point
         Iterator iterator = m_linkSystem.getIterator();
@@ -3090,11 +4277,12 @@ public class World {
                     if( firstPoint.getPlate().getPoint( i ).lms == -1 && firstPoint.getPlate().getPoint( i ).isContinental() )
                         possiblePoints.add( firstPoint.getPlate().getPoint( i ) );
                 for( int i = 0; i < lms.size(); i++ ){
-                    HashSet pointsToAdd = m_linkSystem.getLinkedPoints( (TecPoint)lms.get( i ), pointsSurrounding( ((TecPoint)lms.get( i )).getPos() ) );
-                    Iterator iter = pointsToAdd.iterator();
-                    while( iter.hasNext() ){
-                        nextPoint = (TecPoint)iter.next();  //pointsToAdd.get(j);
-                        if( nextPoint.lms == -1 && possiblePoints.contains( nextPoint ) ){
+                    TecPoint lmsPoint = (TecPoint)lms.get( i );
+                    PointGrid.Collector nearby = pointsSurrounding( lmsPoint.getPos() );
+                    for( int j = 0; j < nearby.size(); j++ ){
+                        nextPoint = nearby.getPoint( j );
+                        if( nextPoint != lmsPoint && nextPoint.lms == -1 && possiblePoints.contains( nextPoint )
+                                && m_linkSystem.getCount( lmsPoint, nextPoint ) > 0 ){
                             possiblePoints.remove( nextPoint );
                             lms.add( nextPoint );
                             nextPoint.lms = landMassSections.size() - 1;
@@ -3174,8 +4362,15 @@ public class World {
             }
         }
 
-        // Do the actual subduction
-        for( int i = 0; i < subductionLinks.size(); i++ ){
+        // Do the actual subduction. First work out which points subduct, and
+        // in which direction, then kill them all in one go before spreading
+        // the effects around.
+        int numSubductions = subductionLinks.size();
+        TecPoint[] subductingPoints = new TecPoint[numSubductions];
+        TecPoint[] overridingPoints = new TecPoint[numSubductions];
+        Vector3d[] subductionDirs   = new Vector3d[numSubductions];
+        HashSet dyingPoints = new HashSet();
+        for( int i = 0; i < numSubductions; i++ ){
             LinkPair linkpair = (LinkPair)subductionLinks.get( i );
             TecPoint tecpoint = linkpair.getA();
             TecPoint tecpoint2 = linkpair.getB();
@@ -3188,15 +4383,13 @@ public class World {
                 op = tecpoint2;
                 cp = tecpoint;
             }
-            TecPlate tecplate = op.getPlate();  //  Oceanic plate
-            TecPlate tecplate2 = cp.getPlate(); // Continental plate   (not necessarily true, but reflects which one gets subducted and which one overrides)
             // Before we kill the point (removing all its linking info, etc), we need to find out which direction it subducted in!
             Vector3d subDir = new Vector3d();
             ArrayList linkPoints = m_linkSystem.getPointLinks( op );
             // Add the vector of the link from each point (on the same plate) to the subducting point. This will give the vague direction of subduction (away from the edge of the plate)
-            for( int j = 0; j < linkPoints.size(); j++ ){
+            for( int j = 0; linkPoints != null && j < linkPoints.size(); j++ ){
                 TecPoint tp = (TecPoint)linkPoints.get( j );
-                if( tp.getPlate() == op.getPlate() ){
+                if( tp.getPlate() == op.getPlate() && !dyingPoints.contains( tp ) ){
                     subDir.sub( tp.getPos() );
                     subDir.add( op.getPos() );
                 }
@@ -3206,67 +4399,90 @@ public class World {
                 subDir.normalize();
                 subDir.scale( 100 );
             }
-            // _Now_ kill it
-            killPoint( op );
-
-            // Vulcanism in the overriding (continental) plate
-            // Spread the layer over nearby (400km) points
-            double thickness = 1.2; //(op.getDepth() * op.getSize() * op.getSize() / 500000.0);   // How thick a layer of rock to add
-            System.out.println( "Adding rock layer of thickness " + thickness + "km" );
-            for( int i_169_ = 0; i_169_ < tecplate2.getPoints().size(); i_169_++ ){
-                TecPoint temppoint = (TecPoint)tecplate2.getPoints().get( i_169_ );
-                double dist = cp.getPos().distance( temppoint.getPos() );
-                if( dist < 400.0 ){
+            subductingPoints[i] = op;
+            overridingPoints[i] = cp;
+            subductionDirs[i]   = subDir;
+            dyingPoints.add( op );
+        }
+        // _Now_ kill them
+        killPoints( dyingPoints );
+
+        // Spread the effects of the subductions over the points near them, in
+        // one pass per distance for all the subductions together
+        final TecPlate[] subductingPlates = new TecPlate[numSubductions];  // Oceanic plates
+        final TecPlate[] overridingPlates = new TecPlate[numSubductions];  // Continental plates (not necessarily true, but reflects which one gets subducted and which one overrides)
+        Point3d[] subductingPos = new Point3d[numSubductions];
+        Point3d[] overridingPos = new Point3d[numSubductions];
+        for( int i = 0; i < numSubductions; i++ ){
+            subductingPlates[i] = subductingPoints[i].getPlate();
+            overridingPlates[i] = overridingPoints[i].getPlate();
+            subductingPos[i] = subductingPoints[i].getPos();
+            overridingPos[i] = overridingPoints[i].getPos();
+        }
+
+        // Vulcanism in the overriding (continental) plate: spread a layer over
+        // nearby (400km) points, and push them up
+        final double thickness = 1.2; //(op.getDepth() * op.getSize() * op.getSize() / 500000.0);   // How thick a layer of rock to add
+        if( numSubductions > 0 )
+            System.out.println( "Adding rock layers of thickness " + thickness + "km at " + numSubductions + " subductions" );
+        withinRadius( overridingPos, numSubductions, 400.0, new RadiusVisitor() {
+            public void visit( TecPoint temppoint, int i, double dist ){
+                if( temppoint.getPlate() == overridingPlates[i] ){
                     temppoint.addLayer( thickness * (1.0 - dist / 400.0), 2.7 );  // Volcanic rocks are lighter than oceanic basalt
+                    temppoint.addBaseDepthOffset( 0.2 * (1.0 - dist / 400.0) );
                 }
             }
-
-            // Cause pull-down on the subducted plate
-            if( subDir.length() > 0 ){
-                for( int i_172_ = 0; i_172_ < tecplate.getPoints().size(); i_172_++ ){
-                    TecPoint temppoint = (TecPoint)tecplate.getPoints().get( i_172_ );
-                    double dist = op.getPos().distance( temppoint.getPos() );
-                    if( dist < 200.0 ){
-                        temppoint.addBaseDepthOffset( -2.0 * (1.0 - dist / 200.0) );
-                        // Also add slab-pull, a force which drags nearby points (on the subducting plate) down in the same direction as the subducting point
-                        temppoint.collisionForce.add( subDir );
-                    }
-                }
-                // Cause even wider pull-down along the boundary of the plate
-                for( int i_172_ = 0; i_172_ < tecplate.getPoints().size(); i_172_++ ){
-                    TecPoint temppoint = (TecPoint)tecplate.getPoints().get( i_172_ );
-                    if( edgePoints.contains( temppoint ) ){
-                        double dist = op.getPos().distance( temppoint.getPos() );
-                        if( dist < 1500.0 ){
-                            temppoint.addBaseDepthOffset( -1.0 * (1.0 - dist / 1500.0) );
-                        }
-                    }
-                }
-            }
-
-            // And push-up on the overthrusting plate
-            for( int i_175_ = 0; i_175_ < tecplate2.getPoints().size(); i_175_++ ){
-                TecPoint temppoint = (TecPoint)tecplate2.getPoints().get( i_175_ );
-                double dist = cp.getPos().distance( temppoint.getPos() );
-                if( dist < 400.0 )
-                    temppoint.addBaseDepthOffset( 0.2 * (1.0 - dist / 400.0) );
+        } );
+
+        // Cause pull-down on the subducted plate, where we know which way it
+        // went down
+        final Vector3d[] pullDirs = new Vector3d[numSubductions];
+        final TecPlate[] pullPlates = new TecPlate[numSubductions];
+        Point3d[] pullPos = new Point3d[numSubductions];
+        int numPulls = 0;
+        for( int i = 0; i < numSubductions; i++ ){
+            if( subductionDirs[i].length() > 0 ){
+                pullDirs[numPulls] = subductionDirs[i];
+                pullPlates[numPulls] = subductingPlates[i];
+                pullPos[numPulls++] = subductingPos[i];
             }
-            // Cause even wider push-up along the boundary of the plate
-            for( int i_172_ = 0; i_172_ < tecplate2.getPoints().size(); i_172_++ ){
-                TecPoint temppoint = (TecPoint)tecplate2.getPoints().get( i_172_ );
-                if( edgePoints.contains( temppoint ) ){
-                    double dist = cp.getPos().distance( temppoint.getPos() );
-                    if( dist < 1500.0 ){
-                        temppoint.addBaseDepthOffset( 0.1 * (1.0 - dist / 1500.0) );
-                    }
+        }
+        withinRadius( pullPos, numPulls, 200.0, new RadiusVisitor() {
+            public void visit( TecPoint temppoint, int i, double dist ){
+                if( temppoint.getPlate() == pullPlates[i] ){
+                    temppoint.addBaseDepthOffset( -2.0 * (1.0 - dist / 200.0) );
+                    // Also add slab-pull, a force which drags nearby points (on the subducting plate) down in the same direction as the subducting point
+                    temppoint.collisionForce.add( pullDirs[i] );
                 }
             }
-        }
+        } );
+
+        // Cause even wider pull-down along the boundary of the subducted
+        // plate, and push-up along the boundary of the overthrusting one
+        final TecPlate[] edgePlates = new TecPlate[numPulls + numSubductions];
+        final double[] edgeOffsets = new double[numPulls + numSubductions];
+        Point3d[] edgePos = new Point3d[numPulls + numSubductions];
+        for( int i = 0; i < numPulls; i++ ){
+            edgePlates[i] = pullPlates[i];
+            edgeOffsets[i] = -1.0;
+            edgePos[i] = pullPos[i];
+        }
+        for( int i = 0; i < numSubductions; i++ ){
+            edgePlates[numPulls + i] = overridingPlates[i];
+            edgeOffsets[numPulls + i] = 0.1;
+            edgePos[numPulls + i] = overridingPos[i];
+        }
+        final HashSet boundary = edgePoints;
+        withinRadius( edgePos, edgePos.length, 1500.0, new RadiusVisitor() {
+            public void visit( TecPoint temppoint, int i, double dist ){
+                if( temppoint.getPlate() == edgePlates[i] && boundary.contains( temppoint ) )
+                    temppoint.addBaseDepthOffset( edgeOffsets[i] * (1.0 - dist / 1500.0) );
+            }
+        } );
 
         // Fade the baseDepthOffset on all the points
         System.out.println( "Fading baseDepthOffset" );
-        for( int i = 0; i < m_points.size(); i++ )
-            getPoint( i ).scaleBaseDepthOffset( 0.99 );
+        m_pointStore.scaleBaseDepthOffsets( 0.99 );
 
         // Check for inverted triangles
         int invCount = 0;
@@ -3287,17 +4503,17 @@ public class World {
         ArrayList links = new ArrayList( m_linkSystem.getCollection() );
         for( int i = 0; i < links.size(); i++ ){
             LinkPair link = (LinkPair)links.get( i );
-            link.pushForce = 0;
+            link.setPushForce( 0 );
         }
+        m_pointStore.clearForces();  // Clear the old FEA forces
         for( int r = 0; r < m_points.size(); r++ ){
-            getPoint( r ).FEAforce.set( 0, 0, 0 );  // Clear the old FEA forces
             getPoint( r ).collisionForce.scale( 0.7 );  // Fade the old collision forces
         }
         // Make sure that only plate-crossing links are "broken"
         for( int i = 0; i < links.size(); i++ ){
             LinkPair link = (LinkPair)links.get( i );
-            link.broken = false;
-            link.plateCrosser = (link.getA().getPlate() != link.getB().getPlate());
+            link.setBroken( false );
+            link.setPlateCrosser( (link.getA().getPlate() != link.getB().getPlate()) );
         }
 
         // Make a vector of the links inside each plate
@@ -3309,7 +4525,7 @@ public class World {
             lp = (LinkPair)links.get( j );
             if( lp.getA().getPlate() == lp.getB().getPlate() && getPlateNum( lp.getA().getPlate() ) != -1 ){
                 plVecs[getPlateNum( lp.getA().getPlate() )].add( lp );
-                lp.linkWidth = m_linkSystem.linkWidth( lp );
+                lp.setLinkWidth( m_linkSystem.linkWidth( lp ) );
             }
         }
 
@@ -3339,8 +4555,8 @@ public class World {
                         // Estimate the _width_ of the link. Use the sqrt of the average area of the 2 points
                         //double linkWidth=Math.pow((lp.getA().getArea()+lp.getB().getArea())/2,0.5);
                         //if (lp.pushForce<0) {aveForce+=lp.pushForce/lp.linkWidth; lc++;}
-                        if( !lp.broken && lp.pushForce < -currentBreakForce * lp.linkWidth * plateExp ){    // This test needs making better. Needs to vary with rock type+thickness.
-                            lp.broken = true;
+                        if( !lp.isBroken() && lp.getPushForce() < -currentBreakForce * lp.getLinkWidth() * plateExp ){    // This test needs making better. Needs to vary with rock type+thickness.
+                            lp.setBroken( true );
                             lp.removeFromFEA();
                             brokeMoreLinks = true;
 //System.out.println("Broke a link");
@@ -3358,13 +4574,14 @@ public class World {
                         // Expand the broken areas
                         for( int l = 0; l < plateLinks.size(); l++ ){
                             lp = (LinkPair)plateLinks.get( l );
-                            if( lp.broken ){
-                                ArrayList linksFromA = m_linkSystem.getPointLinks( lp.getA() );
-                                for( int r = 0; r < linksFromA.size(); r++ )
-                                    ((TecPoint)linksFromA.get( r )).broken = true;
-                                ArrayList linksFromB = m_linkSystem.getPointLinks( lp.getB() );
-                                for( int r = 0; r < linksFromB.size(); r++ )
-                                    ((TecPoint)linksFromB.get( r )).broken = true;
+                            if( lp.isBroken() ){
+                                LinkGraph graph = getLinkGraph();
+                                int a = lp.getA().getIndex();
+                                for( int r = graph.getStart( a ); r < graph.getEnd( a ); r++ )
+                                    graph.getNeighbourPoint( r ).broken = true;
+                                int b = lp.getB().getIndex();
+                                for( int r = graph.getStart( b ); r < graph.getEnd( b ); r++ )
+                                    graph.getNeighbourPoint( r ).broken = true;
                             }
                         }
                         // Find an unbroken TecPoint to start from...
@@ -3396,15 +4613,13 @@ public class World {
                             // Clear the old FEA data
                             for( int i2 = 0; i2 < links.size(); i2++ ){
                                 LinkPair link = (LinkPair)links.get( i2 );
-                                link.pushForce = 0;
-                            }
-                            for( int r2 = 0; r2 < m_points.size(); r2++ ){
-                                getPoint( r2 ).FEAforce.set( 0, 0, 0 );  // Clear the old FEA forces
+                                link.setPushForce( 0 );
                             }
+                            m_pointStore.clearForces();  // Clear the old FEA forces
                             // Make sure that only plate-crossing links are "broken"
                             for( int i2 = 0; i2 < links.size(); i2++ ){
                                 LinkPair link = (LinkPair)links.get( i2 );
-                                link.broken = false;
+                                link.setBroken( false );
                             }
                             // Put the links back
                             plateLinks = plVecs[i];
@@ -3464,15 +4679,18 @@ public class World {
         while( iter.hasNext() ){
             TecPlate innerPlate = (TecPlate)iter.next();
             TecPlate outerPlate = (TecPlate)linkedPlate.get( innerPlate );
-            while( innerPlate.getPoints().size() > 0 && outerPlate != null ){
-                TecPoint tecPoint = innerPlate.getPoint( 0 );
-                tecPoint.setPlate( outerPlate );
-                ArrayList linkedPoints = m_linkSystem.getPointLinks( tecPoint );
-                for( int j = 0; j < linkedPoints.size(); j++ ){
-                    m_linkSystem.getLinkPair( tecPoint, (TecPoint)linkedPoints.get( j ) ).plateCrosser = false;
+            if( outerPlate != null ){
+                for( int i = 0; i < innerPlate.getPoints().size(); i++ ){
+                    TecPoint tecPoint = innerPlate.getPoint( i );
+                    ArrayList linkedPoints = m_linkSystem.getPointLinks( tecPoint );
+                    for( int j = 0; j < linkedPoints.size(); j++ ){
+                        m_linkSystem.getLinkPair( tecPoint, (TecPoint)linkedPoints.get( j ) ).setPlateCrosser( false );
+                    }
                 }
+                mergePlates( innerPlate, outerPlate );
             }
-            m_plates.remove( innerPlate );
+            else
+                m_plates.remove( innerPlate );
         }
     }
 
@@ -3524,10 +4742,7 @@ public class World {
             // And finally do the actual accretion...
             if( bestNeighbour != null ){
                 System.out.println( "Removing tiny plate!" );
-                while( plate.getPoints().size() > 0 ){
-                    plate.getPoint( 0 ).setPlate( bestNeighbour );
-                }
-                m_plates.remove( plate );
+                mergePlates( plate, bestNeighbour );
             }
         }
     }
@@ -3547,16 +4762,19 @@ public class World {
                 plane.cross( middle, getRandomVector() );
                 // OK, got the plane.
                 // Now move all the points on one side of it into a new plate
-                ArrayList newPlatePoints = new ArrayList();
+                final Vector3d planeNormal = plane;
+                PointFilter filter = new PointFilter() {
+                    public boolean accept( TecPoint point ){
+                        return planeNormal.x * point.getX() + planeNormal.y * point.getY() + planeNormal.z * point.getZ() > 0;
+                    }
+                };
+                int newPlatePoints = 0;
                 for( int j = 0; j < getPlate( i ).getPoints().size(); j++ )
-                    if( plane.dot( new Vector3d( getPlate( i ).getPoint( j ).getPos() ) ) > 0 )
-                        newPlatePoints.add( getPlate( i ).getPoint( j ) );
-                if( newPlatePoints.size() > 5 && getPlate( i ).getPoints().size() - newPlatePoints.size() > 5 ){  // Check there are points on both sides!
-                    TecPlate newPlate = new TecPlate( 0, 0, 1 );  // Random position, 'cos we'll recenter it after we've added all the points
-                    for( int j = 0; j < newPlatePoints.size(); j++ )
-                        ((TecPoint)newPlatePoints.get( j )).setPlate( newPlate );
+                    if( filter.accept( getPlate( i ).getPoint( j ) ) )
+                        newPlatePoints++;
+                if( newPlatePoints > 5 && getPlate( i ).getPoints().size() - newPlatePoints > 5 ){  // Check there are points on both sides!
+                    TecPlate newPlate = splitPlate( getPlate( i ), filter );
                     newPlate.center();
-                    addPlate( newPlate );
                 }
             }
         }
@@ -3564,11 +4782,7 @@ public class World {
 
     private void _calcVolumeCaps( double gradientLimitOnLand, double gradientLimitInSea ){
         System.out.print( "Calculating volCaps..." );
-        for( int i = 0; i < m_points.size(); i++ ){
-            TecPoint p = getPoint( i );
-            p.volCap = 10e10;
-            p.volCap2 = 10e10;
-        }
+        m_pointStore.resetVolCaps( 10e10 );
         Iterator it = m_linkSystem.getIterator();
         while( it.hasNext() ){
             LinkPair linkpair = (LinkPair)it.next();
@@ -3589,36 +4803,36 @@ public class World {
             double gradLimit = gradientLimitOnLand;
             if( tecpoint.heightAboveSeaLevel() < 0 )
                 gradLimit = gradientLimitInSea;
-            tecpoint.volCap = Math.min( tecpoint.volCap, tecpoint.getArea() * (diff + gradLimit * dist) );
-            tecpoint.volCap = Math.min( tecpoint.volCap, tecpoint.getArea() * diff );    // Limit due to not wanting tp to grow higher than tp2
-            tecpoint.volCap2 = Math.min( tecpoint.volCap2, tecpoint.getArea() * (diff + gradLimit * dist) );
+            tecpoint.setVolCap( Math.min( tecpoint.getVolCap(), tecpoint.getArea() * (diff + gradLimit * dist) ) );
+            tecpoint.setVolCap( Math.min( tecpoint.getVolCap(), tecpoint.getArea() * diff ) );    // Limit due to not wanting tp to grow higher than tp2
+            tecpoint.setVolCap2( Math.min( tecpoint.getVolCap2(), tecpoint.getArea() * (diff + gradLimit * dist) ) );
             // Calculate limit for tecpoint2
             gradLimit = gradientLimitOnLand;
             if( tecpoint2.heightAboveSeaLevel() < 0 )
                 gradLimit = gradientLimitInSea;
-            tecpoint2.volCap = Math.min( tecpoint2.volCap, tecpoint2.getArea() * (gradLimit * dist - diff) );
-            tecpoint2.volCap = Math.min( tecpoint2.volCap, 0 );  // Can't add any more without getting higher than surrounding points - we're ALREADY higher than them!
-            tecpoint2.volCap2 = Math.min( tecpoint2.volCap2, tecpoint2.getArea() * (gradLimit * dist - diff) );
+            tecpoint2.setVolCap( Math.min( tecpoint2.getVolCap(), tecpoint2.getArea() * (gradLimit * dist - diff) ) );
+            tecpoint2.setVolCap( Math.min( tecpoint2.getVolCap(), 0 ) );  // Can't add any more without getting higher than surrounding points - we're ALREADY higher than them!
+            tecpoint2.setVolCap2( Math.min( tecpoint2.getVolCap2(), tecpoint2.getArea() * (gradLimit * dist - diff) ) );
         }
         System.out.println( "done" );
     }
 
     private void _calcErosion( double moveLimit, double gradientLimitOnLand, double gradientLimitInSea ){
         System.out.print( "Eroding..." );
+        LinkGraph graph = getLinkGraph();
         for( int i = 0; i < m_points.size(); i++ ){
             TecPoint p = getPoint( i );
-            if( p.volCap < 0 ){
+            if( p.getVolCap() < 0 ){
                 // Slice off the excess rock, and make a note of it
-                double liftedVol = Math.min( -p.volCap, moveLimit * p.getArea() );
+                double liftedVol = Math.min( -p.getVolCap(), moveLimit * p.getArea() );
                 liftedVol = Math.min( liftedVol, Math.max( 0, (p.getDepth() - 4) * p.getArea() ) ); // Don't try to erode the plate to be thinner than 4km
                 double liftedDens = p.getDensity();
                 //System.out.println("\nLifting "+liftedVol+"km^3 of rock");
                 p.remove( liftedVol / p.getArea() );  // Remove by height, not volume
                 // Redo the volCap of this point, and all the points linked from it
                 calcVolCap( p, gradientLimitOnLand, gradientLimitInSea );
-                ArrayList linkedPoints = m_linkSystem.getPointLinks( p );
-                for( int j = 0; j < linkedPoints.size(); j++ ){
-                    calcVolCap( (TecPoint)linkedPoints.get( j ), gradientLimitOnLand, gradientLimitInSea );
+                for( int j = graph.getStart( p.getIndex() ); j < graph.getEnd( p.getIndex() ); j++ ){
+                    calcVolCap( graph.getNeighbourPoint( j ), gradientLimitOnLand, gradientLimitInSea );
                 }
                 // Find where to dump the rock
                 int count = 0;
@@ -3626,8 +4840,8 @@ public class World {
                     // Find the lowest point from here
                     TecPoint lowest = p, tempPoint;
                     double lh = p.getSurfaceHeight();
-                    for( int j = 0; j < linkedPoints.size(); j++ ){
-                        tempPoint = (TecPoint)linkedPoints.get( j );
+                    for( int j = graph.getStart( p.getIndex() ); j < graph.getEnd( p.getIndex() ); j++ ){
+                        tempPoint = graph.getNeighbourPoint( j );
                         if( tempPoint.getSurfaceHeight() < lh ){
                             lowest = tempPoint;
                             lh = lowest.getSurfaceHeight();
@@ -3635,35 +4849,32 @@ public class World {
                     }
                     //System.out.println("My height="+p.getSurfaceHeight()+", lh="+lh+", lowest.volCap="+(int)lowest.volCap);
                     // Deal with the lowest point
-                    if( lowest.volCap > 100 ){
+                    if( lowest.getVolCap() > 100 ){
                         // Dump as much rock as poss on the lowest point (without making it higher than surrounding points)
-                        double moveVol = Math.max( 0, Math.min( lowest.volCap, liftedVol ) );
+                        double moveVol = Math.max( 0, Math.min( lowest.getVolCap(), liftedVol ) );
                         lowest.add( moveVol / lowest.getArea(), liftedDens );
                         liftedVol -= moveVol;
                         // Redo the volCap of the lowest point, and all the points linked from it
                         calcVolCap( lowest, gradientLimitOnLand, gradientLimitInSea );
-                        ArrayList linkedPoints2 = m_linkSystem.getPointLinks( lowest );
-                        for( int k = 0; k < linkedPoints2.size(); k++ ){
-                            calcVolCap( (TecPoint)linkedPoints2.get( k ), gradientLimitOnLand, gradientLimitInSea );
+                        for( int k = graph.getStart( lowest.getIndex() ); k < graph.getEnd( lowest.getIndex() ); k++ ){
+                            calcVolCap( graph.getNeighbourPoint( k ), gradientLimitOnLand, gradientLimitInSea );
                         }
                         //System.out.println("Dumped "+moveVol+"km^3 of rock\n"+liftedVol+"km^3 remaining");
                     }
                     else if( Math.abs( lowest.getSurfaceHeight() - p.getSurfaceHeight() ) < 0.01 ){
                         // We're in the bottom of a hole. Drop a pile here, then repeat.
-                        double moveVol = Math.min( Math.max( 0.01 * lowest.getArea(), lowest.volCap2 ), liftedVol ); // Add a 10m thick layer
+                        double moveVol = Math.min( Math.max( 0.01 * lowest.getArea(), lowest.getVolCap2() ), liftedVol ); // Add a 10m thick layer
                         lowest.add( moveVol / lowest.getArea(), liftedDens );
                         liftedVol -= moveVol;
                         // Redo the volCap of the lowest point, and all the points linked from it
                         calcVolCap( lowest, gradientLimitOnLand, gradientLimitInSea );
-                        ArrayList linkedPoints2 = m_linkSystem.getPointLinks( lowest );
-                        for( int k = 0; k < linkedPoints2.size(); k++ ){
-                            calcVolCap( (TecPoint)linkedPoints2.get( k ), gradientLimitOnLand, gradientLimitInSea );
+                        for( int k = graph.getStart( lowest.getIndex() ); k < graph.getEnd( lowest.getIndex() ); k++ ){
+                            calcVolCap( graph.getNeighbourPoint( k ), gradientLimitOnLand, gradientLimitInSea );
                         }
                         //System.out.println("Dropped "+moveVol+"km^3 in a hole\n"+liftedVol+"km^3 remaining");
                     }
                     // Move pointer to lowest point, and repeat
                     p = lowest;
-                    linkedPoints = m_linkSystem.getPointLinks( p );
                     count++;
                 }
                 if( count >= 1000 ){
@@ -3764,6 +4975,23 @@ public class World {
 
     }
 
+    /**
+     * Collects the points of one plate which a withinRadius() query finds.
+     */
+    private static class PlateCollector implements RadiusVisitor {
+        TecPlate plate;
+        ArrayList points = new ArrayList();
+
+        PlateCollector( TecPlate plate ){
+            this.plate = plate;
+        }
+
+        public void visit( TecPoint point, int centre, double distance ){
+            if( point.getPlate() == plate )
+                points.add( point );
+        }
+    }
+
     private void _intercontinentalCollision( TecPoint pointA, TecPoint pointB, double naturalLength, double length, double[] landMassSectionSizes, ArrayList landMassSections, double collisionForce, double squash, double areaLimit ){
         // Squashed link between continental crusts, exert force
         Vector3d vector3d = new Vector3d( pointB.getPos() );
@@ -3802,69 +5030,55 @@ public class World {
         vector3d.sub( positionB );
         vector3d.scale( squash * naturalLength / length );
         double squashSize   = 300.0;
-        double squashSquare = Math.pow( squashSize, 2 );
-
-        // Make a list of all the points we are about to move (in a  HashSet so
-        // we can do .contains(point) really fast)
-        TecPoint[] plateAPoints = (TecPoint[])plateA.getPoints().toArray( new TecPoint[1] );
-        int plateAPointCount    = plateAPoints.length;
-        TecPoint[] plateBPoints = (TecPoint[])plateB.getPoints().toArray( new TecPoint[1] );
-        int plateBPointCount    = plateBPoints.length;
-        HashSet pointSet = new HashSet( plateAPointCount + plateBPointCount );
-        for( int i = 0; i < plateAPointCount; ++i ){
-            TecPoint point = (TecPoint)plateAPoints[i];
-            double dist = pointA.getPos().distanceSquared( point.getPos() );
-            if( dist < squashSquare )
-                pointSet.add( point );
-        }
-        for( int i = 0; i < plateBPointCount; ++i ){
-            TecPoint point = (TecPoint)plateBPoints[i];
-            double dist = positionB.distanceSquared( point.getPos() );
-            if( dist < squashSquare )
-                pointSet.add( point );
-        }
+
+        // Find the points we are about to move: those of each plate within
+        // squashSize of its end of the link
+        PlateCollector squashA = new PlateCollector( plateA );
+        withinRadius( positionA, squashSize, squashA );
+        PlateCollector squashB = new PlateCollector( plateB );
+        withinRadius( positionB, squashSize, squashB );
 
         // Make a list of all the tets which involve any of the points we are
         // about to move
-        ArrayList squishTets = new ArrayList();
-        for( int i = 0; i < m_tets.size(); ++i ){
-            Tet tet = (Tet)m_tets.get( i );
-            TecPlate plate = tet.getPlate();
-            if( plate != plateA && plate != plateB ){
-                continue;
+        HashSet squishTetSet = new HashSet();
+        for( int p = 0; p < squashA.points.size() + squashB.points.size(); ++p ){
+            TecPoint point = (TecPoint)(p < squashA.points.size() ? squashA.points.get( p ) : squashB.points.get( p - squashA.points.size() ));
+            ArrayList tets = _getPointTets( point );
+            for( int i = 0; i < tets.size(); ++i ){
+                Tet tet = (Tet)tets.get( i );
+                TecPlate plate = tet.getPlate();
+                if( plate == plateA || plate == plateB )
+                    squishTetSet.add( tet );
             }
-            if( pointSet.contains( tet.b ) || pointSet.contains( tet.c ) || pointSet.contains( tet.d ) )
-                squishTets.add( tet );
         }
+        ArrayList squishTets = new ArrayList( squishTetSet );
         // Place the 'area' of each tet into its 'oldArea'
         for( int i = 0; i < squishTets.size(); ++i ){
             Tet tet = (Tet)squishTets.get( i );
             tet.calcArea();
-            tet.oldArea = tet.area;
+            tet.oldArea = tet.getArea();
         }
 
-        for( int i = 0; i < plateAPointCount; ++i ){
-            TecPoint point = (TecPoint)plateAPoints[i];
-            double dist = positionA.distanceSquared( point.getPos() );
-            if( dist < squashSquare ){
-                move.scale( 1.0 - dist / squashSize, vector3d );
-                //tecpoint_159_.scale(1.0 + (0.05 * squash * (1.0 - (dist / squashSize))));
-                point.move( move );
-                point.setHeight( m_planetRadius );
-                point.setValid( false );
-            }
+        for( int i = 0; i < squashA.points.size(); ++i ){
+            TecPoint point = (TecPoint)squashA.points.get( i );
+            double dist = point.distanceSquared( positionA );
+            move.scale( 1.0 - dist / squashSize, vector3d );
+            //tecpoint_159_.scale(1.0 + (0.05 * squash * (1.0 - (dist / squashSize))));
+            point.move( move );
+            point.setHeight( m_planetRadius );
+            point.setValid( false );
+            m_pointGrid.refile( point.getIndex() );
         }
         vector3d.scale( -1.0 );
-        for( int i = 0; i < plateBPointCount; ++i ){
-            TecPoint point = ((TecPoint)plateBPoints[i]);
-            double dist = positionB.distanceSquared( point.getPos() );
-            if( dist < squashSquare ){
-                move.scale( 1 - dist / squashSize, vector3d );
-                //tecpoint_162_.scale(1+0.05*squash*(1-dist/squashSize));
-                point.move( move );
-                point.setHeight( m_planetRadius );
-                point.setValid( false );
-            }
+        for( int i = 0; i < squashB.points.size(); ++i ){
+            TecPoint point = (TecPoint)squashB.points.get( i );
+            double dist = point.distanceSquared( positionB );
+            move.scale( 1 - dist / squashSize, vector3d );
+            //tecpoint_162_.scale(1+0.05*squash*(1-dist/squashSize));
+            point.move( move );
+            point.setHeight( m_planetRadius );
+            point.setValid( false );
+            m_pointGrid.refile( point.getIndex() );
         }
 
         // Now that we've moved all the points, and tet tets have been squished,
@@ -3872,42 +5086,49 @@ public class World {
         for( int i = 0; i < squishTets.size(); ++i ){
             Tet tet = (Tet)squishTets.get( i );
             tet.calcArea();
-            tet.scaleHeights( tet.oldArea / tet.area );
+            tet.scaleHeights( tet.oldArea / tet.getArea() );
         }
     }
 
     private boolean _fea_handleStartPoint( TecPoint start, ArrayList platePoints, ArrayList newPlates, ArrayList links, TecPlate plate, ArrayList plateLinks ){
-        // OK, we're got a start point. Set up to spread out from this point
+        // OK, we're got a start point. Set up to spread out from this point.
+        // pile[] records which pile each point (by PointStore index) is in.
+        final int UNMOVED = 1, MOVED = 2;
+        LinkGraph graph         = getLinkGraph();
+        byte[]    pile          = new byte[ m_pointStore.size() ];
         ArrayList movedPoints   = new ArrayList();
-        ArrayList unmovedPoints = new ArrayList( platePoints );
         ArrayList brokenPoints  = new ArrayList();
+        int       unmovedCount  = 0;
 
-        // Move the start point
+        // Move the start point, and remove any broken points from the unmoved pile
         movedPoints.add( start );
-        unmovedPoints.remove( start );
-
-        // Remove any broken points from the unmoved pile
-        for( int r = 0; r < unmovedPoints.size(); ++r ){
-            TecPoint point = (TecPoint)unmovedPoints.get( r );
+        pile[start.getIndex()] = MOVED;
+        for( int r = 0; r < platePoints.size(); ++r ){
+            TecPoint point = (TecPoint)platePoints.get( r );
+            if( point == start )
+                continue;
             if( point.broken ){
                 brokenPoints.add( point );
-                unmovedPoints.remove( r-- );
+            }
+            else {
+                pile[point.getIndex()] = UNMOVED;
+                unmovedCount++;
             }
         }
         // Loop around, moving connected unbroken points to the "moved" pile
-        for( int r = 0; r < movedPoints.size() && unmovedPoints.size() > 0; r++ ){
-            TecPoint p1 = (TecPoint)movedPoints.get( r );
-            ArrayList linkedPoints = m_linkSystem.getPointLinks( p1 );
-            for( int p = 0; p < linkedPoints.size(); p++ ){
-                TecPoint linkedPoint = (TecPoint)linkedPoints.get( p );
-                if( linkedPoint != p1 && !linkedPoint.broken && unmovedPoints.contains( linkedPoint ) ){
-                    movedPoints.add( linkedPoint );
-                    unmovedPoints.remove( linkedPoint );
+        for( int r = 0; r < movedPoints.size() && unmovedCount > 0; r++ ){
+            int p1 = ((TecPoint)movedPoints.get( r )).getIndex();
+            for( int p = graph.getStart( p1 ); p < graph.getEnd( p1 ); p++ ){
+                int linked = graph.getNeighbour( p );
+                if( pile[linked] == UNMOVED ){
+                    movedPoints.add( m_pointStore.getOwner( linked ) );
+                    pile[linked] = MOVED;
+                    unmovedCount--;
                 }
             }
         }
         // Now see if there are any points left in the unmoved pile...
-        if( unmovedPoints.isEmpty() ){
+        if( unmovedCount == 0 ){
             return false;
         }
         // The plate was split into bits! Make a new plate...
@@ -3932,12 +5153,11 @@ public class World {
                 // Get the linkedPoints for each brokenPoint, and count how many are in movedPoints and how many are in unmovedPoints
                 while( brokenPoints.size() > 0 ){
                     TecPoint bp = (TecPoint)brokenPoints.get( 0 );
-                    ArrayList linkedPoints = m_linkSystem.getPointLinks( bp );
                     int countMoved = 0, countUnmoved = 0;
-                    for( int k = 0; k < linkedPoints.size(); k++ ){
-                        if( movedPoints.contains( linkedPoints.get( k ) ) )
+                    for( int k = graph.getStart( bp.getIndex() ); k < graph.getEnd( bp.getIndex() ); k++ ){
+                        if( pile[graph.getNeighbour( k )] == MOVED )
                             countMoved++;
-                        else if( unmovedPoints.contains( linkedPoints.get( k ) ) )
+                        else if( pile[graph.getNeighbour( k )] == UNMOVED )
                             countUnmoved++;
                         else
                             System.out.println( "!!!!!One of the brokenPoints wasn't in Moved _or_ Unmoved!!!!!" );
@@ -3999,7 +5219,7 @@ public class World {
         // Tidy up which links are plate-crossing
         for( int l = 0; l < links.size(); l++ ){
             LinkPair link = (LinkPair)links.get( l );
-            link.plateCrosser = (link.getA().getPlate() != link.getB().getPlate());
+            link.setPlateCrosser( (link.getA().getPlate() != link.getB().getPlate()) );
         }
         System.out.println( "done splitting plate." );
         return true;